@@ -0,0 +1,79 @@
+package com.mz.sqsutils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares two JMH JSON result files and exits with status 1 if any benchmark got slower than the baseline by more
+ * than the tolerance and its error margins.
+ * <p>
+ * Usage: {@code BenchmarkComparison baseline.json current.json [tolerancePercent]}, tolerance 10 by default.
+ */
+public final class BenchmarkComparison {
+
+    private static final double DEFAULT_TOLERANCE_PERCENT = 10;
+
+    private BenchmarkComparison() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: BenchmarkComparison baseline.json current.json [tolerancePercent]");
+            System.exit(2);
+        }
+        double tolerance = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_TOLERANCE_PERCENT;
+
+        ObjectMapper          objectMapper = new ObjectMapper();
+        Map<String, JsonNode> baseline     = results(objectMapper.readTree(new File(args[0])));
+        Map<String, JsonNode> current      = results(objectMapper.readTree(new File(args[1])));
+
+        int regressions = 0;
+        for (Map.Entry<String, JsonNode> entry : current.entrySet()) {
+            JsonNode before = baseline.get(entry.getKey());
+            if (before == null) {
+                System.out.println(String.format("NEW        %s", entry.getKey()));
+                continue;
+            }
+            JsonNode after         = entry.getValue();
+            double   scoreBefore   = before.path("primaryMetric").path("score").asDouble();
+            double   scoreAfter    = after.path("primaryMetric").path("score").asDouble();
+            double   errorMargin   = error(before) + error(after);
+            // throughput scores are better when higher, time scores when lower
+            double   slowdown      = "thrpt".equals(after.path("mode").asText())
+                                     ? scoreBefore - scoreAfter
+                                     : scoreAfter - scoreBefore;
+            double   changePercent = scoreBefore == 0 ? 0 : 100 * slowdown / scoreBefore;
+            boolean  regression    = changePercent > tolerance && slowdown > errorMargin;
+            regressions += regression ? 1 : 0;
+            System.out.println(String.format("%-10s %s: %.3f -> %.3f %s (%+.1f%% slower)",
+                                             regression ? "REGRESSION" : "OK", entry.getKey(), scoreBefore, scoreAfter,
+                                             after.path("primaryMetric").path("scoreUnit").asText(), changePercent));
+        }
+        System.out.println(String.format("%d of %d benchmarks regressed by more than %.1f%%",
+                                         regressions, current.size(), tolerance));
+        System.exit(regressions == 0 ? 0 : 1);
+    }
+
+    private static double error(JsonNode result) {
+        double error = result.path("primaryMetric").path("scoreError").asDouble();
+        return Double.isNaN(error) ? 0 : error;
+    }
+
+    /**
+     * @return results by benchmark name and parameters
+     */
+    private static Map<String, JsonNode> results(JsonNode results) {
+        Map<String, JsonNode> byKey = new LinkedHashMap<>();
+        for (JsonNode result : results) {
+            Map<String, String> params = new TreeMap<>();
+            result.path("params").fields().forEachRemaining(param -> params.put(param.getKey(), param.getValue().asText()));
+            byKey.put(result.path("benchmark").asText() + params, result);
+        }
+        return byKey;
+    }
+}
@@ -0,0 +1,447 @@
+package com.mz.sqsutils;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.sqs.AbstractAmazonSQS;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequestEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchResult;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchResultEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityRequest;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityResult;
+import com.amazonaws.services.sqs.model.CreateQueueRequest;
+import com.amazonaws.services.sqs.model.CreateQueueResult;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResult;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResultEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageResult;
+import com.amazonaws.services.sqs.model.GetQueueAttributesRequest;
+import com.amazonaws.services.sqs.model.GetQueueAttributesResult;
+import com.amazonaws.services.sqs.model.GetQueueUrlRequest;
+import com.amazonaws.services.sqs.model.GetQueueUrlResult;
+import com.amazonaws.services.sqs.model.ListQueuesRequest;
+import com.amazonaws.services.sqs.model.ListQueuesResult;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.amazonaws.services.sqs.model.PurgeQueueRequest;
+import com.amazonaws.services.sqs.model.PurgeQueueResult;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.amazonaws.services.sqs.model.ReceiveMessageResult;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
+import com.amazonaws.services.sqs.model.SendMessageBatchResultEntry;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
+import com.amazonaws.services.sqs.model.SendMessageResult;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory stand-in for SQS, for measuring the tasks without a network.
+ * <p>
+ * Queues are created on first use. Received messages stay in flight until they are deleted or their visibility
+ * timeout expires, and queue depth is reported like SQS does. Long polling returns right away.
+ * <p>
+ * Every call can be slowed down by a fixed latency, and batch entries can fail with a throttling or a server error
+ * at a configured rate; the tasks retry such entries, and the adaptive rate limiter reacts to the throttling code.
+ * Single-message calls (receive, send, delete, visibility change) fail at the same rates, and are retried like the SDK
+ * retries them, {@value #SDK_RETRIES} times at the cost of another call; they throw an {@link AmazonServiceException}
+ * with the code of the last failure when every attempt failed. Thread-safe.
+ */
+public class InMemorySqs extends AbstractAmazonSQS {
+
+    public static final String QUEUE_URL_PREFIX = "http://localhost:9324/000000000000/";
+    public static final String THROTTLING_CODE  = "RequestThrottled";
+    public static final String FAILURE_CODE     = "InternalError";
+    /**
+     * Retries of a failed single-message call, as by the default SDK v1 retry policy.
+     */
+    public static final int    SDK_RETRIES      = 3;
+
+    private static final String NOT_IN_FLIGHT_CODE = "AWS.SimpleQueueService.MessageNotInflight";
+
+    private final ConcurrentMap<String, Queue> queues = new ConcurrentHashMap<>();
+    private final AtomicLong                   ids    = new AtomicLong();
+
+    private volatile long   latencyNanos;
+    private volatile double throttleRate;
+    private volatile double failureRate;
+    private volatile int    visibilityTimeoutSeconds = 30;
+
+    /**
+     * @param micros time every call takes, e.g. 5000 for a client in the same region as the queue
+     */
+    public InMemorySqs withLatency(long micros) {
+        this.latencyNanos = TimeUnit.MICROSECONDS.toNanos(micros);
+        return this;
+    }
+
+    /**
+     * @param rate fraction of batch entries and single-message call attempts that fail with {@value #THROTTLING_CODE}
+     */
+    public InMemorySqs withThrottling(double rate) {
+        this.throttleRate = rate;
+        return this;
+    }
+
+    /**
+     * @param rate fraction of batch entries and single-message call attempts that fail with {@value #FAILURE_CODE}
+     */
+    public InMemorySqs withFailures(double rate) {
+        this.failureRate = rate;
+        return this;
+    }
+
+    public InMemorySqs withVisibilityTimeout(int seconds) {
+        this.visibilityTimeoutSeconds = seconds;
+        return this;
+    }
+
+    public static String queueUrl(String queueName) {
+        return QUEUE_URL_PREFIX + queueName;
+    }
+
+    /**
+     * Adds {@code count} messages that were already received before, as messages moved to a DLQ are, so the tasks
+     * do not take them for messages sent after they started.
+     */
+    public void seed(String queueUrl, int count, IntFunction<String> body) {
+        seed(queueUrl, count, body, Collections.emptyMap());
+    }
+
+    /**
+     * Like {@link #seed(String, int, IntFunction)}, with message attributes.
+     */
+    public void seed(String queueUrl, int count, IntFunction<String> body,
+                     Map<String, MessageAttributeValue> messageAttributes) {
+        Queue queue     = queue(queueUrl);
+        long  timestamp = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(5);
+        for (int i = 0; i < count; i++) {
+            StoredMessage message = new StoredMessage(nextId(), body.apply(i), messageAttributes, timestamp);
+            message.firstReceive = timestamp;
+            queue.makeVisible(message);
+        }
+    }
+
+    /**
+     * @return visible and in flight messages
+     */
+    public int size(String queueUrl) {
+        Queue queue = queue(queueUrl);
+        queue.expire();
+        return queue.visibleCount.get() + queue.inFlight.size();
+    }
+
+    @Override
+    public ReceiveMessageResult receiveMessage(ReceiveMessageRequest request) {
+        simulateSingleCall();
+        Queue queue = queue(request.getQueueUrl());
+        queue.expire();
+        int max = request.getMaxNumberOfMessages() == null ? 1 : request.getMaxNumberOfMessages();
+        int visibilityTimeout = request.getVisibilityTimeout() == null
+                                ? visibilityTimeoutSeconds : request.getVisibilityTimeout();
+        List<Message> messages = new ArrayList<>(max);
+        long          now      = System.currentTimeMillis();
+        StoredMessage stored;
+        while (messages.size() < max && (stored = queue.visible.pollFirst()) != null) {
+            queue.visibleCount.decrementAndGet();
+            if (stored.firstReceive == 0) {
+                stored.firstReceive = now;
+            }
+            String receipt = stored.id + ":" + ids.incrementAndGet();
+            Lease  lease   = new Lease(receipt, stored, visibilityTimeout);
+            queue.inFlight.put(receipt, lease);
+            queue.expirations.add(lease);
+
+            Map<String, String> attributes = new HashMap<>();
+            attributes.put("SentTimestamp", Long.toString(stored.sentTimestamp));
+            attributes.put("ApproximateFirstReceiveTimestamp", Long.toString(stored.firstReceive));
+            attributes.put("ApproximateReceiveCount", Integer.toString(stored.receives.incrementAndGet()));
+            messages.add(new Message().withMessageId(stored.id)
+                                      .withReceiptHandle(receipt)
+                                      .withBody(stored.body)
+                                      .withAttributes(attributes)
+                                      .withMessageAttributes(stored.messageAttributes));
+        }
+        return new ReceiveMessageResult().withMessages(messages);
+    }
+
+    @Override
+    public SendMessageResult sendMessage(SendMessageRequest request) {
+        simulateSingleCall();
+        String id = send(request.getQueueUrl(), request.getMessageBody(), request.getMessageAttributes());
+        return new SendMessageResult().withMessageId(id);
+    }
+
+    @Override
+    public SendMessageBatchResult sendMessageBatch(SendMessageBatchRequest request) {
+        simulateLatency();
+        SendMessageBatchResult result = new SendMessageBatchResult();
+        for (SendMessageBatchRequestEntry entry : request.getEntries()) {
+            BatchResultErrorEntry error = injectedError(entry.getId());
+            if (error != null) {
+                result.withFailed(error);
+            } else {
+                String id = send(request.getQueueUrl(), entry.getMessageBody(), entry.getMessageAttributes());
+                result.withSuccessful(new SendMessageBatchResultEntry().withId(entry.getId()).withMessageId(id));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public DeleteMessageResult deleteMessage(DeleteMessageRequest request) {
+        simulateSingleCall();
+        queue(request.getQueueUrl()).inFlight.remove(request.getReceiptHandle());
+        return new DeleteMessageResult();
+    }
+
+    @Override
+    public DeleteMessageBatchResult deleteMessageBatch(DeleteMessageBatchRequest request) {
+        simulateLatency();
+        Queue                    queue  = queue(request.getQueueUrl());
+        DeleteMessageBatchResult result = new DeleteMessageBatchResult();
+        for (DeleteMessageBatchRequestEntry entry : request.getEntries()) {
+            BatchResultErrorEntry error = injectedError(entry.getId());
+            if (error != null) {
+                result.withFailed(error);
+            } else {
+                queue.inFlight.remove(entry.getReceiptHandle());
+                result.withSuccessful(new DeleteMessageBatchResultEntry().withId(entry.getId()));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public ChangeMessageVisibilityResult changeMessageVisibility(ChangeMessageVisibilityRequest request) {
+        simulateSingleCall();
+        queue(request.getQueueUrl()).changeVisibility(request.getReceiptHandle(), request.getVisibilityTimeout());
+        return new ChangeMessageVisibilityResult();
+    }
+
+    @Override
+    public ChangeMessageVisibilityBatchResult changeMessageVisibilityBatch(ChangeMessageVisibilityBatchRequest request) {
+        simulateLatency();
+        Queue                              queue  = queue(request.getQueueUrl());
+        ChangeMessageVisibilityBatchResult result = new ChangeMessageVisibilityBatchResult();
+        for (ChangeMessageVisibilityBatchRequestEntry entry : request.getEntries()) {
+            BatchResultErrorEntry error = injectedError(entry.getId());
+            if (error == null && !queue.changeVisibility(entry.getReceiptHandle(), entry.getVisibilityTimeout())) {
+                error = new BatchResultErrorEntry().withId(entry.getId())
+                                                   .withCode(NOT_IN_FLIGHT_CODE)
+                                                   .withSenderFault(true);
+            }
+            if (error != null) {
+                result.withFailed(error);
+            } else {
+                result.withSuccessful(new ChangeMessageVisibilityBatchResultEntry().withId(entry.getId()));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public GetQueueAttributesResult getQueueAttributes(GetQueueAttributesRequest request) {
+        simulateLatency();
+        Queue queue = queue(request.getQueueUrl());
+        queue.expire();
+        Map<String, String> attributes = new HashMap<>();
+        attributes.put("ApproximateNumberOfMessages", Integer.toString(queue.visibleCount.get()));
+        attributes.put("ApproximateNumberOfMessagesNotVisible", Integer.toString(queue.inFlight.size()));
+        attributes.put("ApproximateNumberOfMessagesDelayed", "0");
+        attributes.put("VisibilityTimeout", Integer.toString(visibilityTimeoutSeconds));
+        attributes.put("QueueArn", "arn:aws:sqs:us-east-1:000000000000:" + QueuePair.queueName(request.getQueueUrl()));
+        return new GetQueueAttributesResult().withAttributes(attributes);
+    }
+
+    @Override
+    public PurgeQueueResult purgeQueue(PurgeQueueRequest request) {
+        simulateLatency();
+        queues.remove(request.getQueueUrl());
+        return new PurgeQueueResult();
+    }
+
+    @Override
+    public CreateQueueResult createQueue(CreateQueueRequest request) {
+        String queueUrl = queueUrl(request.getQueueName());
+        queue(queueUrl);
+        return new CreateQueueResult().withQueueUrl(queueUrl);
+    }
+
+    @Override
+    public GetQueueUrlResult getQueueUrl(GetQueueUrlRequest request) {
+        return new GetQueueUrlResult().withQueueUrl(queueUrl(request.getQueueName()));
+    }
+
+    @Override
+    public ListQueuesResult listQueues(ListQueuesRequest request) {
+        String prefix = QUEUE_URL_PREFIX + (request.getQueueNamePrefix() == null ? "" : request.getQueueNamePrefix());
+        return new ListQueuesResult().withQueueUrls(queues.keySet()
+                                                          .stream()
+                                                          .filter(url -> url.startsWith(prefix))
+                                                          .sorted()
+                                                          .collect(Collectors.toList()));
+    }
+
+    private String send(String queueUrl, String body, Map<String, MessageAttributeValue> messageAttributes) {
+        StoredMessage message = new StoredMessage(nextId(), body, messageAttributes, System.currentTimeMillis());
+        queue(queueUrl).makeVisible(message);
+        return message.id;
+    }
+
+    private BatchResultErrorEntry injectedError(String entryId) {
+        String code = injectedErrorCode();
+        return code == null ? null : new BatchResultErrorEntry().withId(entryId).withCode(code).withSenderFault(false);
+    }
+
+    /**
+     * @return the error code of an injected failure, null if the call or entry succeeds
+     */
+    private String injectedErrorCode() {
+        double draw = ThreadLocalRandom.current().nextDouble();
+        if (draw < throttleRate) {
+            return THROTTLING_CODE;
+        }
+        if (draw < throttleRate + failureRate) {
+            return FAILURE_CODE;
+        }
+        return null;
+    }
+
+    /**
+     * Latency of a single-message call and of its retries, then its failure if every attempt failed.
+     */
+    private void simulateSingleCall() {
+        String code = null;
+        for (int attempt = 0; attempt <= SDK_RETRIES; attempt++) {
+            simulateLatency();
+            code = injectedErrorCode();
+            if (code == null) {
+                return;
+            }
+        }
+        AmazonServiceException e = new AmazonServiceException("Injected failure");
+        e.setServiceName("AmazonSQS");
+        e.setErrorCode(code);
+        e.setErrorType(AmazonServiceException.ErrorType.Service);
+        e.setStatusCode(THROTTLING_CODE.equals(code) ? 400 : 500);
+        throw e;
+    }
+
+    private void simulateLatency() {
+        if (latencyNanos > 0) {
+            LockSupport.parkNanos(latencyNanos);
+        }
+    }
+
+    private Queue queue(String queueUrl) {
+        return queues.computeIfAbsent(queueUrl, url -> new Queue());
+    }
+
+    private String nextId() {
+        return Long.toString(ids.incrementAndGet());
+    }
+
+    private static final class Queue {
+        private final Deque<StoredMessage>         visible      = new ConcurrentLinkedDeque<>();
+        private final AtomicInteger                visibleCount = new AtomicInteger();
+        private final ConcurrentMap<String, Lease> inFlight     = new ConcurrentHashMap<>();
+        private final DelayQueue<Lease>            expirations  = new DelayQueue<>();
+
+        void makeVisible(StoredMessage message) {
+            visible.addLast(message);
+            visibleCount.incrementAndGet();
+        }
+
+        /**
+         * Makes messages whose visibility timeout expired visible again. Leases of deleted messages, or replaced by a
+         * visibility change, are dropped.
+         */
+        void expire() {
+            Lease lease;
+            while ((lease = expirations.poll()) != null) {
+                if (inFlight.remove(lease.receipt, lease)) {
+                    makeVisible(lease.message);
+                }
+            }
+        }
+
+        /**
+         * @return false if the message is not in flight
+         */
+        boolean changeVisibility(String receipt, int visibilityTimeout) {
+            Lease lease = inFlight.get(receipt);
+            if (lease == null) {
+                return false;
+            }
+            if (visibilityTimeout == 0) {
+                if (inFlight.remove(receipt, lease)) {
+                    makeVisible(lease.message);
+                }
+                return true;
+            }
+            Lease renewed = new Lease(receipt, lease.message, visibilityTimeout);
+            if (inFlight.replace(receipt, lease, renewed)) {
+                expirations.add(renewed);
+            }
+            return true;
+        }
+    }
+
+    private static final class StoredMessage {
+        private final String                             id;
+        private final String                             body;
+        private final Map<String, MessageAttributeValue> messageAttributes;
+        private final long                               sentTimestamp;
+        private final AtomicInteger                      receives = new AtomicInteger();
+        private volatile long                            firstReceive;
+
+        StoredMessage(String id, String body, Map<String, MessageAttributeValue> messageAttributes, long sentTimestamp) {
+            this.id = id;
+            this.body = body;
+            this.messageAttributes = messageAttributes;
+            this.sentTimestamp = sentTimestamp;
+        }
+    }
+
+    private static final class Lease implements Delayed {
+        private final String        receipt;
+        private final StoredMessage message;
+        private final long          deadlineNanos;
+
+        Lease(String receipt, StoredMessage message, int visibilityTimeoutSeconds) {
+            this.receipt = receipt;
+            this.message = message;
+            this.deadlineNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(visibilityTimeoutSeconds);
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(deadlineNanos, ((Lease) other).deadlineNanos);
+        }
+    }
+}
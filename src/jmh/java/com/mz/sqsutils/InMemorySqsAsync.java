@@ -0,0 +1,201 @@
+package com.mz.sqsutils;
+
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.sqs.SqsAsyncClient;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchResponse;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchResultEntry;
+import software.amazon.awssdk.services.sqs.model.GetQueueAttributesRequest;
+import software.amazon.awssdk.services.sqs.model.GetQueueAttributesResponse;
+import software.amazon.awssdk.services.sqs.model.GetQueueUrlRequest;
+import software.amazon.awssdk.services.sqs.model.GetQueueUrlResponse;
+import software.amazon.awssdk.services.sqs.model.Message;
+import software.amazon.awssdk.services.sqs.model.MessageAttributeValue;
+import software.amazon.awssdk.services.sqs.model.PurgeQueueRequest;
+import software.amazon.awssdk.services.sqs.model.PurgeQueueResponse;
+import software.amazon.awssdk.services.sqs.model.ReceiveMessageRequest;
+import software.amazon.awssdk.services.sqs.model.ReceiveMessageResponse;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResponse;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResultEntry;
+
+/**
+ * SDK v2 {@link SqsAsyncClient} over an {@link InMemorySqs}, for measuring the {@code ASYNC} engine. Only the calls
+ * of {@link AsyncSqsEngine} are implemented.
+ * <p>
+ * Each call runs on {@code executor} and completes when the in-memory call returns, latency and injected failures
+ * included, so the executor should have a thread per request in flight, like the event loop has a connection.
+ */
+public class InMemorySqsAsync implements SqsAsyncClient {
+
+    private final InMemorySqs sqs;
+    private final Executor    executor;
+
+    public InMemorySqsAsync(InMemorySqs sqs, Executor executor) {
+        this.sqs = sqs;
+        this.executor = executor;
+    }
+
+    @Override
+    public CompletableFuture<ReceiveMessageResponse> receiveMessage(ReceiveMessageRequest request) {
+        return call(() -> {
+            com.amazonaws.services.sqs.model.ReceiveMessageResult result = sqs.receiveMessage(
+                new com.amazonaws.services.sqs.model.ReceiveMessageRequest(request.queueUrl())
+                    .withMaxNumberOfMessages(request.maxNumberOfMessages())
+                    .withWaitTimeSeconds(request.waitTimeSeconds())
+                    .withVisibilityTimeout(request.visibilityTimeout()));
+            return ReceiveMessageResponse.builder()
+                                         .messages(result.getMessages()
+                                                         .stream()
+                                                         .map(InMemorySqsAsync::toMessage)
+                                                         .collect(Collectors.toList()))
+                                         .build();
+        });
+    }
+
+    @Override
+    public CompletableFuture<SendMessageBatchResponse> sendMessageBatch(SendMessageBatchRequest request) {
+        return call(() -> {
+            com.amazonaws.services.sqs.model.SendMessageBatchResult result = sqs.sendMessageBatch(
+                new com.amazonaws.services.sqs.model.SendMessageBatchRequest(
+                    request.queueUrl(), request.entries()
+                                               .stream()
+                                               .map(InMemorySqsAsync::toSendEntry)
+                                               .collect(Collectors.toList())));
+            return SendMessageBatchResponse.builder()
+                                           .successful(result.getSuccessful()
+                                                             .stream()
+                                                             .map(entry -> SendMessageBatchResultEntry.builder()
+                                                                                                      .id(entry.getId())
+                                                                                                      .messageId(entry.getMessageId())
+                                                                                                      .build())
+                                                             .collect(Collectors.toList()))
+                                           .failed(result.getFailed()
+                                                         .stream()
+                                                         .map(InMemorySqsAsync::toErrorEntry)
+                                                         .collect(Collectors.toList()))
+                                           .build();
+        });
+    }
+
+    @Override
+    public CompletableFuture<DeleteMessageBatchResponse> deleteMessageBatch(DeleteMessageBatchRequest request) {
+        return call(() -> {
+            com.amazonaws.services.sqs.model.DeleteMessageBatchResult result = sqs.deleteMessageBatch(
+                new com.amazonaws.services.sqs.model.DeleteMessageBatchRequest(
+                    request.queueUrl(), request.entries()
+                                               .stream()
+                                               .map(entry -> new com.amazonaws.services.sqs.model.DeleteMessageBatchRequestEntry(
+                                                   entry.id(), entry.receiptHandle()))
+                                               .collect(Collectors.toList())));
+            return DeleteMessageBatchResponse.builder()
+                                             .successful(result.getSuccessful()
+                                                               .stream()
+                                                               .map(entry -> DeleteMessageBatchResultEntry.builder()
+                                                                                                          .id(entry.getId())
+                                                                                                          .build())
+                                                               .collect(Collectors.toList()))
+                                             .failed(result.getFailed()
+                                                           .stream()
+                                                           .map(InMemorySqsAsync::toErrorEntry)
+                                                           .collect(Collectors.toList()))
+                                             .build();
+        });
+    }
+
+    /**
+     * Only the requested attributes, {@link AsyncSqsEngine#getTotalMessageCount(String)} adds them all up.
+     */
+    @Override
+    public CompletableFuture<GetQueueAttributesResponse> getQueueAttributes(GetQueueAttributesRequest request) {
+        return call(() -> {
+            Map<String, String> attributes = new HashMap<>(sqs.getQueueAttributes(
+                new com.amazonaws.services.sqs.model.GetQueueAttributesRequest(request.queueUrl())).getAttributes());
+            attributes.keySet().retainAll(request.attributeNamesAsStrings());
+            return GetQueueAttributesResponse.builder().attributesWithStrings(attributes).build();
+        });
+    }
+
+    @Override
+    public CompletableFuture<PurgeQueueResponse> purgeQueue(PurgeQueueRequest request) {
+        return call(() -> {
+            sqs.purgeQueue(new com.amazonaws.services.sqs.model.PurgeQueueRequest(request.queueUrl()));
+            return PurgeQueueResponse.builder().build();
+        });
+    }
+
+    @Override
+    public CompletableFuture<GetQueueUrlResponse> getQueueUrl(GetQueueUrlRequest request) {
+        return CompletableFuture.completedFuture(
+            GetQueueUrlResponse.builder().queueUrl(InMemorySqs.queueUrl(request.queueName())).build());
+    }
+
+    @Override
+    public String serviceName() {
+        return SERVICE_NAME;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private <T> CompletableFuture<T> call(Supplier<T> call) {
+        return CompletableFuture.supplyAsync(call, executor);
+    }
+
+    private static Message toMessage(com.amazonaws.services.sqs.model.Message message) {
+        return Message.builder()
+                      .messageId(message.getMessageId())
+                      .receiptHandle(message.getReceiptHandle())
+                      .body(message.getBody())
+                      .attributesWithStrings(message.getAttributes())
+                      .messageAttributes(message.getMessageAttributes()
+                                                .entrySet()
+                                                .stream()
+                                                .collect(Collectors.toMap(Map.Entry::getKey, e -> toAttributeValue(e.getValue()))))
+                      .build();
+    }
+
+    private static com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry toSendEntry(SendMessageBatchRequestEntry entry) {
+        return new com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry(entry.id(), entry.messageBody())
+            .withDelaySeconds(entry.delaySeconds())
+            .withMessageGroupId(entry.messageGroupId())
+            .withMessageDeduplicationId(entry.messageDeduplicationId())
+            .withMessageAttributes(entry.messageAttributes()
+                                        .entrySet()
+                                        .stream()
+                                        .collect(Collectors.toMap(Map.Entry::getKey, e -> toAttributeValue(e.getValue()))));
+    }
+
+    private static MessageAttributeValue toAttributeValue(com.amazonaws.services.sqs.model.MessageAttributeValue value) {
+        return MessageAttributeValue.builder()
+                                    .dataType(value.getDataType())
+                                    .stringValue(value.getStringValue())
+                                    .binaryValue(value.getBinaryValue() == null ? null : SdkBytes.fromByteBuffer(value.getBinaryValue()))
+                                    .build();
+    }
+
+    private static com.amazonaws.services.sqs.model.MessageAttributeValue toAttributeValue(MessageAttributeValue value) {
+        return new com.amazonaws.services.sqs.model.MessageAttributeValue()
+            .withDataType(value.dataType())
+            .withStringValue(value.stringValue())
+            .withBinaryValue(value.binaryValue() == null ? null : value.binaryValue().asByteBuffer());
+    }
+
+    private static software.amazon.awssdk.services.sqs.model.BatchResultErrorEntry toErrorEntry(BatchResultErrorEntry error) {
+        return software.amazon.awssdk.services.sqs.model.BatchResultErrorEntry.builder()
+                                                                              .id(error.getId())
+                                                                              .code(error.getCode())
+                                                                              .message(error.getMessage())
+                                                                              .senderFault(error.getSenderFault())
+                                                                              .build();
+    }
+}
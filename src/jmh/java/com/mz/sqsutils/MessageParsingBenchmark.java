@@ -0,0 +1,65 @@
+package com.mz.sqsutils;
+
+import com.amazonaws.services.sqs.model.Message;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per-message cost of the default HEI events filter and of the {@code READ} command's webhook grouping.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class MessageParsingBenchmark {
+
+    @Param({"256", "4096", "65536"})
+    public int payloadBytes;
+
+    /**
+     * Age of the event; with the default filter events older than 3 to 5 days are dropped.
+     */
+    @Param({"1", "10"})
+    public int ageDays;
+
+    private String                    body;
+    private Message                   message;
+    private MessageFilter             heiEvents;
+    private Handler.GroupByWebhookUrl groupByWebhookUrl;
+
+    @Setup
+    public void setup() {
+        body = Payloads.message(payloadBytes, Instant.now().minus(ageDays, ChronoUnit.DAYS), Payloads.WEBHOOK_URL);
+        message = new Message().withMessageId("1").withBody(body);
+        heiEvents = MessageFilter.heiEvents(new JsonFactory(), Clock.systemUTC());
+        groupByWebhookUrl = new Handler.GroupByWebhookUrl(new ObjectMapper(), new HashMap<>());
+    }
+
+    @Benchmark
+    public boolean heiEventsFilter() {
+        return heiEvents.test(body);
+    }
+
+    @Benchmark
+    public String groupByWebhookUrl() {
+        return groupByWebhookUrl.apply(message, body);
+    }
+}
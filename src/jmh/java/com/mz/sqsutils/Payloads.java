@@ -0,0 +1,52 @@
+package com.mz.sqsutils;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Strings;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Message bodies shaped like the Webhooks outbox and HEI events the tool re-drives: the payload is a JSON-encoded
+ * string holding the webhook {@code url} and another JSON-encoded {@code payload} with the {@code statusTime} and
+ * the {@code text} sent to the webhook.
+ */
+final class Payloads {
+
+    static final String WEBHOOK_URL = "https://example.com/webhooks/T0000/B0000";
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private Payloads() {
+    }
+
+    /**
+     * @param bodyBytes approximate size of the message body; the text is padded to reach it
+     */
+    static String message(int bodyBytes, Instant statusTime, String url) {
+        try {
+            Map<String, Object> event = new LinkedHashMap<>();
+            event.put("statusTime", statusTime.toString());
+            event.put("text", "");
+            Map<String, Object> webhook = new LinkedHashMap<>();
+            webhook.put("url", url);
+            webhook.put("payload", OBJECT_MAPPER.writeValueAsString(event));
+            String body = OBJECT_MAPPER.writeValueAsString(
+                Collections.singletonMap("payload", OBJECT_MAPPER.writeValueAsString(webhook)));
+
+            // the text is escaped twice, padding with letters keeps one body byte per character
+            event.put("text", Strings.repeat("x", Math.max(0, bodyBytes - body.length())));
+            webhook.put("payload", OBJECT_MAPPER.writeValueAsString(event));
+            return OBJECT_MAPPER.writeValueAsString(
+                Collections.singletonMap("payload", OBJECT_MAPPER.writeValueAsString(webhook)));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String message(int bodyBytes) {
+        return message(bodyBytes, Instant.now(), WEBHOOK_URL);
+    }
+}
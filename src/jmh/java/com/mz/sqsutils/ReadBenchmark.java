@@ -0,0 +1,87 @@
+package com.mz.sqsutils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.helpers.NOPLogger;
+
+/**
+ * Time to read a whole queue, as the {@code READ} command does, with and without grouping the messages by webhook.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ReadBenchmark {
+
+    private static final String QUEUE = InMemorySqs.queueUrl("BenchmarkDLQ");
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    public enum Consumer {
+        NONE, GROUP_BY_WEBHOOK_URL
+    }
+
+    @Param({"1000", "10000"})
+    public int queueSize;
+
+    @Param({"256", "4096"})
+    public int payloadBytes;
+
+    @Param({"NONE", "GROUP_BY_WEBHOOK_URL"})
+    public Consumer consumer;
+
+    @Param({"0"})
+    public long latencyMicros;
+
+    private final AtomicInteger consumed = new AtomicInteger();
+
+    private String        body;
+    private InMemorySqs   sqs;
+    private ReadQueueTask task;
+
+    @Setup(Level.Trial)
+    public void createBody() {
+        body = Payloads.message(payloadBytes);
+    }
+
+    @Setup(Level.Invocation)
+    public void fillQueue() {
+        sqs = new InMemorySqs().withLatency(latencyMicros);
+        sqs.seed(QUEUE, queueSize, i -> body);
+        consumed.set(0);
+        Handler.GroupByWebhookUrl groupByWebhookUrl = new Handler.GroupByWebhookUrl(OBJECT_MAPPER, new HashMap<>());
+        task = new ReadQueueTask(sqs, QUEUE, (message, messageBody) -> {
+            consumed.incrementAndGet();
+            return consumer == Consumer.GROUP_BY_WEBHOOK_URL ? groupByWebhookUrl.apply(message, messageBody) : messageBody;
+        }, NOPLogger.NOP_LOGGER).withLimit(ReadQueueTask.NO_LIMIT);
+    }
+
+    @Benchmark
+    public String read() {
+        return task.call();
+    }
+
+    @TearDown(Level.Invocation)
+    public void checkRead() {
+        if (consumed.get() != queueSize) {
+            throw new IllegalStateException(String.format("Read incomplete: %d of %d messages", consumed.get(), queueSize));
+        }
+    }
+}
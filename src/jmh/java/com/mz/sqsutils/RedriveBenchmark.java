@@ -0,0 +1,131 @@
+package com.mz.sqsutils;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.helpers.NOPLogger;
+
+/**
+ * Time to re-drive a whole queue into another one, for each engine. The rate limiter is set far above what the
+ * in-memory queue can serve, so the score is the cost of the task and the simulated latency, not of the limit.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class RedriveBenchmark {
+
+    private static final String SOURCE_QUEUE = InMemorySqs.queueUrl("BenchmarkDLQ");
+    private static final String TARGET_QUEUE = InMemorySqs.queueUrl("Benchmark");
+    private static final double UNLIMITED    = 1_000_000;
+
+    public enum Engine {
+        SINGLE, BATCH, PIPELINE, ASYNC
+    }
+
+    @Param({"1000", "10000"})
+    public int queueSize;
+
+    @Param({"256", "4096"})
+    public int payloadBytes;
+
+    @Param({"SINGLE", "BATCH", "PIPELINE", "ASYNC"})
+    public Engine engine;
+
+    @Param({"0"})
+    public long latencyMicros;
+
+    @Param({"0"})
+    public double throttleRate;
+
+    @Param({"0"})
+    public double failureRate;
+
+    private String           body;
+    private InMemorySqs      sqs;
+    private RedriveQueueTask task;
+    /**
+     * Runs the calls of the {@code ASYNC} engine, a thread per request in flight.
+     */
+    private ExecutorService  asyncCalls;
+
+    @Setup(Level.Trial)
+    public void createBody() {
+        body = Payloads.message(payloadBytes);
+        asyncCalls = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setNameFormat("in-memory-sqs-%d").setDaemon(true).build());
+    }
+
+    @TearDown(Level.Trial)
+    public void stopAsyncCalls() {
+        asyncCalls.shutdownNow();
+    }
+
+    @Setup(Level.Invocation)
+    public void fillQueue() {
+        sqs = new InMemorySqs().withLatency(latencyMicros)
+                               .withThrottling(throttleRate)
+                               .withFailures(failureRate);
+        sqs.seed(SOURCE_QUEUE, queueSize, i -> body);
+        switch (engine) {
+            case PIPELINE:
+                task = new PipelinedRedriveQueueTask(sqs, SOURCE_QUEUE, TARGET_QUEUE, messageBody -> true,
+                                                     NOPLogger.NOP_LOGGER, 4, 8);
+                break;
+            case ASYNC:
+                task = new AsyncRedriveQueueTask(sqs, new AsyncSqsEngine(new InMemorySqsAsync(sqs, asyncCalls)),
+                                                 SOURCE_QUEUE, TARGET_QUEUE, messageBody -> true,
+                                                 NOPLogger.NOP_LOGGER, 16);
+                break;
+            case BATCH:
+                task = new RedriveQueueTask(sqs, SOURCE_QUEUE, TARGET_QUEUE, messageBody -> true,
+                                            NOPLogger.NOP_LOGGER, true);
+                break;
+            default:
+                task = new RedriveQueueTask(sqs, SOURCE_QUEUE, TARGET_QUEUE, messageBody -> true,
+                                            NOPLogger.NOP_LOGGER, false);
+        }
+        task.withRateLimiter(new AdaptiveRateLimiter(UNLIMITED, UNLIMITED, AdaptiveRateLimiter.DEFAULT_LATENCY_TARGET_MILLIS))
+            .withDrainDetection(0, 1, 0)
+            .withHeartbeat(0);
+    }
+
+    @Benchmark
+    public String redrive() {
+        return task.call();
+    }
+
+    /**
+     * A re-drive that stops early would look faster, so the measurement fails instead. With injected errors, entries
+     * that fail every attempt stay in the source queue, but no message may be lost.
+     */
+    @TearDown(Level.Invocation)
+    public void checkDrained() {
+        int left      = sqs.size(SOURCE_QUEUE);
+        int forwarded = sqs.size(TARGET_QUEUE);
+        boolean complete = throttleRate == 0 && failureRate == 0
+                           ? left == 0 && forwarded == queueSize
+                           : left + forwarded >= queueSize;
+        if (!complete) {
+            throw new IllegalStateException(String.format(
+                "Re-drive incomplete: %d messages left, %d of %d forwarded%n%s",
+                left, forwarded, queueSize, task.getOutcome()));
+        }
+    }
+}
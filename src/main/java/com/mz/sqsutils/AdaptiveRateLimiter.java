@@ -0,0 +1,256 @@
+package com.mz.sqsutils;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.retry.RetryUtils;
+import com.google.common.util.concurrent.RateLimiter;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+
+/**
+ * Rate limiter that adjusts its rate from observed SQS responses with additive-increase/multiplicative-decrease.
+ * <p>
+ * Once per adjustment interval the rate is
+ * <ul>
+ * <li>halved if any request was throttled,</li>
+ * <li>reduced by a quarter if more than {@value #MAX_FAILURE_RATIO} of the requests failed,</li>
+ * <li>reduced by a tenth if the average latency is above the target,</li>
+ * <li>otherwise increased by a fixed step.</li>
+ * </ul>
+ * The rate always stays between the configured floor and ceiling. Thread-safe.
+ */
+public class AdaptiveRateLimiter {
+
+    /**
+     * Floor and initial rate: a re-drive starts slowly and speeds up while SQS keeps up, reaching
+     * {@link #DEFAULT_MAX_RATE} after {@value #STEPS_TO_MAX_RATE} seconds of successful calls. Per-key limits, e.g.
+     * for Slack webhooks, are set with {@link KeyedRateLimiter}.
+     */
+    public static final double DEFAULT_MIN_RATE = 5.0;
+    /**
+     * Ceiling: the fixed rate of re-drives before the rate adapted, which SQS sustains for a single queue pair.
+     */
+    public static final double DEFAULT_MAX_RATE = 888.0;
+    public static final long   DEFAULT_LATENCY_TARGET_MILLIS = 500;
+
+    private static final double MAX_FAILURE_RATIO    = 0.1;
+    private static final long   ADJUSTMENT_INTERVAL  = TimeUnit.SECONDS.toNanos(1);
+    private static final int    STEPS_TO_MAX_RATE    = 20;
+    /**
+     * A share that acquired no permits for this long, e.g. its queue is drained or it waits on long polling, leaves its
+     * part of the ceiling to the others.
+     */
+    private static final long   IDLE_AFTER           = 2 * ADJUSTMENT_INTERVAL;
+
+    private static final Set<String> THROTTLING_CODES = new HashSet<>(Arrays.asList(
+        "Throttling", "ThrottlingException", "RequestThrottled", "OverLimit", "KMS.ThrottlingException"));
+
+    private final RateLimiter rateLimiter;
+    private final double      minRate;
+    private final double      maxRate;
+    private final double      step;
+    private final long        latencyTargetNanos;
+    private final AdaptiveRateLimiter parent;
+    private final List<AdaptiveRateLimiter> shares = new CopyOnWriteArrayList<>();
+
+    private volatile long lastAcquire = System.nanoTime();
+
+    private long lastAdjustment = System.nanoTime();
+    private int  calls;
+    private int  requests;
+    private int  failures;
+    private int  throttles;
+    private long latencyNanos;
+
+    /**
+     * @param minRate             floor, also the initial rate, in permits per second
+     * @param maxRate             ceiling in permits per second
+     * @param latencyTargetMillis average request latency above which the rate is reduced
+     */
+    public AdaptiveRateLimiter(double minRate, double maxRate, long latencyTargetMillis) {
+        this(minRate, maxRate, latencyTargetMillis, null);
+    }
+
+    /**
+     * @param parent limiter shared with other tasks, e.g. a global budget; permits are acquired from both limiters and
+     *               responses are recorded in both
+     */
+    public AdaptiveRateLimiter(double minRate, double maxRate, long latencyTargetMillis, AdaptiveRateLimiter parent) {
+        if (minRate <= 0 || maxRate < minRate) {
+            throw new IllegalArgumentException(String.format("Invalid rate range [%s, %s]", minRate, maxRate));
+        }
+        this.minRate = minRate;
+        this.maxRate = maxRate;
+        this.step = Math.max((maxRate - minRate) / STEPS_TO_MAX_RATE, minRate / STEPS_TO_MAX_RATE);
+        this.latencyTargetNanos = TimeUnit.MILLISECONDS.toNanos(latencyTargetMillis);
+        this.rateLimiter = RateLimiter.create(minRate);
+        this.parent = parent;
+    }
+
+    public AdaptiveRateLimiter() {
+        this(DEFAULT_MIN_RATE, DEFAULT_MAX_RATE, DEFAULT_LATENCY_TARGET_MILLIS);
+    }
+
+    /**
+     * Limiter for one of {@code shares} tasks sharing this limiter as a global budget; permits are also taken from
+     * this limiter. Its floor is the fair share of this limiter's. Its ceiling is this limiter's divided by the number
+     * of shares that acquired permits recently, so one busy task cannot starve the others, and the rate idle or
+     * finished tasks leave unused goes to the busy ones.
+     */
+    public AdaptiveRateLimiter share(int shares) {
+        AdaptiveRateLimiter share = new AdaptiveRateLimiter(minRate / shares, maxRate,
+                                                            TimeUnit.NANOSECONDS.toMillis(latencyTargetNanos), this);
+        this.shares.add(share);
+        return share;
+    }
+
+    /**
+     * @return time spent waiting, in seconds
+     */
+    public double acquire(int permits) {
+        lastAcquire = System.nanoTime();
+        double waited = rateLimiter.acquire(permits);
+        return parent == null ? waited : waited + parent.acquire(permits);
+    }
+
+    public double getRate() {
+        return rateLimiter.getRate();
+    }
+
+    /**
+     * Runs a blocking SQS call and records its latency and outcome.
+     */
+    public <T> T record(Supplier<T> call) {
+        long start = System.nanoTime();
+        try {
+            T result = call.get();
+            record(System.nanoTime() - start, 1, 0, false);
+            return result;
+        } catch (RuntimeException e) {
+            record(System.nanoTime() - start, 1, 1, isThrottling(e));
+            throw e;
+        }
+    }
+
+    /**
+     * Runs a blocking batch request of {@code entries} entries and records its latency and failed entries.
+     */
+    public BatchResult recordBatch(int entries, Supplier<BatchResult> call) {
+        if (entries == 0) {
+            return call.get();
+        }
+        long start = System.nanoTime();
+        try {
+            BatchResult result = call.get();
+            recordBatch(System.nanoTime() - start, entries, result);
+            return result;
+        } catch (RuntimeException e) {
+            record(System.nanoTime() - start, entries, entries, isThrottling(e));
+            throw e;
+        }
+    }
+
+    /**
+     * Same as {@link #recordBatch(int, Supplier)} for a non-blocking batch request.
+     */
+    public CompletableFuture<BatchResult> recordBatchAsync(int entries, Supplier<CompletableFuture<BatchResult>> call) {
+        if (entries == 0) {
+            return call.get();
+        }
+        long start = System.nanoTime();
+        return call.get().whenComplete((result, error) -> {
+            if (error != null) {
+                record(System.nanoTime() - start, entries, entries, isThrottling(error));
+            } else {
+                recordBatch(System.nanoTime() - start, entries, result);
+            }
+        });
+    }
+
+    private void recordBatch(long latency, int entries, BatchResult result) {
+        boolean throttled = result.getFailed()
+                                  .stream()
+                                  .anyMatch(failure -> isThrottlingCode(failure.getCode()));
+        record(latency, entries, result.getFailed().size(), throttled);
+    }
+
+    private void record(long latency, int entries, int failed, boolean throttled) {
+        if (parent != null) {
+            parent.record(latency, entries, failed, throttled);
+        }
+        adjust(latency, entries, failed, throttled);
+    }
+
+    private synchronized void adjust(long latency, int entries, int failed, boolean throttled) {
+        calls++;
+        requests += entries;
+        failures += failed;
+        throttles += throttled ? 1 : 0;
+        latencyNanos += latency;
+
+        long now = System.nanoTime();
+        if (now - lastAdjustment < ADJUSTMENT_INTERVAL) {
+            return;
+        }
+        double rate = rateLimiter.getRate();
+        if (throttles > 0) {
+            rate /= 2;
+        } else if (failures > requests * MAX_FAILURE_RATIO) {
+            rate *= 0.75;
+        } else if (latencyNanos / calls > latencyTargetNanos) {
+            rate *= 0.9;
+        } else {
+            rate += step;
+        }
+        rateLimiter.setRate(Math.min(getMaxRate(now), Math.max(minRate, rate)));
+
+        lastAdjustment = now;
+        calls = 0;
+        requests = 0;
+        failures = 0;
+        throttles = 0;
+        latencyNanos = 0;
+    }
+
+    /**
+     * @return the ceiling; for a share, the parent's ceiling divided by the shares active at {@code now}
+     */
+    private double getMaxRate(long now) {
+        if (parent == null) {
+            return maxRate;
+        }
+        long active = parent.shares.stream()
+                                   .filter(share -> share == this || now - share.lastAcquire < IDLE_AFTER)
+                                   .count();
+        return Math.max(minRate, maxRate / Math.max(1, active));
+    }
+
+    static boolean isThrottlingCode(String errorCode) {
+        return THROTTLING_CODES.contains(errorCode);
+    }
+
+    static boolean isThrottling(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof AmazonServiceException) {
+            return RetryUtils.isThrottlingException((AmazonServiceException) cause)
+                || THROTTLING_CODES.contains(((AmazonServiceException) cause).getErrorCode());
+        }
+        if (cause instanceof AwsServiceException) {
+            return ((AwsServiceException) cause).isThrottlingException();
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%.1f requests per second (min %.1f, max %.1f)", getRate(), minRate,
+                             getMaxRate(System.nanoTime()));
+    }
+}
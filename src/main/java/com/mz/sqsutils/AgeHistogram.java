@@ -0,0 +1,64 @@
+package com.mz.sqsutils;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Distribution of message ages in fixed buckets, from under a minute to two weeks and older, with the oldest and
+ * newest message. Not thread-safe.
+ */
+public class AgeHistogram {
+
+    private static final Duration[] BOUNDS = {
+        Duration.ofMinutes(1), Duration.ofMinutes(5), Duration.ofMinutes(15), Duration.ofHours(1), Duration.ofHours(6),
+        Duration.ofDays(1), Duration.ofDays(3), Duration.ofDays(7), Duration.ofDays(14)
+    };
+
+    private static final String[] LABELS = {"<1m", "<5m", "<15m", "<1h", "<6h", "<1d", "<3d", "<7d", "<14d", ">=14d"};
+
+    private final long[] buckets = new long[BOUNDS.length + 1];
+    private       long   oldest  = Long.MAX_VALUE;
+    private       long   newest  = Long.MIN_VALUE;
+
+    /**
+     * @param timestampMillis e.g. {@code ApproximateFirstReceiveTimestamp}
+     * @param nowMillis       time the ages are relative to
+     */
+    public void record(long timestampMillis, long nowMillis) {
+        long ageMillis = nowMillis - timestampMillis;
+        int  bucket    = 0;
+        while (bucket < BOUNDS.length && ageMillis >= BOUNDS[bucket].toMillis()) {
+            bucket++;
+        }
+        buckets[bucket]++;
+        oldest = Math.min(oldest, timestampMillis);
+        newest = Math.max(newest, timestampMillis);
+    }
+
+    /**
+     * @return count by bucket label, e.g. {@code <1h} for messages from 15 minutes to an hour old, youngest first
+     */
+    public Map<String, Long> getBuckets() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (int i = 0; i < buckets.length; i++) {
+            counts.put(LABELS[i], buckets[i]);
+        }
+        return counts;
+    }
+
+    /**
+     * @return null if nothing was recorded
+     */
+    public Instant getOldest() {
+        return oldest == Long.MAX_VALUE ? null : Instant.ofEpochMilli(oldest);
+    }
+
+    /**
+     * @return null if nothing was recorded
+     */
+    public Instant getNewest() {
+        return newest == Long.MIN_VALUE ? null : Instant.ofEpochMilli(newest);
+    }
+}
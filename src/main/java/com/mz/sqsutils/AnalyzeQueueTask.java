@@ -0,0 +1,72 @@
+package com.mz.sqsutils;
+
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.UncheckedIOException;
+import org.slf4j.Logger;
+
+/**
+ * Reads a queue with a {@link QueueAnalyzer} and returns its {@link QueueAnalysis} as JSON, instead of logging the
+ * messages. Memory use does not depend on the queue depth. Messages are not deleted.
+ */
+public class AnalyzeQueueTask extends SqsTask {
+
+    private final String        queueUrl;
+    private final QueueAnalyzer analyzer;
+    private final ObjectMapper  objectMapper;
+    private final Logger        logger;
+    private final int           inFlight;
+    private       int           limit            = ReadQueueTask.NO_LIMIT;
+    private       int           waitTimeSeconds  = DrainController.DEFAULT_WAIT_TIME_SECONDS;
+    private       int           maxEmptyReceives = DrainController.DEFAULT_MAX_EMPTY_RECEIVES;
+    private       long          recheckMillis    = DrainController.DEFAULT_RECHECK_MILLIS;
+
+    public AnalyzeQueueTask(AmazonSQS client, AsyncSqsEngine asyncEngine, int inFlight, String queueUrl,
+                            QueueAnalyzer analyzer, ObjectMapper objectMapper, Logger logger) {
+        super(client, asyncEngine);
+        this.queueUrl = queueUrl;
+        this.analyzer = analyzer;
+        this.objectMapper = objectMapper;
+        this.logger = logger;
+        this.inFlight = inFlight;
+    }
+
+    /**
+     * @param limit maximum number of messages to read, or {@link ReadQueueTask#NO_LIMIT}, the default
+     */
+    public AnalyzeQueueTask withLimit(int limit) {
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * @see ReadQueueTask#withDrainDetection(int, int, long)
+     */
+    public AnalyzeQueueTask withDrainDetection(int waitTimeSeconds, int maxEmptyReceives, long recheckMillis) {
+        this.waitTimeSeconds = waitTimeSeconds;
+        this.maxEmptyReceives = maxEmptyReceives;
+        this.recheckMillis = recheckMillis;
+        return this;
+    }
+
+    @Override
+    public String call() {
+        ReadQueueTask read = new ReadQueueTask(client, asyncEngine, inFlight, queueUrl, analyzer, logger)
+            .withLimit(limit)
+            .withDrainDetection(waitTimeSeconds, maxEmptyReceives, recheckMillis);
+        read.setMetrics(metrics);
+        read.call();
+        QueueAnalysis analysis = analyzer.analysis(queueUrl);
+        analysis.setExpectedMessages(read.getExpectedMessageCount());
+        analysis.setDuplicates(read.getDuplicates());
+        String response;
+        try {
+            response = objectMapper.writeValueAsString(analysis);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(String.format("Unable to write analysis of %s", queueUrl), e);
+        }
+        logger.info(response);
+        return response;
+    }
+}
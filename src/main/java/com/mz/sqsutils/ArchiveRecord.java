@@ -0,0 +1,77 @@
+package com.mz.sqsutils;
+
+import com.amazonaws.services.sqs.model.Message;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import java.util.Map;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Message removed from a source queue by a re-drive, as written to the {@link MessageArchive}, with the decision
+ * taken. Has the fields of a {@link MessageRecord}, so exports can be replayed too.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ArchiveRecord {
+
+    public enum Decision {
+        /**
+         * Sent to the target queue.
+         */
+        FORWARDED,
+        /**
+         * Rejected by the filter and deleted.
+         */
+        DROPPED,
+        /**
+         * Copy of a message already forwarded, deleted, see {@link Deduplicator}.
+         */
+        DUPLICATE,
+        /**
+         * Written by an export, which deletes nothing. Export records have no decision; they are replayed with this one.
+         */
+        EXPORTED
+    }
+
+    /**
+     * Null for records of an export, see {@link Decision#EXPORTED}.
+     */
+    private Decision                      decision;
+    /**
+     * When the decision was taken, in epoch milliseconds.
+     */
+    private long                          timestamp;
+    private String                        sourceQueue;
+    private String                        targetQueue;
+    private String                        messageId;
+    /**
+     * System attributes, e.g. {@code SentTimestamp}, {@code ApproximateFirstReceiveTimestamp}.
+     */
+    private Map<String, String>           attributes;
+    /**
+     * Message attributes, null if there are none.
+     */
+    private Map<String, MessageAttribute> messageAttributes;
+    private String                        body;
+
+    public static ArchiveRecord of(Decision decision, String sourceQueue, String targetQueue, Message message) {
+        return new ArchiveRecord(decision, System.currentTimeMillis(), sourceQueue, targetQueue,
+                                 message.getMessageId(), message.getAttributes(),
+                                 MessageAttribute.of(message.getMessageAttributes()), message.getBody());
+    }
+
+    /**
+     * @return a message to send, with the original id, body and message attributes
+     */
+    public Message toMessage() {
+        return new Message().withMessageId(messageId)
+                            .withBody(body)
+                            .withAttributes(attributes)
+                            .withMessageAttributes(MessageAttribute.toValues(messageAttributes));
+    }
+}
@@ -0,0 +1,127 @@
+package com.mz.sqsutils;
+
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.Message;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Predicate;
+import org.slf4j.Logger;
+
+/**
+ * Re-drive on the non-blocking {@link AsyncSqsEngine}. Keeps {@code inFlight} independent receive, send, delete
+ * chains running; filtering and rate limiting run on a small thread pool, SQS calls do not hold a thread while they
+ * wait for the response. Rounds of an ordered page (see {@link RedriveQueueTask}) are chained the same way.
+ */
+public class AsyncRedriveQueueTask extends RedriveQueueTask {
+
+    private static final int FILTER_THREADS = 2;
+
+    private final int inFlight;
+
+    /**
+     * @param inFlight number of receive, send, delete chains running concurrently
+     */
+    AsyncRedriveQueueTask(AmazonSQS client, AsyncSqsEngine asyncEngine, String sourceQueue, String targetQueue,
+                          Predicate<String> sendToTarget, Logger logger, int inFlight) {
+        super(client, asyncEngine, sourceQueue, targetQueue, sendToTarget, logger, true);
+        this.inFlight = inFlight;
+    }
+
+    @Override
+    protected String describeEngine() {
+        return String.format(" with %d asynchronous requests in flight", inFlight);
+    }
+
+    @Override
+    protected void redrive(int maxSkips) {
+        ExecutorService executor = Executors.newFixedThreadPool(
+            FILTER_THREADS, new ThreadFactoryBuilder().setNameFormat("redrive-filter-%d").setDaemon(true).build());
+        try {
+            List<CompletableFuture<Void>> chains = new ArrayList<>(inFlight);
+            for (int i = 0; i < inFlight; i++) {
+                CompletableFuture<Void> chain = new CompletableFuture<>();
+                next(chain, maxSkips, executor);
+                chains.add(chain);
+            }
+            CompletableFuture.allOf(chains.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Processes one page and schedules the next one when it is done. Completes {@code done} once
+     * {@link #shouldStop(int)}, checked before each receive on the filter threads: it may wait for the queue depth, so
+     * it does not run on the SDK's event loop.
+     */
+    private void next(CompletableFuture<Void> done, int maxSkips, ExecutorService executor) {
+        if (shouldStop(maxSkips)) {
+            done.complete(null);
+            return;
+        }
+        asyncEngine.receiveMessages(sourceQueue, drain.getWaitTimeSeconds())
+                   .thenComposeAsync(messages -> {
+                       drain.received(messages.size(), allNew(messages));
+                       if (messages.isEmpty()) {
+                           return CompletableFuture.completedFuture(true);
+                       }
+                       visibility.track(messages);
+                       return redrivePage(messages, executor).whenComplete((more, error) -> visibility.done(messages));
+                   }, executor)
+                   .whenCompleteAsync((more, error) -> {
+                       if (error != null) {
+                           done.completeExceptionally(error);
+                       } else if (more) {
+                           next(done, maxSkips, executor);
+                       } else {
+                           done.complete(null);
+                       }
+                   }, executor);
+    }
+
+    /**
+     * @param executor waits for the archive before the delete, off the SDK's event loop
+     */
+    private CompletableFuture<Boolean> redrivePage(List<Message> messages, ExecutorService executor) {
+        List<Message> delete  = new ArrayList<>(messages.size());
+        List<Message> forward = select(messages, delete);
+        return (ordered ? sendInOrder(new OrderedSend(forward)) : send(forward))
+                          .thenApplyAsync(sent -> {
+                              List<Message> deletes = forwarded(sent, delete);
+                              syncArchive();
+                              return deletes;
+                          }, executor)
+                          .thenCompose(deletes -> rateLimiter.recordBatchAsync(
+                              deletes.size(), () -> asyncEngine.deleteMessageBatch(sourceQueue, deletes)))
+                          .thenApply(deleted -> {
+                              deleted(deleted);
+                              return true;
+                          });
+    }
+
+    private CompletableFuture<BatchResult> send(List<Message> messages) {
+        return rateLimiter.recordBatchAsync(messages.size(), () -> asyncEngine.sendMessageBatch(
+            targetQueue, messages, (id, message) -> toSendEntry(targetQueue, id, message)));
+    }
+
+    /**
+     * Sends the rounds one after the other, see {@link OrderedSend}.
+     */
+    private CompletableFuture<BatchResult> sendInOrder(OrderedSend send) {
+        List<Message> round = send.next();
+        if (round.isEmpty()) {
+            return CompletableFuture.completedFuture(send.finish());
+        }
+        return send(round).thenCompose(sent -> {
+            send.sent(sent);
+            return sendInOrder(send);
+        });
+    }
+}
@@ -0,0 +1,278 @@
+package com.mz.sqsutils;
+
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.mz.sqsutils.SqsMetrics.Operation;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.sqs.SqsAsyncClient;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchResponse;
+import software.amazon.awssdk.services.sqs.model.GetQueueAttributesRequest;
+import software.amazon.awssdk.services.sqs.model.GetQueueUrlRequest;
+import software.amazon.awssdk.services.sqs.model.GetQueueUrlResponse;
+import software.amazon.awssdk.services.sqs.model.PurgeQueueRequest;
+import software.amazon.awssdk.services.sqs.model.QueueAttributeName;
+import software.amazon.awssdk.services.sqs.model.ReceiveMessageRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResponse;
+
+/**
+ * Non-blocking SQS operations on the SDK v2 {@link SqsAsyncClient}. Many requests can be in flight at once without
+ * holding a thread each.
+ * <p>
+ * Results are converted to the SDK v1 model ({@link Message}, {@link BatchResult}), so tasks can share filters,
+ * consumers and batch entry builders with the blocking {@link SqsTask} implementation.
+ */
+public class AsyncSqsEngine {
+
+    private final SqsAsyncClient      client;
+    private final Map<String, String> queueUrls = new ConcurrentHashMap<>();
+
+    private SqsMetrics metrics = new SqsMetrics();
+
+    public AsyncSqsEngine(SqsAsyncClient client) {
+        this.client = client;
+    }
+
+    /**
+     * @param metrics where SQS calls are recorded, usually shared with the tasks using this engine
+     */
+    public void setMetrics(SqsMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public CompletableFuture<List<Message>> receiveMessages(String queue) {
+        return receiveMessages(queue, 0);
+    }
+
+    /**
+     * @param waitTimeSeconds long polling wait, up to 20 seconds; 0 for short polling
+     */
+    public CompletableFuture<List<Message>> receiveMessages(String queue, int waitTimeSeconds) {
+        return receiveMessages(queue, waitTimeSeconds, SqsTask.MAX_BATCH_SIZE);
+    }
+
+    /**
+     * @param maxMessages messages to receive at most, up to {@link SqsTask#MAX_BATCH_SIZE}
+     */
+    public CompletableFuture<List<Message>> receiveMessages(String queue, int waitTimeSeconds, int maxMessages) {
+        return queueUrl(queue)
+            .thenCompose(queueUrl -> timed(Operation.RECEIVE, () -> client.receiveMessage(
+                ReceiveMessageRequest.builder()
+                                     .queueUrl(queueUrl)
+                                     .maxNumberOfMessages(maxMessages)
+                                     .waitTimeSeconds(waitTimeSeconds)
+                                     .attributeNamesWithStrings(SqsTask.RECEIVE_ATTRIBUTES)
+                                     .messageAttributeNames(SqsTask.ALL_MESSAGE_ATTRIBUTES)
+                                     .build())))
+            .thenApply(response -> {
+                metrics.entries(Operation.RECEIVE, response.messages().size());
+                return response.messages()
+                               .stream()
+                               .map(AsyncSqsEngine::toMessage)
+                               .collect(Collectors.toList());
+            });
+    }
+
+    /**
+     * Sends messages in one request, or in as many as their payload needs, retrying failed entries the same way as
+     * {@link SqsTask#sendMessageBatch(String, List)}.
+     *
+     * @param toEntry builds the (SDK v1) batch entry for a message
+     */
+    public CompletableFuture<BatchResult> sendMessageBatch(String queue, List<Message> messages,
+                                                           BiFunction<String, Message, SendMessageBatchRequestEntry> toEntry) {
+        return queueUrl(queue).thenCompose(queueUrl -> {
+            List<CompletableFuture<BatchResult>> batches = new ArrayList<>();
+            for (List<Message> batch : SqsTask.sendBatches(messages)) {
+                batches.add(executeBatch(Operation.SEND, batch, pending -> {
+                    List<software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry> entries = new ArrayList<>();
+                    pending.forEach((id, message) -> entries.add(toSendEntry(toEntry.apply(id, message))));
+                    return client.sendMessageBatch(SendMessageBatchRequest.builder().queueUrl(queueUrl).entries(entries).build())
+                                 .thenApply(SendMessageBatchResponse::failed);
+                }));
+            }
+            return CompletableFuture.allOf(batches.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+                BatchResult result = new BatchResult();
+                batches.forEach(batch -> result.add(batch.join()));
+                return result;
+            });
+        });
+    }
+
+    public CompletableFuture<BatchResult> deleteMessageBatch(String queue, List<Message> messages) {
+        return queueUrl(queue).thenCompose(queueUrl -> executeBatch(Operation.DELETE, messages, pending -> {
+            List<DeleteMessageBatchRequestEntry> entries = new ArrayList<>();
+            pending.forEach((id, message) -> entries.add(
+                DeleteMessageBatchRequestEntry.builder().id(id).receiptHandle(message.getReceiptHandle()).build()));
+            return client.deleteMessageBatch(DeleteMessageBatchRequest.builder().queueUrl(queueUrl).entries(entries).build())
+                         .thenApply(DeleteMessageBatchResponse::failed);
+        }));
+    }
+
+    public CompletableFuture<Integer> getTotalMessageCount(String queue) {
+        return queueUrl(queue)
+            .thenCompose(queueUrl -> timed(Operation.GET_ATTRIBUTES, () -> client.getQueueAttributes(
+                GetQueueAttributesRequest.builder()
+                                         .queueUrl(queueUrl)
+                                         .attributeNames(QueueAttributeName.APPROXIMATE_NUMBER_OF_MESSAGES,
+                                                         QueueAttributeName.APPROXIMATE_NUMBER_OF_MESSAGES_DELAYED,
+                                                         QueueAttributeName.APPROXIMATE_NUMBER_OF_MESSAGES_NOT_VISIBLE)
+                                         .build())))
+            .thenApply(response -> response.attributes()
+                                           .values()
+                                           .stream()
+                                           .mapToInt(Integer::parseInt)
+                                           .sum());
+    }
+
+    public CompletableFuture<Void> purgeQueue(String queue) {
+        return queueUrl(queue)
+            .thenCompose(queueUrl -> timed(Operation.PURGE,
+                                           () -> client.purgeQueue(PurgeQueueRequest.builder().queueUrl(queueUrl).build())))
+            .thenApply(response -> null);
+    }
+
+    /**
+     * Queues are configured by name or by URL. The v2 client requires the URL, so names are resolved once and cached.
+     */
+    CompletableFuture<String> queueUrl(String queue) {
+        if (queue.startsWith("https://") || queue.startsWith("http://")) {
+            return CompletableFuture.completedFuture(queue);
+        }
+        String queueUrl = queueUrls.get(queue);
+        if (queueUrl != null) {
+            return CompletableFuture.completedFuture(queueUrl);
+        }
+        return client.getQueueUrl(GetQueueUrlRequest.builder().queueName(queue).build())
+                     .thenApply(GetQueueUrlResponse::queueUrl)
+                     .thenApply(url -> {
+                         queueUrls.put(queue, url);
+                         return url;
+                     });
+    }
+
+    /**
+     * Records the latency of a non-blocking call, and its failure if it completes exceptionally.
+     */
+    private <T> CompletableFuture<T> timed(Operation operation, Supplier<CompletableFuture<T>> call) {
+        long start = System.nanoTime();
+        return call.get().whenComplete((response, error) -> {
+            metrics.called(operation, System.nanoTime() - start);
+            if (error != null) {
+                metrics.failed(operation, AdaptiveRateLimiter.isThrottling(error));
+            }
+        });
+    }
+
+    private CompletableFuture<BatchResult> executeBatch(
+        Operation operation, List<Message> messages,
+        Function<Map<String, Message>, CompletableFuture<List<software.amazon.awssdk.services.sqs.model.BatchResultErrorEntry>>> request) {
+
+        Map<String, Message> pending = new LinkedHashMap<>();
+        for (int i = 0; i < messages.size(); i++) {
+            pending.put(Integer.toString(i), messages.get(i));
+        }
+        return executeBatch(operation, pending, request, new BatchResult(), 1)
+            .thenApply(result -> {
+                metrics.batch(operation, result);
+                return result;
+            });
+    }
+
+    private CompletableFuture<BatchResult> executeBatch(
+        Operation operation, Map<String, Message> pending,
+        Function<Map<String, Message>, CompletableFuture<List<software.amazon.awssdk.services.sqs.model.BatchResultErrorEntry>>> request,
+        BatchResult result, int attempt) {
+
+        if (pending.isEmpty()) {
+            return CompletableFuture.completedFuture(result);
+        }
+        return timed(operation, () -> request.apply(pending)).thenCompose(failed -> {
+            Map<String, Message> retry = new LinkedHashMap<>();
+            for (software.amazon.awssdk.services.sqs.model.BatchResultErrorEntry error : failed) {
+                Message message = pending.remove(error.id());
+                if (message == null) {
+                    continue;
+                }
+                if (Boolean.TRUE.equals(error.senderFault()) || attempt >= SqsTask.MAX_BATCH_ATTEMPTS) {
+                    result.addFailure(message, toErrorEntry(error));
+                } else {
+                    retry.put(error.id(), message);
+                }
+            }
+            result.addSuccessful(pending.values());
+            return executeBatch(operation, retry, request, result, attempt + 1);
+        });
+    }
+
+    static Message toMessage(software.amazon.awssdk.services.sqs.model.Message message) {
+        return new Message()
+            .withMessageId(message.messageId())
+            .withReceiptHandle(message.receiptHandle())
+            .withBody(message.body())
+            .withMD5OfBody(message.md5OfBody())
+            .withAttributes(message.attributesAsStrings())
+            .withMessageAttributes(message.messageAttributes()
+                                          .entrySet()
+                                          .stream()
+                                          .collect(Collectors.toMap(Map.Entry::getKey, e -> toAttributeValue(e.getValue()))));
+    }
+
+    static software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry toSendEntry(SendMessageBatchRequestEntry entry) {
+        return software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry
+            .builder()
+            .id(entry.getId())
+            .messageBody(entry.getMessageBody())
+            .delaySeconds(entry.getDelaySeconds())
+            .messageGroupId(entry.getMessageGroupId())
+            .messageDeduplicationId(entry.getMessageDeduplicationId())
+            .messageAttributes(entry.getMessageAttributes()
+                                    .entrySet()
+                                    .stream()
+                                    .collect(Collectors.toMap(Map.Entry::getKey, e -> toAttributeValue(e.getValue()))))
+            .build();
+    }
+
+    /**
+     * Binary values are wrapped, not copied.
+     */
+    private static MessageAttributeValue toAttributeValue(
+        software.amazon.awssdk.services.sqs.model.MessageAttributeValue value) {
+        return new MessageAttributeValue()
+            .withDataType(value.dataType())
+            .withStringValue(value.stringValue())
+            .withBinaryValue(value.binaryValue() == null ? null : value.binaryValue().asByteBuffer());
+    }
+
+    private static software.amazon.awssdk.services.sqs.model.MessageAttributeValue toAttributeValue(
+        MessageAttributeValue value) {
+        return software.amazon.awssdk.services.sqs.model.MessageAttributeValue
+            .builder()
+            .dataType(value.getDataType())
+            .stringValue(value.getStringValue())
+            .binaryValue(value.getBinaryValue() == null ? null : SdkBytes.fromByteBuffer(value.getBinaryValue()))
+            .build();
+    }
+
+    private static BatchResultErrorEntry toErrorEntry(software.amazon.awssdk.services.sqs.model.BatchResultErrorEntry error) {
+        return new BatchResultErrorEntry()
+            .withId(error.id())
+            .withCode(error.code())
+            .withMessage(error.message())
+            .withSenderFault(error.senderFault());
+    }
+}
@@ -0,0 +1,169 @@
+package com.mz.sqsutils;
+
+import com.amazonaws.services.sqs.model.Message;
+import com.mz.sqsutils.ArchiveRecord.Decision;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import org.apache.logging.log4j.core.LoggerContext;
+import org.apache.logging.log4j.core.async.AsyncLoggerConfig;
+import org.apache.logging.log4j.core.config.LoggerConfig;
+import org.apache.logging.log4j.core.jmx.RingBufferAdmin;
+import org.apache.logging.log4j.util.Unbox;
+import org.slf4j.Logger;
+
+/**
+ * Log of the decision taken for each re-driven message. Only a sample of the messages of each decision is logged, with
+ * the body truncated; every {@code progress} interval, a line with the number of messages of each decision so far is
+ * logged instead. Messages that are not sampled cost two counter increments, nothing is formatted. Sampled lines are
+ * garbage-free with log4j: the message number is boxed by {@link Unbox}, and a truncated body is copied to a
+ * per-thread buffer instead of a new string, both formatted into the line when it is logged.
+ * <p>
+ * Lines are written by a background thread, {@link #awaitLogged(long)} waits for them, e.g. before an invocation ends.
+ * <p>
+ * {@link #full(Logger)} logs every message with its whole body, and no progress. Thread-safe.
+ */
+public class AuditLog {
+
+    /**
+     * Logger of the per-message lines and progress, asynchronous in {@code log4j2.xml}.
+     */
+    public static final String LOGGER_NAME             = "com.mz.sqsutils.audit";
+    public static final int    DEFAULT_BODY_CHARS      = 256;
+    public static final long   DEFAULT_PROGRESS_MILLIS = 30_000;
+    public static final long   FLUSH_TIMEOUT_MILLIS    = 5_000;
+
+    private static final String[] FORMATS = new String[Decision.values().length];
+
+    static {
+        FORMATS[Decision.FORWARDED.ordinal()] = "Forwarding({}): {}";
+        FORMATS[Decision.DROPPED.ordinal()] = "Dropping({}): {}";
+        FORMATS[Decision.DUPLICATE.ordinal()] = "Dropping duplicate({}): {}";
+    }
+
+    private static final ThreadLocal<StringBuilder> TRUNCATED = ThreadLocal.withInitial(StringBuilder::new);
+
+    private final Logger      logger;
+    private final String      label;
+    private final double[]    sampleRates = new double[Decision.values().length];
+    private final LongAdder[] counts      = new LongAdder[Decision.values().length];
+    private final long        startNanos  = System.nanoTime();
+    private final AtomicLong  nextProgressNanos;
+    private       int         bodyChars   = DEFAULT_BODY_CHARS;
+    private       long        progressNanos;
+
+    /**
+     * @param label names the re-drive in progress lines, e.g. its {@link QueuePair}
+     */
+    public AuditLog(Logger logger, String label) {
+        this.logger = logger;
+        this.label = label;
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new LongAdder();
+        }
+        this.nextProgressNanos = new AtomicLong(startNanos);
+        withProgress(DEFAULT_PROGRESS_MILLIS);
+    }
+
+    /**
+     * Every message with its whole body, no progress lines.
+     */
+    public static AuditLog full(Logger logger) {
+        AuditLog audit = new AuditLog(logger, "").withBodyChars(0).withProgress(0);
+        Arrays.fill(audit.sampleRates, 1);
+        return audit;
+    }
+
+    /**
+     * @param sampleRates fraction of the messages logged for each decision, from 0 (none, the default) to 1 (all)
+     */
+    AuditLog withSampling(Map<Decision, Double> sampleRates) {
+        sampleRates.forEach((decision, rate) -> this.sampleRates[decision.ordinal()] = rate);
+        return this;
+    }
+
+    /**
+     * @param bodyChars logged bodies are truncated to this many characters, 0 for whole bodies
+     */
+    AuditLog withBodyChars(int bodyChars) {
+        this.bodyChars = bodyChars;
+        return this;
+    }
+
+    /**
+     * @param progressMillis interval of the progress lines, 0 for none
+     */
+    AuditLog withProgress(long progressMillis) {
+        this.progressNanos = TimeUnit.MILLISECONDS.toNanos(progressMillis);
+        this.nextProgressNanos.set(startNanos + progressNanos);
+        return this;
+    }
+
+    /**
+     * @param messageNumber number of the message in the re-drive, from 1
+     */
+    public void record(Decision decision, int messageNumber, Message message) {
+        counts[decision.ordinal()].increment();
+        double sampleRate = sampleRates[decision.ordinal()];
+        if (sampleRate >= 1 || sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate) {
+            logger.info(FORMATS[decision.ordinal()], Unbox.box(messageNumber), truncate(message.getBody()));
+        }
+        if (progressNanos > 0) {
+            long now  = System.nanoTime();
+            long next = nextProgressNanos.get();
+            if (now - next >= 0 && nextProgressNanos.compareAndSet(next, now + progressNanos)) {
+                logger.info(progress(now));
+            }
+        }
+    }
+
+    /**
+     * @return the body, or its first {@code bodyChars} in the buffer of the thread, valid until its next call
+     */
+    private CharSequence truncate(String body) {
+        if (bodyChars <= 0 || body.length() <= bodyChars) {
+            return body;
+        }
+        StringBuilder truncated = TRUNCATED.get();
+        truncated.setLength(0);
+        return truncated.append(body, 0, bodyChars).append("... (").append(body.length()).append(" chars)");
+    }
+
+    /**
+     * Waits until the lines queued by the audit logger, asynchronous in {@code log4j2.xml}, are written: the execution
+     * environment of a Lambda function is frozen once the invocation returns, with the lines still queued.
+     *
+     * @return false if lines were still queued after {@code timeoutMillis}
+     */
+    public static boolean awaitLogged(long timeoutMillis) {
+        LoggerContext context = LoggerContext.getContext(false);
+        LoggerConfig  config  = context.getConfiguration().getLoggerConfig(LOGGER_NAME);
+        if (!(config instanceof AsyncLoggerConfig)) {
+            return true;
+        }
+        RingBufferAdmin queue    = ((AsyncLoggerConfig) config).createRingBufferAdmin(context.getName());
+        long            deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (queue.getRemainingCapacity() < queue.getBufferSize()) {
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        return true;
+    }
+
+    private String progress(long now) {
+        long   forwarded  = counts[Decision.FORWARDED.ordinal()].sum();
+        long   dropped    = counts[Decision.DROPPED.ordinal()].sum();
+        long   duplicates = counts[Decision.DUPLICATE.ordinal()].sum();
+        double seconds    = (now - startNanos) / 1e9;
+        return String.format("%s: %,d forwarded, %,d dropped, %,d duplicates in %s, %,.1f messages/s",
+                             label, forwarded, dropped, duplicates, Duration.ofNanos(now - startNanos),
+                             (forwarded + dropped + duplicates) / seconds);
+    }
+}
@@ -0,0 +1,272 @@
+package com.mz.sqsutils;
+
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.slf4j.Logger;
+
+/**
+ * Keeps dead-letter queues empty: a long-running process, e.g. a container, that checks the depth of each
+ * {@link QueuePair}'s DLQ every poll interval and re-drives it once {@code threshold} messages are waiting.
+ * <p>
+ * After each re-drive, the pair is not checked again for a backoff that doubles from {@code minBackoff} up to
+ * {@code maxBackoff}, with jitter, so messages that keep failing downstream and coming back are not re-driven in a
+ * tight loop. The backoff is reset once the DLQ is found below the threshold. Re-drives run on a pool of
+ * {@code parallelism} threads kept for the life of the daemon, and share one {@link AdaptiveRateLimiter} like
+ * {@link FleetRedriveTask}.
+ * <p>
+ * {@link #stop()} stops scheduling re-drives; running ones stop at their next page, as if their deadline was reached,
+ * and release their messages. {@link #call()} returns once they have.
+ */
+public class AutoRedriveDaemon extends SqsTask {
+
+    public static final long DEFAULT_POLL_SECONDS        = 60;
+    public static final long DEFAULT_MIN_BACKOFF_SECONDS = 60;
+    public static final long DEFAULT_MAX_BACKOFF_SECONDS = 3600;
+    public static final int  DEFAULT_THRESHOLD           = 1;
+    public static final long DEFAULT_SHUTDOWN_SECONDS    = 60;
+
+    private final List<Watch>                           watches = new ArrayList<>();
+    private final Function<QueuePair, RedriveQueueTask> taskFactory;
+    private final AdaptiveRateLimiter                   globalRateLimiter;
+    private final Logger                                logger;
+    private final int                                   parallelism;
+    private final CountDownLatch                        stopping = new CountDownLatch(1);
+
+    private long pollMillis       = TimeUnit.SECONDS.toMillis(DEFAULT_POLL_SECONDS);
+    private long minBackoffMillis = TimeUnit.SECONDS.toMillis(DEFAULT_MIN_BACKOFF_SECONDS);
+    private long maxBackoffMillis = TimeUnit.SECONDS.toMillis(DEFAULT_MAX_BACKOFF_SECONDS);
+    private int  threshold        = DEFAULT_THRESHOLD;
+    private long shutdownMillis   = TimeUnit.SECONDS.toMillis(DEFAULT_SHUTDOWN_SECONDS);
+
+    /**
+     * @param client            checks the depth of the DLQs
+     * @param taskFactory       creates the (configured) re-drive task of a pair for each re-drive; its rate limiter is
+     *                          replaced by a share of the global one, and its deadline by the daemon's shutdown
+     * @param globalRateLimiter API budget shared by all pairs
+     * @param parallelism       number of pairs re-driven at the same time
+     */
+    AutoRedriveDaemon(AmazonSQS client, List<QueuePair> pairs, Function<QueuePair, RedriveQueueTask> taskFactory,
+                      AdaptiveRateLimiter globalRateLimiter, Logger logger, int parallelism) {
+        super(client);
+        pairs.forEach(pair -> watches.add(new Watch(pair)));
+        this.taskFactory = taskFactory;
+        this.globalRateLimiter = globalRateLimiter;
+        this.logger = logger;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @param pollMillis interval between two depth checks of a DLQ that is not backing off
+     * @param threshold  messages in a DLQ that start a re-drive
+     */
+    AutoRedriveDaemon withPolling(long pollMillis, int threshold) {
+        this.pollMillis = pollMillis;
+        this.threshold = threshold;
+        return this;
+    }
+
+    /**
+     * @param minBackoffMillis wait after the first re-drive of a DLQ, doubled after each further one
+     * @param maxBackoffMillis longest wait between two re-drives of a DLQ
+     */
+    AutoRedriveDaemon withBackoff(long minBackoffMillis, long maxBackoffMillis) {
+        this.minBackoffMillis = minBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        return this;
+    }
+
+    /**
+     * @param shutdownMillis how long {@link #call()} waits for running re-drives to stop after {@link #stop()}
+     */
+    AutoRedriveDaemon withShutdownTimeout(long shutdownMillis) {
+        this.shutdownMillis = shutdownMillis;
+        return this;
+    }
+
+    /**
+     * Runs until {@link #stop()}.
+     *
+     * @return summary of the re-drives of each pair
+     */
+    @Override
+    public String call() {
+        if (watches.isEmpty()) {
+            String response = "No queues to watch.";
+            logger.error(response);
+            return response;
+        }
+        int threads = Math.min(parallelism, watches.size());
+        logger.info(String.format("Watching %d queues every %,d ms, re-driving %d at a time at %s%n", watches.size(),
+                                  pollMillis, threads, globalRateLimiter));
+        Instant         start    = Instant.now();
+        ExecutorService executor = Executors.newFixedThreadPool(
+            threads, new ThreadFactoryBuilder().setNameFormat("auto-redrive-%d").setDaemon(true).build());
+        AdaptiveRateLimiter share = globalRateLimiter.share(threads);
+        try {
+            do {
+                for (Watch watch : watches) {
+                    if (isStopping()) {
+                        break;
+                    }
+                    if (watch.shouldCheck(System.currentTimeMillis()) && watch.isPilingUp()) {
+                        watch.running = true;
+                        executor.execute(() -> watch.redrive(share));
+                    }
+                }
+            } while (!stopping.await(pollMillis, TimeUnit.MILLISECONDS));
+            logger.info(String.format("Stopping, waiting up to %,d ms for running re-drives%n", shutdownMillis));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            stopping.countDown();
+            executor.shutdown();
+            awaitTermination(executor);
+        }
+        String response = summary(Duration.between(start, Instant.now()));
+        logger.info(response);
+        return response;
+    }
+
+    /**
+     * Runs the daemon until the JVM is stopped, e.g. by {@code docker stop}. It is configured like the Lambda function,
+     * with environment variables, see {@link Handler}.
+     */
+    public static void main(String[] args) {
+        Handler.autoRedrive(System.getenv());
+    }
+
+    /**
+     * Stops the daemon, e.g. from a shutdown hook; returns immediately.
+     */
+    public void stop() {
+        stopping.countDown();
+    }
+
+    private boolean isStopping() {
+        return stopping.getCount() == 0;
+    }
+
+    private void awaitTermination(ExecutorService executor) {
+        try {
+            if (!executor.awaitTermination(shutdownMillis, TimeUnit.MILLISECONDS)) {
+                logger.warn("Re-drives still running after the shutdown timeout, interrupting them.");
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private String summary(Duration duration) {
+        StringBuilder pairSummaries = new StringBuilder();
+        int redrives = 0, created = 0, deleted = 0, failed = 0, errors = 0;
+        for (Watch watch : watches) {
+            pairSummaries.append(String.format(
+                "%s: %,d re-drives, created %,d, deleted %,d, failed %,d, errors %,d.%s%n",
+                watch.pair, watch.redrives, watch.created, watch.deleted, watch.failed, watch.errors,
+                watch.lastOutcome == null ? "" : " Last: " + watch.lastOutcome + "."));
+            redrives += watch.redrives;
+            created += watch.created;
+            deleted += watch.deleted;
+            failed += watch.failed;
+            errors += watch.errors;
+        }
+        return String.format(
+            "Auto re-drive of %d queues stopped after %s.%n" +
+                "Re-drives: %,d%n" +
+                "Created: %,d%n" +
+                "Deleted: %,d%n" +
+                "Failed: %,d%n" +
+                "Errors: %,d%n" +
+                "Rate: %s%n",
+            watches.size(), duration, redrives, created, deleted, failed, errors, globalRateLimiter)
+            + pairSummaries;
+    }
+
+    /**
+     * Schedule and totals of one pair. Only the polling thread starts a re-drive, and only when none is running.
+     */
+    private final class Watch {
+        private final QueuePair pair;
+
+        private volatile boolean running;
+        private volatile long    notBefore;
+        private          int     backoffs;
+        private          int     redrives;
+        private          int     created;
+        private          int     deleted;
+        private          int     failed;
+        private          int     errors;
+        private volatile String  lastOutcome;
+
+        Watch(QueuePair pair) {
+            this.pair = pair;
+        }
+
+        boolean shouldCheck(long now) {
+            return !running && now >= notBefore;
+        }
+
+        boolean isPilingUp() {
+            int depth;
+            try {
+                depth = getTotalMessageCount(pair.getSourceQueue());
+            } catch (RuntimeException e) {
+                logger.warn(String.format("Unable to check the depth of %s: %s%n", pair, e), e);
+                return false;
+            }
+            if (depth < threshold) {
+                if (backoffs > 0) {
+                    logger.info(String.format("%s stayed below %,d messages, backoff reset%n", pair, threshold));
+                }
+                backoffs = 0;
+                return false;
+            }
+            logger.info(String.format("%s has %,d messages, re-driving%n", pair, depth));
+            return true;
+        }
+
+        void redrive(AdaptiveRateLimiter share) {
+            try {
+                RedriveQueueTask task = taskFactory.apply(pair)
+                                                   .withRateLimiter(share)
+                                                   .withDeadline(() -> isStopping() ? 0 : Long.MAX_VALUE, 1);
+                task.call();
+                RedriveStats stats = task.getStats();
+                created += stats.getCreated();
+                deleted += stats.getDeleted();
+                failed += stats.getFailed();
+                lastOutcome = task.getOutcome();
+            } catch (RuntimeException e) {
+                errors++;
+                lastOutcome = "failed: " + e;
+                logger.error(String.format("Re-drive of %s failed: %s%n", pair, e), e);
+            } finally {
+                redrives++;
+                long backoff = backoff(backoffs++);
+                notBefore = System.currentTimeMillis() + backoff;
+                logger.info(String.format("%s re-driven, next check in %,d ms%n", pair, backoff));
+                running = false;
+            }
+        }
+    }
+
+    /**
+     * @return {@code minBackoff * 2^attempt}, at most {@code maxBackoff}, reduced by a random amount up to half of it
+     */
+    long backoff(int attempt) {
+        long backoff = Math.min(maxBackoffMillis, minBackoffMillis << Math.min(attempt, 30));
+        return backoff - ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+    }
+}
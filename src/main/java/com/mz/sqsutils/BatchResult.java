@@ -0,0 +1,59 @@
+package com.mz.sqsutils;
+
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.Message;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import lombok.Value;
+
+/**
+ * Outcome of a batched SQS request (send or delete) after per-entry retries.
+ */
+public class BatchResult {
+
+    private final List<Message> successful = new ArrayList<>();
+    private final List<Failure> failed     = new ArrayList<>();
+
+    void addSuccessful(Collection<Message> messages) {
+        successful.addAll(messages);
+    }
+
+    /**
+     * Merges the outcome of another request.
+     */
+    void add(BatchResult other) {
+        successful.addAll(other.successful);
+        failed.addAll(other.failed);
+    }
+
+    void addFailure(Message message, BatchResultErrorEntry error) {
+        failed.add(new Failure(message, error.getCode(), error.getMessage(), Boolean.TRUE.equals(error.getSenderFault())));
+    }
+
+    public List<Message> getSuccessful() {
+        return Collections.unmodifiableList(successful);
+    }
+
+    public List<Failure> getFailed() {
+        return Collections.unmodifiableList(failed);
+    }
+
+    /**
+     * Entry that could not be processed, either because of a sender fault or because retries were exhausted.
+     */
+    @Value
+    public static class Failure {
+        Message message;
+        String  code;
+        String  error;
+        boolean senderFault;
+
+        @Override
+        public String toString() {
+            return String.format("messageId=%s, code=%s, senderFault=%s: %s",
+                                 message.getMessageId(), code, senderFault, error);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.mz.sqsutils;
+
+/**
+ * Persists {@link RedriveCheckpoint}s between invocations.
+ */
+public interface CheckpointStore {
+
+    /**
+     * @return the checkpoint saved under {@code key}, or null if there is none
+     */
+    RedriveCheckpoint load(String key);
+
+    void save(String key, RedriveCheckpoint checkpoint);
+
+    void clear(String key);
+
+    /**
+     * Key of the checkpoint of a re-drive from {@code sourceQueue} to {@code targetQueue}. Safe to use as a file
+     * name or S3 key.
+     */
+    static String key(String sourceQueue, String targetQueue) {
+        return (sourceQueue + "--" + targetQueue).replaceAll("[^A-Za-z0-9._-]", "_") + ".json";
+    }
+}
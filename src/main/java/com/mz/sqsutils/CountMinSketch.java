@@ -0,0 +1,81 @@
+package com.mz.sqsutils;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Approximate frequency of any item of a stream, in {@code width * depth} counters.
+ * <p>
+ * Each item is counted in one counter of each of the {@code depth} rows, chosen by hashing; its frequency is the
+ * smallest of its counters. Estimates never undercount, and overcount by more than {@code e / width} times the stream
+ * length with a probability of at most {@code e^-depth}. Only the smallest counters of an item are incremented
+ * (conservative update), which makes overcounting rarer. Not thread-safe.
+ */
+public class CountMinSketch {
+
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    private final long[][] counts;
+    private final int      width;
+    private       long     total;
+
+    public CountMinSketch(int width, int depth) {
+        this.width = width;
+        this.counts = new long[depth][width];
+    }
+
+    public void add(String item) {
+        total++;
+        int[] indexes = indexes(item);
+        long  minimum = estimate(indexes);
+        for (int row = 0; row < counts.length; row++) {
+            if (counts[row][indexes[row]] == minimum) {
+                counts[row][indexes[row]]++;
+            }
+        }
+    }
+
+    /**
+     * @return upper bound of the number of times the item was added
+     */
+    public long estimate(String item) {
+        return estimate(indexes(item));
+    }
+
+    /**
+     * @return overcount of an estimate that is not exceeded with a probability of {@code 1 - e^-depth}
+     */
+    public long getErrorBound() {
+        return (long) Math.ceil(Math.E / width * total);
+    }
+
+    public long getMemoryBytes() {
+        return (long) counts.length * width * Long.BYTES;
+    }
+
+    private long estimate(int[] indexes) {
+        long minimum = Long.MAX_VALUE;
+        for (int row = 0; row < counts.length; row++) {
+            minimum = Math.min(minimum, counts[row][indexes[row]]);
+        }
+        return minimum;
+    }
+
+    /**
+     * One column per row, from the two halves of a 128-bit hash (Kirsch-Mitzenmacher double hashing).
+     */
+    private int[] indexes(String item) {
+        ByteBuffer hash    = ByteBuffer.wrap(HASH.hashString(item, StandardCharsets.UTF_8).asBytes())
+                                       .order(ByteOrder.LITTLE_ENDIAN);
+        long       h1      = hash.getLong(0);
+        long       h2      = hash.getLong(8);
+        int[]      indexes = new int[counts.length];
+        for (int row = 0; row < counts.length; row++) {
+            indexes[row] = (int) Math.floorMod(h1 + row * h2, (long) width);
+        }
+        return indexes;
+    }
+}
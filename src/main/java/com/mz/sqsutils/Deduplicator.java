@@ -0,0 +1,95 @@
+package com.mz.sqsutils;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Detects copies of messages already forwarded during a re-drive, e.g. retries of one webhook notification, from a
+ * 64-bit fingerprint of the message body or of one of its fields. Fingerprints are kept in a {@link FingerprintSet}
+ * with a memory cap. Thread-safe, shared by all workers of a task.
+ */
+public class Deduplicator {
+
+    public enum Mode {
+        /**
+         * Duplicates are deleted from the source queue without being forwarded.
+         */
+        DROP,
+        /**
+         * Duplicates are forwarded, and only counted: shows what {@link #DROP} would save.
+         */
+        COUNT
+    }
+
+    public static final long DEFAULT_MEMORY_BYTES = 16L * 1024 * 1024;
+
+    private static final HashFunction FINGERPRINT = Hashing.farmHashFingerprint64();
+
+    private final FingerprintSet     fingerprints;
+    private final JsonFieldExtractor keyExtractor;
+    private final Mode               mode;
+    private final AtomicInteger      duplicates = new AtomicInteger();
+
+    /**
+     * @param keyPath field identifying a message, see {@link JsonFieldExtractor}; null for the whole body. Messages
+     *                without the field are identified by their body.
+     */
+    public Deduplicator(Mode mode, String keyPath, JsonFactory jsonFactory, long maxMemoryBytes) {
+        this.mode = mode;
+        this.keyExtractor = keyPath == null ? null
+                                            : new JsonFieldExtractor(jsonFactory, Collections.singletonList(keyPath));
+        this.fingerprints = new FingerprintSet(maxMemoryBytes);
+    }
+
+    /**
+     * Records the message as forwarded.
+     *
+     * @return true if a message with the same fingerprint was recorded before and the message is to be dropped; in
+     * {@link Mode#COUNT} mode duplicates are counted, but false is returned
+     */
+    public boolean isDuplicate(String messageBody) {
+        if (fingerprints.add(fingerprint(messageBody))) {
+            return false;
+        }
+        duplicates.incrementAndGet();
+        return mode == Mode.DROP;
+    }
+
+    /**
+     * Forgets a message that was recorded but not forwarded, e.g. deferred or failed to send, so the copy received
+     * again later is not taken for a duplicate.
+     */
+    public void forget(String messageBody) {
+        fingerprints.remove(fingerprint(messageBody));
+    }
+
+    public int getDuplicates() {
+        return duplicates.get();
+    }
+
+    private long fingerprint(String messageBody) {
+        String key = messageBody;
+        if (keyExtractor != null) {
+            try {
+                String value = keyExtractor.extract(messageBody)[0];
+                if (value != null) {
+                    key = value;
+                }
+            } catch (IOException e) {
+                // not JSON: identified by the body
+            }
+        }
+        return FINGERPRINT.hashString(key, StandardCharsets.UTF_8).asLong();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %,d duplicates%s, %s", mode == Mode.DROP ? "dropped" : "counted", getDuplicates(),
+                             keyExtractor == null ? "" : " by key", fingerprints);
+    }
+}
@@ -0,0 +1,173 @@
+package com.mz.sqsutils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+
+/**
+ * Decides when a re-drive has received every message that was in the source queue when it started.
+ * <p>
+ * A single empty short-polling receive does not mean the queue is empty: short polling samples a subset of the SQS
+ * servers, so sparse queues return empty pages while messages are left. Instead, receives use long polling, and the
+ * re-drive stops only after {@code maxEmptyReceives} empty receives in a row, confirmed by the queue depth. It also
+ * stops after as many pages in a row with only messages sent after the start: the remaining messages are for the next
+ * re-drive. The depth is also rechecked periodically, so a drained queue is noticed without waiting for empty
+ * receives. Messages the re-drive {@link #deferred(int) deferred} are waited for: it does not end before they are
+ * visible again. Thread-safe, shared by all receivers of a task.
+ */
+public class DrainController {
+
+    public enum Outcome {
+        /**
+         * Still receiving.
+         */
+        RUNNING,
+        /**
+         * The queue is empty.
+         */
+        DRAINED,
+        /**
+         * Every message older than the re-drive was received; the messages left were sent after it started or are
+         * in flight in another consumer.
+         */
+        CAUGHT_UP
+    }
+
+    public static final int  DEFAULT_WAIT_TIME_SECONDS  = 5;
+    public static final int  DEFAULT_MAX_EMPTY_RECEIVES = 3;
+    public static final long DEFAULT_RECHECK_MILLIS     = 30_000;
+
+    /**
+     * Deferred messages are waited for this much longer than their visibility timeout, as the queue depth lags.
+     */
+    private static final long DEFERRED_GRACE_MILLIS = 1_000;
+
+    private final Supplier<QueueDepth> queueDepth;
+    private final int                  waitTimeSeconds;
+    private final int                  maxEmptyReceives;
+    private final long                 recheckNanos;
+    private final Logger               logger;
+
+    private int        emptyStreak;
+    private int        newStreak;
+    private long       lastRecheck = System.nanoTime();
+    private boolean    deferred;
+    private long       deferredUntil;
+    private int        emptyReceives;
+    private QueueDepth lastDepth;
+    private Outcome    outcome = Outcome.RUNNING;
+
+    /**
+     * @param queueDepth       depth of the source queue
+     * @param waitTimeSeconds  long polling wait of each receive, 0 for short polling
+     * @param maxEmptyReceives empty receives (or pages of new messages only) in a row before the queue is rechecked
+     * @param recheckMillis    interval of the periodic depth recheck, 0 to disable
+     */
+    public DrainController(Supplier<QueueDepth> queueDepth, int waitTimeSeconds, int maxEmptyReceives,
+                           long recheckMillis, Logger logger) {
+        this.queueDepth = queueDepth;
+        this.waitTimeSeconds = waitTimeSeconds;
+        this.maxEmptyReceives = Math.max(1, maxEmptyReceives);
+        this.recheckNanos = TimeUnit.MILLISECONDS.toNanos(recheckMillis);
+        this.logger = logger;
+    }
+
+    public int getWaitTimeSeconds() {
+        return waitTimeSeconds;
+    }
+
+    /**
+     * @return false once the queue is drained or caught up
+     */
+    public synchronized boolean shouldContinue() {
+        if (outcome == Outcome.RUNNING && recheckNanos > 0 && System.nanoTime() - lastRecheck >= recheckNanos) {
+            QueueDepth depth = recheck();
+            logger.info(String.format("Source queue: %s%n", depth));
+            if (depth.getTotal() == 0) {
+                outcome = Outcome.DRAINED;
+            }
+        }
+        return outcome == Outcome.RUNNING;
+    }
+
+    /**
+     * Records a receive.
+     *
+     * @param messages number of messages received
+     * @param allNew   true if all received messages were sent after the re-drive started
+     */
+    public synchronized void received(int messages, boolean allNew) {
+        if (outcome != Outcome.RUNNING) {
+            return;
+        }
+        if (messages == 0) {
+            emptyReceives++;
+            if (++emptyStreak >= maxEmptyReceives) {
+                QueueDepth depth = recheck();
+                if (depth.getVisible() + depth.getDelayed() > 0 || isWaitingForDeferred()) {
+                    // sparse queue, depth not updated yet, or deferred messages to receive again: keep receiving
+                    emptyStreak = 0;
+                } else {
+                    outcome = depth.getNotVisible() == 0 ? Outcome.DRAINED : Outcome.CAUGHT_UP;
+                }
+            }
+        } else if (allNew) {
+            emptyStreak = 0;
+            if (++newStreak >= maxEmptyReceives && !isWaitingForDeferred()) {
+                recheck();
+                outcome = Outcome.CAUGHT_UP;
+            }
+        } else {
+            emptyStreak = 0;
+            newStreak = 0;
+        }
+    }
+
+    /**
+     * Records messages made invisible by the re-drive, to be received again once they are visible.
+     *
+     * @param seconds visibility timeout of the messages
+     */
+    public synchronized void deferred(int seconds) {
+        long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds)
+            + TimeUnit.MILLISECONDS.toNanos(DEFERRED_GRACE_MILLIS);
+        if (!deferred || until - deferredUntil > 0) {
+            deferredUntil = until;
+        }
+        deferred = true;
+    }
+
+    /**
+     * Rechecks a caught up queue once the re-drive finished its in-flight messages, which were counted as in flight by
+     * the last check.
+     */
+    public synchronized void finish() {
+        if (outcome == Outcome.CAUGHT_UP && recheck().getTotal() == 0) {
+            outcome = Outcome.DRAINED;
+        }
+    }
+
+    public synchronized Outcome getOutcome() {
+        return outcome;
+    }
+
+    public synchronized int getEmptyReceives() {
+        return emptyReceives;
+    }
+
+    private boolean isWaitingForDeferred() {
+        return deferred && System.nanoTime() - deferredUntil < 0;
+    }
+
+    private QueueDepth recheck() {
+        lastRecheck = System.nanoTime();
+        lastDepth = queueDepth.get();
+        return lastDepth;
+    }
+
+    @Override
+    public synchronized String toString() {
+        String depth = lastDepth == null ? "" : String.format(", last depth %s", lastDepth);
+        return String.format("%s after %,d empty receives%s", outcome, emptyReceives, depth);
+    }
+}
@@ -0,0 +1,110 @@
+package com.mz.sqsutils;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Publishes {@link SqsMetrics} as CloudWatch Embedded Metric Format: one JSON document per flush, printed to stdout,
+ * where the Lambda runtime forwards it to CloudWatch Logs and CloudWatch extracts the metrics. No API calls are made.
+ * <p>
+ * Each flush reports the interval since the previous one: calls, entries, errors and throttles, p50/p99/max latency of
+ * each SQS operation, filter CPU time and rate limiter wait time. {@link #close()} flushes the last interval.
+ */
+public class EmfMetricsReporter implements AutoCloseable {
+
+    public static final String NAMESPACE                = "SqsUtils";
+    public static final long   DEFAULT_INTERVAL_SECONDS = 60;
+
+    private final SqsMetrics               metrics;
+    private final ObjectMapper             objectMapper;
+    private final Map<String, String>      dimensions;
+    private final Consumer<String>         sink;
+    private final ScheduledExecutorService scheduler;
+
+    private SqsMetrics.Snapshot last;
+
+    /**
+     * @param dimensions CloudWatch dimensions of all metrics, e.g. {@code Command=REDRIVE}
+     * @param sink       receives the EMF documents, e.g. {@code System.out::println}
+     */
+    public EmfMetricsReporter(SqsMetrics metrics, ObjectMapper objectMapper, Map<String, String> dimensions,
+                              Consumer<String> sink, long intervalSeconds) {
+        this.metrics = metrics;
+        this.objectMapper = objectMapper;
+        this.dimensions = dimensions;
+        this.sink = sink;
+        this.last = metrics.intervalSnapshot();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("emf-metrics-%d").setDaemon(true).build());
+        scheduler.scheduleAtFixedRate(this::flush, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    public synchronized void flush() {
+        SqsMetrics.Snapshot snapshot = metrics.intervalSnapshot();
+        SqsMetrics.Snapshot interval = snapshot.minus(last);
+        last = snapshot;
+        sink.accept(toEmf(interval, System.currentTimeMillis()));
+    }
+
+    String toEmf(SqsMetrics.Snapshot interval, long timestamp) {
+        ObjectNode document   = objectMapper.createObjectNode();
+        ObjectNode directive  = document.putObject("_aws").put("Timestamp", timestamp)
+                                        .putArray("CloudWatchMetrics").addObject();
+        directive.put("Namespace", NAMESPACE);
+        ArrayNode dimensionSet = directive.putArray("Dimensions").addArray();
+        dimensions.forEach((name, value) -> {
+            dimensionSet.add(name);
+            document.put(name, value);
+        });
+        ArrayNode definitions = directive.putArray("Metrics");
+
+        interval.getOperations().forEach((operation, snapshot) -> {
+            if (snapshot.getCalls() == 0) {
+                return;
+            }
+            String name = toCamelCase(operation);
+            metric(document, definitions, name + "Calls", "Count", snapshot.getCalls());
+            metric(document, definitions, name + "Entries", "Count", snapshot.getEntries());
+            metric(document, definitions, name + "Errors", "Count", snapshot.getErrors());
+            metric(document, definitions, name + "Throttles", "Count", snapshot.getThrottles());
+            metric(document, definitions, name + "LatencyP50", "Milliseconds", snapshot.getLatency().getPercentileMillis(0.5));
+            metric(document, definitions, name + "LatencyP99", "Milliseconds", snapshot.getLatency().getPercentileMillis(0.99));
+            metric(document, definitions, name + "LatencyMax", "Milliseconds", snapshot.getLatency().getMaxMillis());
+        });
+        metric(document, definitions, "FilterCalls", "Count", interval.getFilterCalls());
+        metric(document, definitions, "FilterCpuTime", "Milliseconds", interval.getFilterCpuNanos() / 1e6);
+        metric(document, definitions, "RateLimiterWait", "Milliseconds", interval.getLimiterWaitNanos() / 1e6);
+        try {
+            return objectMapper.writeValueAsString(document);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void metric(ObjectNode document, ArrayNode definitions, String name, String unit, double value) {
+        definitions.addObject().put("Name", name).put("Unit", unit);
+        document.put(name, value);
+    }
+
+    private static String toCamelCase(SqsMetrics.Operation operation) {
+        StringBuilder name = new StringBuilder();
+        for (String word : operation.name().split("_")) {
+            name.append(word.charAt(0)).append(word.substring(1).toLowerCase());
+        }
+        return name.toString();
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        flush();
+    }
+}
@@ -0,0 +1,52 @@
+package com.mz.sqsutils;
+
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.Message;
+import java.util.function.BiFunction;
+import org.slf4j.Logger;
+
+/**
+ * Streams every message of a queue to rolling gzip NDJSON files (see {@link RollingNdjsonWriter}), one
+ * {@link MessageRecord} per line. Memory use does not depend on the queue depth.
+ * <p>
+ * Reads at most the number of messages in the queue when the export starts, so messages that become visible again
+ * during a long export are not read forever. Messages are not deleted.
+ */
+public class ExportQueueTask extends SqsTask {
+
+    private final String              queueUrl;
+    private final RollingNdjsonWriter writer;
+    private final Logger              logger;
+    private final int                 inFlight;
+
+    public ExportQueueTask(AmazonSQS client, AsyncSqsEngine asyncEngine, int inFlight, String queueUrl,
+                           RollingNdjsonWriter writer, Logger logger) {
+        super(client, asyncEngine);
+        this.queueUrl = queueUrl;
+        this.writer = writer;
+        this.logger = logger;
+        this.inFlight = inFlight;
+    }
+
+    @Override
+    public String call() {
+        long start = System.currentTimeMillis();
+        BiFunction<Message, String, String> export = (message, body) -> {
+            writer.write(MessageRecord.of(message));
+            return body;
+        };
+        try {
+            ReadQueueTask read = new ReadQueueTask(client, asyncEngine, inFlight, queueUrl, export, logger)
+                .withLimit(ReadQueueTask.NO_LIMIT);
+            read.setMetrics(metrics);
+            read.call();
+        } finally {
+            writer.close();
+        }
+        String response = String.format("Exported %,d messages (%,d bytes uncompressed) from %s in %,d ms to %s%n",
+                                         writer.getRecords(), writer.getBytes(), queueUrl,
+                                         System.currentTimeMillis() - start, writer.getFiles());
+        logger.info(response);
+        return response;
+    }
+}
@@ -0,0 +1,61 @@
+package com.mz.sqsutils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Stores checkpoints as JSON files in a local directory. Intended for local runs and testing; in Lambda, /tmp only
+ * survives while the execution environment is reused.
+ */
+public class FileCheckpointStore implements CheckpointStore {
+
+    private final Path         directory;
+    private final ObjectMapper objectMapper;
+
+    public FileCheckpointStore(Path directory, ObjectMapper objectMapper) {
+        this.directory = directory;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public RedriveCheckpoint load(String key) {
+        Path file = directory.resolve(key);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(file.toFile(), RedriveCheckpoint.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Unable to read checkpoint %s", file), e);
+        }
+    }
+
+    /**
+     * Writes to a temporary file first, so a crash never leaves a partially written checkpoint.
+     */
+    @Override
+    public void save(String key, RedriveCheckpoint checkpoint) {
+        Path file = directory.resolve(key);
+        try {
+            Files.createDirectories(directory);
+            Path tmp = Files.createTempFile(directory, key, ".tmp");
+            objectMapper.writeValue(tmp.toFile(), checkpoint);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Unable to write checkpoint %s", file), e);
+        }
+    }
+
+    @Override
+    public void clear(String key) {
+        try {
+            Files.deleteIfExists(directory.resolve(key));
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Unable to delete checkpoint %s", key), e);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.mz.sqsutils;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Declarative message filter rule, compiled by {@link MessageFilter}. Either {@code exclude} or {@code include} (a
+ * substring of the raw message body) or {@code field}, {@code op} and {@code value}, e.g.
+ * <pre>
+ * {"exclude": "https://hooks.slack.com/services/"}
+ * {"include": "https://hooks.slack.com/services/"}
+ * {"field": "payload.payload.statusTime", "op": "NEWER_THAN_DAYS", "value": "3"}
+ * </pre>
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class FilterRule {
+    /**
+     * Messages whose body contains this string are dropped.
+     */
+    private String exclude;
+    /**
+     * Only messages whose body contains this string pass.
+     */
+    private String include;
+    /**
+     * Dot separated path of the field, see {@link JsonFieldExtractor}.
+     */
+    private String field;
+    /**
+     * One of {@link MessageFilter.Op}.
+     */
+    private String op;
+    private String value;
+}
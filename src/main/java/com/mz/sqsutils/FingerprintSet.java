@@ -0,0 +1,110 @@
+package com.mz.sqsutils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Set of 64-bit fingerprints in a fixed-size open-addressing table of primitive longs, 8 bytes per slot.
+ * <p>
+ * Lock-free: slots are claimed with compare-and-set and probed linearly, so concurrent workers can add fingerprints
+ * without contention. The table never grows: once it is three quarters full, further fingerprints are not recorded
+ * and {@link #add(long)} reports them as new, so a full set lets duplicates through rather than dropping unique
+ * messages. Removed fingerprints leave a tombstone.
+ */
+public class FingerprintSet {
+
+    private static final long EMPTY     = 0;
+    private static final long TOMBSTONE = -1;
+
+    private final AtomicLongArray slots;
+    private final int             mask;
+    private final int             maxSize;
+    private final AtomicInteger   size     = new AtomicInteger();
+    private final AtomicInteger   overflow = new AtomicInteger();
+
+    /**
+     * @param maxBytes memory cap of the table; rounded down to a power of two number of slots
+     */
+    public FingerprintSet(long maxBytes) {
+        long requested = Math.max(16, Math.min(maxBytes / Long.BYTES, 1 << 30));
+        int  capacity  = Integer.highestOneBit((int) requested);
+        this.slots = new AtomicLongArray(capacity);
+        this.mask = capacity - 1;
+        this.maxSize = capacity / 4 * 3;
+    }
+
+    /**
+     * @return true if the fingerprint was not in the set, or the set is full
+     */
+    public boolean add(long fingerprint) {
+        long value = normalize(fingerprint);
+        for (int i = index(value), probes = 0; probes <= mask; i = (i + 1) & mask, probes++) {
+            long current = slots.get(i);
+            if (current == value) {
+                return false;
+            }
+            if (current == EMPTY) {
+                if (size.get() >= maxSize) {
+                    overflow.incrementAndGet();
+                    return true;
+                }
+                if (slots.compareAndSet(i, EMPTY, value)) {
+                    size.incrementAndGet();
+                    return true;
+                }
+                // another thread claimed the slot, check whether it added the same fingerprint
+                i = (i - 1) & mask;
+                probes--;
+            }
+        }
+        overflow.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Forgets a fingerprint, e.g. of a message that could not be forwarded and will be received again.
+     */
+    public void remove(long fingerprint) {
+        long value = normalize(fingerprint);
+        for (int i = index(value), probes = 0; probes <= mask; i = (i + 1) & mask, probes++) {
+            long current = slots.get(i);
+            if (current == EMPTY) {
+                return;
+            }
+            if (current == value) {
+                slots.compareAndSet(i, value, TOMBSTONE);
+                return;
+            }
+        }
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * @return fingerprints not recorded because the set was full
+     */
+    public int getOverflow() {
+        return overflow.get();
+    }
+
+    public long getMemoryBytes() {
+        return (long) slots.length() * Long.BYTES;
+    }
+
+    private int index(long value) {
+        // fingerprints are hashes already, mix the high bits in for small tables
+        return (int) (value ^ (value >>> 32)) & mask;
+    }
+
+    private static long normalize(long fingerprint) {
+        return fingerprint == EMPTY || fingerprint == TOMBSTONE ? 1 : fingerprint;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%,d fingerprints in %,d KiB%s", size(), getMemoryBytes() / 1024,
+                             getOverflow() == 0 ? "" : String.format(", %,d not recorded (full)", getOverflow()));
+    }
+}
@@ -0,0 +1,140 @@
+package com.mz.sqsutils;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import org.slf4j.Logger;
+
+/**
+ * Re-drives many dead-letter queues at once. Each {@link QueuePair} is re-driven by its own {@link RedriveQueueTask}
+ * on a shared pool of {@code parallelism} threads. All tasks draw from one global {@link AdaptiveRateLimiter}; each
+ * task gets a fair share of it, so one large queue does not hold back the others.
+ * <p>
+ * A failing pair does not stop the fleet, it is reported in the combined summary.
+ */
+public class FleetRedriveTask implements Callable<String> {
+
+    private final List<QueuePair>                       pairs;
+    private final Function<QueuePair, RedriveQueueTask> taskFactory;
+    private final AdaptiveRateLimiter                   globalRateLimiter;
+    private final Logger                                logger;
+    private final int                                   parallelism;
+
+    private volatile boolean outOfTime;
+
+    /**
+     * @param taskFactory       creates the (configured) re-drive task of a pair; its rate limiter is replaced by a share
+     *                          of the global one
+     * @param globalRateLimiter API budget shared by all pairs
+     * @param parallelism       number of pairs re-driven at the same time
+     */
+    FleetRedriveTask(List<QueuePair> pairs, Function<QueuePair, RedriveQueueTask> taskFactory,
+                     AdaptiveRateLimiter globalRateLimiter, Logger logger, int parallelism) {
+        this.pairs = pairs;
+        this.taskFactory = taskFactory;
+        this.globalRateLimiter = globalRateLimiter;
+        this.logger = logger;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @return true if at least one pair stopped before the deadline and its re-drive is not complete
+     */
+    public boolean isOutOfTime() {
+        return outOfTime;
+    }
+
+    @Override
+    public String call() {
+        if (pairs.isEmpty()) {
+            String response = "No queues to re-drive.";
+            logger.error(response);
+            return response;
+        }
+        int threads = Math.min(parallelism, pairs.size());
+        logger.info(String.format("Re-driving %d queues, %d at a time, at %s%n", pairs.size(), threads, globalRateLimiter));
+
+        Instant         start    = Instant.now();
+        ExecutorService executor = Executors.newFixedThreadPool(
+            threads, new ThreadFactoryBuilder().setNameFormat("fleet-%d").setDaemon(true).build());
+        List<RedriveQueueTask> tasks   = new ArrayList<>(pairs.size());
+        List<Future<String>>   results = new ArrayList<>(pairs.size());
+        try {
+            for (QueuePair pair : pairs) {
+                RedriveQueueTask task = taskFactory.apply(pair).withRateLimiter(globalRateLimiter.share(threads));
+                tasks.add(task);
+                results.add(executor.submit(task::call));
+            }
+            List<String> responses = new ArrayList<>(pairs.size());
+            for (int i = 0; i < pairs.size(); i++) {
+                responses.add(await(pairs.get(i), results.get(i)));
+            }
+            return summary(Duration.between(start, Instant.now()), tasks, responses);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return response of the pair's task, or null if it failed
+     */
+    private String await(QueuePair pair, Future<String> result) {
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            logger.error(String.format("Re-drive of %s failed: %s%n", pair, e.getCause()), e.getCause());
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Fleet re-drive interrupted.", e);
+        }
+    }
+
+    private String summary(Duration duration, List<RedriveQueueTask> tasks, List<String> responses) {
+        StringBuilder pairSummaries = new StringBuilder();
+        int created = 0, deleted = 0, dropped = 0, skipped = 0, failed = 0, errors = 0;
+        for (int i = 0; i < pairs.size(); i++) {
+            RedriveStats stats = tasks.get(i).getStats();
+            String       outcome;
+            if (responses.get(i) == null) {
+                errors++;
+                outcome = "Re-drive failed, see the log.";
+            } else {
+                outcome = tasks.get(i).getOutcome() == null ? responses.get(i).trim() : tasks.get(i).getOutcome() + ".";
+            }
+            if (tasks.get(i).isOutOfTime()) {
+                outOfTime = true;
+            }
+            pairSummaries.append(String.format(
+                "%s: created %,d, deleted %,d, dropped %,d, skipped %,d, failed %,d.%s%n",
+                pairs.get(i), stats.getCreated(), stats.getDeleted(), stats.getDropped(), stats.getSkipped(),
+                stats.getFailed(), outcome.isEmpty() ? "" : " " + outcome));
+            created += stats.getCreated();
+            deleted += stats.getDeleted();
+            dropped += stats.getDropped();
+            skipped += stats.getSkipped();
+            failed += stats.getFailed();
+        }
+        String response = String.format(
+            "Fleet re-drive of %d queues %s in %s.%n" +
+                "Created: %,d%n" +
+                "Deleted: %,d%n" +
+                "Dropped: %,d%n" +
+                "Skipped: %,d%n" +
+                "Failed: %,d%n" +
+                "Errors: %,d%n" +
+                "Rate: %s%n",
+            pairs.size(), outOfTime ? "stopped at the deadline" : "complete", duration, created, deleted, dropped, skipped, failed, errors, globalRateLimiter)
+            + pairSummaries;
+        logger.info(response);
+        return response;
+    }
+}
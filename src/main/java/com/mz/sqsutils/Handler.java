@@ -1,8 +1,8 @@
 package com.mz.sqsutils;
 
 import com.amazonaws.regions.Regions;
+import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.sqs.AmazonSQS;
-import com.amazonaws.services.sqs.AmazonSQSClient;
 import com.amazonaws.services.sqs.model.Message;
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.LambdaLogger;
@@ -12,19 +12,22 @@ import com.amazonaws.services.lambda.runtime.events.SQSEvent.SQSMessage;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.mz.hei.models.model.Event;
 import com.mz.jacksonutil.ObjectMapperBuilder;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.io.UncheckedIOException;
 import java.lang.StringBuilder;
-import java.time.DayOfWeek;
-import java.time.Instant;
-import java.time.temporal.ChronoUnit;
-import java.time.ZoneId;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Clock;
+import java.time.Duration;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.concurrent.CompletableFuture;
-import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -32,6 +35,8 @@ import java.util.Map;
 import java.util.Set;
 import java.util.function.BiFunction;
 import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -44,6 +49,9 @@ import software.amazon.awssdk.services.lambda.model.GetAccountSettingsResponse;
 import software.amazon.awssdk.services.lambda.model.ServiceException;
 import software.amazon.awssdk.services.lambda.LambdaAsyncClient;
 import software.amazon.awssdk.services.lambda.model.AccountUsage;
+import software.amazon.awssdk.services.lambda.model.InvocationType;
+import software.amazon.awssdk.services.lambda.model.InvokeRequest;
+import software.amazon.awssdk.core.SdkBytes;
 
 /**
  * SQS management utilities.
@@ -57,15 +65,101 @@ public class Handler implements RequestHandler<SQSEvent, String> {
     private static final String CMD_REDRIVE = "REDRIVE";
     private static final String CMD_PURGE = "PURGE";
     private static final String CMD_READ = "READ";
+    private static final String CMD_FLEET = "FLEET";
+    private static final String CMD_EXPORT = "EXPORT";
+    private static final String CMD_REPLAY = "REPLAY";
+    /**
+     * Not a command of the function: dimension of the metrics of {@link AutoRedriveDaemon}.
+     */
+    private static final String CMD_AUTO = "AUTO";
+
+    private static final String ENGINE_PIPELINE = "PIPELINE";
+    private static final String ENGINE_ASYNC = "ASYNC";
+    private static final String DEFAULT_IN_FLIGHT = "16";
+    private static final String KEY_WEBHOOK_URL = "WEBHOOK_URL";
+    private static final String DEFAULT_DEFER_SECONDS = "30";
+    private static final String DEFAULT_STOP_MARGIN_MILLIS = "30000";
+    private static final String DEFAULT_CHECKPOINT_MAX_AGE_MINUTES = "60";
+    private static final String DEFAULT_RECEIVERS = "4";
+    private static final String DEFAULT_WORKERS = "8";
+    private static final String DISCOVERY_NAME = "NAME";
+    private static final String DEFAULT_PARALLELISM = "4";
+    private static final String DEFAULT_EXPORT_DIRECTORY = "/tmp/export";
+    private static final String DEFAULT_ANALYZE_KEYS = "payload.url";
+    private static final String DEFAULT_REPLAY_DECISIONS = "DROPPED";
+    private static final String DEFAULT_AUDIT_SAMPLE = "FORWARDED:0.01,DROPPED:0.01,DUPLICATE:0.01";
+    private static final String DEFAULT_REGION = Regions.US_WEST_2.getName();
+
+    private static final long INIT_START_NANOS = System.nanoTime();
 
     private static final ObjectMapper OBJECT_MAPPER = new ObjectMapperBuilder().withDefaults().build();
-    private  AmazonSQS client;
     private static final Logger logger = LoggerFactory.getLogger(Handler.class);
-    private static final Gson gson = new GsonBuilder().setPrettyPrinting().create();
-    private static final LambdaAsyncClient lambdaClient = LambdaAsyncClient.create();
-
+    private static final Logger auditLogger = LoggerFactory.getLogger(AuditLog.LOGGER_NAME);
+    private static final SqsClientFactory CLIENTS = clientFactory(System.getenv());
+
+    private final String    region;
+    private final String    endpoint;
+    private final AmazonSQS client;
+    private final long      initMillis;
+    private       boolean   coldStart = true;
+
+    /**
+     * Lambda creates the handler once per execution environment, during init: the SQS client is built and the classes
+     * every command needs are loaded there, so they are ready for the first invocation, and captured if the
+     * initialized environment is snapshotted.
+     */
     public Handler() {
-        this.client = AmazonSQSClient.builder().withRegion(Regions.US_WEST_2).build();
+        this.region = System.getenv().getOrDefault("region", DEFAULT_REGION);
+        this.endpoint = System.getenv("endpoint");
+        this.client = CLIENTS.sqs(region, endpoint);
+        long primingStart = System.nanoTime();
+        try {
+            Priming.prime(OBJECT_MAPPER);
+        } catch (Exception e) {
+            logger.warn("Priming failed, classes will be loaded in the first invocation", e);
+        }
+        long now = System.nanoTime();
+        this.initMillis = TimeUnit.NANOSECONDS.toMillis(now - INIT_START_NANOS);
+        logger.info(String.format("Initialized in %d ms (priming %d ms), %d ms after JVM start, clients: %s%n",
+                                  initMillis, TimeUnit.NANOSECONDS.toMillis(now - primingStart),
+                                  ManagementFactory.getRuntimeMXBean().getUptime(), CLIENTS));
+    }
+
+    /**
+     * Clients shared by all invocations of this execution environment, with the {@code maxConnections},
+     * {@code tcpKeepAlive}, {@code connectionTtlMillis} and {@code maxErrorRetry} settings.
+     */
+    private static SqsClientFactory clientFactory(Map<String, String> options) {
+        return new SqsClientFactory()
+            .withMaxConnections(Integer.parseInt(options.getOrDefault(
+                "maxConnections", String.valueOf(SqsClientFactory.DEFAULT_MAX_CONNECTIONS))))
+            .withTcpKeepAlive(Boolean.parseBoolean(options.getOrDefault("tcpKeepAlive", "true")))
+            .withConnectionTtl(Long.parseLong(options.getOrDefault(
+                "connectionTtlMillis", String.valueOf(SqsClientFactory.DEFAULT_CONNECTION_TTL_MILLIS))))
+            .withMaxErrorRetry(Integer.parseInt(options.getOrDefault(
+                "maxErrorRetry", String.valueOf(SqsClientFactory.DEFAULT_MAX_ERROR_RETRY))));
+    }
+
+    /**
+     * The non-blocking client is only built on first use of the {@code ASYNC} engine.
+     */
+    private AsyncSqsEngine asyncEngine() {
+        return new AsyncSqsEngine(CLIENTS.sqsAsync(region, endpoint));
+    }
+
+    /**
+     * Only needed by {@code selfContinue}, built on first use.
+     */
+    private static final class LambdaClientHolder {
+        private static final LambdaAsyncClient CLIENT = LambdaAsyncClient.create();
+    }
+
+    /**
+     * Only needed by S3 checkpoints and {@code resolvePayloads}, built on first use, in the region of the queues or at
+     * {@code s3Endpoint}.
+     */
+    private static AmazonS3 s3Client(Map<String, String> options) {
+        return CLIENTS.s3(options.getOrDefault("region", DEFAULT_REGION), options.get("s3Endpoint"));
     }
 
     @Override
@@ -202,46 +296,117 @@ public class Handler implements RequestHandler<SQSEvent, String> {
         //final String fromQueue = "WorldSeekerFromWorldStageDLQ";
         //final String toQueue   = "WorldSeekerFromWorldStage";
 
-        Handler manager = new Handler();
+        if (coldStart) {
+            logger.info(String.format("Cold start, initialized in %d ms%n", initMillis));
+            coldStart = false;
+        }
 
-        final ObjectMapper objectMapper = new ObjectMapperBuilder().withDefaults().build();
+        Map<String, String> options = System.getenv();
 
-        Predicate<String> heiInputQueueEmptyCheck = messageBody -> {
-            try {
-                HeiMessage message = objectMapper.readValue(messageBody, HeiMessage.class);
-                String payload = message.getPayload();
-                HashMap<String, Object> event = objectMapper.readValue(payload, HashMap.class);
-                event = objectMapper.readValue(event.get("payload").toString(), HashMap.class);
-                boolean badStatus = messageBody.contains("https://hooks.slack.com/services/");
-                DayOfWeek currentDay = Instant.now().atZone(ZoneId.systemDefault()).getDayOfWeek();
-                Integer maxDayAge;
-                if (Arrays.asList(DayOfWeek.SATURDAY, DayOfWeek.SUNDAY, DayOfWeek.MONDAY, DayOfWeek.TUESDAY).contains(currentDay)) {
-                    maxDayAge = 5;
-                } else {
-                    maxDayAge = 3;
-                }
-                return Instant.parse(event.get("statusTime").toString()).isAfter(Instant.now().minus(maxDayAge, ChronoUnit.DAYS))
-                        && !badStatus;
-            } catch (IOException ioe) {
-                throw new RuntimeException(ioe);
+        SqsMetrics metrics = new SqsMetrics();
+        EmfMetricsReporter reporter = new EmfMetricsReporter(
+            metrics, OBJECT_MAPPER, Collections.singletonMap("Command", String.valueOf(options.get("command")).toUpperCase()),
+            System.out::println,
+            Long.parseLong(options.getOrDefault("metricsIntervalSeconds",
+                                                String.valueOf(EmfMetricsReporter.DEFAULT_INTERVAL_SECONDS))));
+        try {
+            return execute(this, options, context, metrics);
+        } finally {
+            reporter.close();
+            logger.info(String.format("Metrics:%n%s", metrics.snapshot()));
+            if (!AuditLog.awaitLogged(Math.min(AuditLog.FLUSH_TIMEOUT_MILLIS, context.getRemainingTimeInMillis()))) {
+                logger.warn("Audit log lines still queued at the end of the invocation.");
             }
-        };
+        }
+    }
 
-        Map<String, String> options = System.getenv();
+    private static String execute(Handler manager, Map<String, String> options, Context context, SqsMetrics metrics) {
+        MessageFilter sendToTarget = messageFilter(options);
 
-        if (options.get("command").equalsIgnoreCase(CMD_REDRIVE)) {
-            String response = new RedriveQueueTask(manager.client,
-                                 (String) options.get("fromQueue"),
-                                 (String) options.get("toQueue"),
-                                 heiInputQueueEmptyCheck,
-                                 logger
-                                 )
-                .call();
+        String engine = options.get("engine");
+        AsyncSqsEngine asyncEngine = ENGINE_ASYNC.equalsIgnoreCase(engine) ? manager.asyncEngine() : null;
+        if (asyncEngine != null) {
+            asyncEngine.setMetrics(metrics);
+        }
+        int inFlight = Integer.parseInt(options.getOrDefault("inFlight", DEFAULT_IN_FLIGHT));
+
+        boolean selfContinue = Boolean.parseBoolean(options.get("selfContinue"));
+        if (selfContinue && !options.containsKey("checkpoint")
+            && (CMD_REDRIVE.equalsIgnoreCase(options.get("command")) || CMD_FLEET.equalsIgnoreCase(options.get("command")))) {
+            // without a checkpoint, the new invocation would start over, and could continue itself forever
+            String response = "selfContinue requires checkpoint.";
+            logger.error(response);
             return response;
+        }
+
+        if (options.get("command").equalsIgnoreCase(CMD_REDRIVE)) {
+            String         fromQueue = options.get("fromQueue");
+            MessageArchive archive   = archive(options, fromQueue.substring(fromQueue.lastIndexOf('/') + 1));
+            RedriveQueueTask task;
+            String response;
+            try {
+                task = redriveTask(manager.client, asyncEngine, fromQueue, options.get("toQueue"), sendToTarget,
+                                   options, context, metrics, archive)
+                    .withRateLimiter(rateLimiter(options));
+                response = task.call();
+            } finally {
+                closeArchive(archive);
+            }
+            if (task.isOutOfTime() && selfContinue) {
+                continueInNewInvocation(context);
+                response += String.format("Continued in a new invocation.%n");
+            }
+            return archive == null ? response : response + String.format("Archive: %s%n", archive);
+        } else if (options.get("command").equalsIgnoreCase(CMD_FLEET)) {
+            List<QueuePair>  pairs     = discoverQueuePairs(manager.client, options);
+            MessageArchive   archive   = archive(options, "fleet");
+            FleetRedriveTask task      = new FleetRedriveTask(
+                pairs,
+                pair -> redriveTask(manager.client, asyncEngine, pair.getSourceQueue(), pair.getTargetQueue(),
+                                    sendToTarget, options, context, metrics, archive),
+                rateLimiter(options),
+                logger,
+                Integer.parseInt(options.getOrDefault("parallelism", DEFAULT_PARALLELISM)));
+            String response;
+            try {
+                response = task.call();
+            } finally {
+                closeArchive(archive);
+            }
+            if (task.isOutOfTime() && selfContinue) {
+                continueInNewInvocation(context);
+                response += String.format("Continued in a new invocation.%n");
+            }
+            return archive == null ? response : response + String.format("Archive: %s%n", archive);
+        } else if (options.get("command").equalsIgnoreCase(CMD_READ) && Boolean.parseBoolean(options.get("analyze"))) {
+            QueueAnalyzer analyzer = new QueueAnalyzer(
+                Arrays.stream(options.getOrDefault("analyzeKeys", DEFAULT_ANALYZE_KEYS).split(","))
+                      .map(String::trim)
+                      .filter(key -> !key.isEmpty())
+                      .collect(Collectors.toList()),
+                Integer.parseInt(options.getOrDefault("topK", String.valueOf(QueueAnalyzer.DEFAULT_TOP_K))),
+                OBJECT_MAPPER.getFactory(),
+                Clock.systemUTC());
+            AnalyzeQueueTask task = new AnalyzeQueueTask(manager.client, asyncEngine, inFlight, options.get("queue"),
+                                                         analyzer, OBJECT_MAPPER, logger)
+                .withLimit(Integer.parseInt(options.getOrDefault("limit", String.valueOf(ReadQueueTask.NO_LIMIT))))
+                .withDrainDetection(
+                    Integer.parseInt(options.getOrDefault("waitTimeSeconds", String.valueOf(DrainController.DEFAULT_WAIT_TIME_SECONDS))),
+                    Integer.parseInt(options.getOrDefault("emptyReceives", String.valueOf(DrainController.DEFAULT_MAX_EMPTY_RECEIVES))),
+                    Long.parseLong(options.getOrDefault("recheckMillis", String.valueOf(DrainController.DEFAULT_RECHECK_MILLIS))));
+            task.setMetrics(metrics);
+            return task.call();
         } else if (options.get("command").equalsIgnoreCase(CMD_READ)) {
             Map<String, Set<String>> webhookUrlSet = new LinkedHashMap<>();
-            String response = new ReadQueueTask(manager.client, (String) options.get("queue"), new GroupByWebhookUrl(webhookUrlSet), logger)
-                .call();
+            ReadQueueTask task = new ReadQueueTask(manager.client, asyncEngine, inFlight, (String) options.get("queue"),
+                                                   new GroupByWebhookUrl(OBJECT_MAPPER, webhookUrlSet), logger)
+                .withLimit(Integer.parseInt(options.getOrDefault("limit", String.valueOf(ReadQueueTask.DEFAULT_LIMIT))))
+                .withDrainDetection(
+                    Integer.parseInt(options.getOrDefault("waitTimeSeconds", String.valueOf(DrainController.DEFAULT_WAIT_TIME_SECONDS))),
+                    Integer.parseInt(options.getOrDefault("emptyReceives", String.valueOf(DrainController.DEFAULT_MAX_EMPTY_RECEIVES))),
+                    Long.parseLong(options.getOrDefault("recheckMillis", String.valueOf(DrainController.DEFAULT_RECHECK_MILLIS))));
+            task.setMetrics(metrics);
+            String response = task.call();
             logger.info(String.format("%s webhooks found: %s%n", webhookUrlSet.size(),
                               String.join("\n", webhookUrlSet.keySet())));
             webhookUrlSet.keySet().forEach(key -> {
@@ -249,9 +414,60 @@ public class Handler implements RequestHandler<SQSEvent, String> {
                 webhookUrlSet.get(key).forEach(logger::info);
             });
             return response;
+        } else if (options.get("command").equalsIgnoreCase(CMD_EXPORT)) {
+            String queue = options.get("queue");
+            RollingNdjsonWriter writer = new RollingNdjsonWriter(
+                OBJECT_MAPPER,
+                Paths.get(options.getOrDefault("exportDirectory", DEFAULT_EXPORT_DIRECTORY)),
+                queue.substring(queue.lastIndexOf('/') + 1) + "-" + System.currentTimeMillis(),
+                RollingNdjsonWriter.DEFAULT_BUFFER_SIZE,
+                Long.parseLong(options.getOrDefault("exportFileBytes",
+                                                    String.valueOf(RollingNdjsonWriter.DEFAULT_MAX_FILE_BYTES))),
+                RollingNdjsonWriter.DEFAULT_FLUSH_INTERVAL_MILLIS);
+            ExportQueueTask task = new ExportQueueTask(manager.client, asyncEngine, inFlight, queue, writer, logger);
+            task.setMetrics(metrics);
+            return task.call();
+        } else if (options.get("command").equalsIgnoreCase(CMD_REPLAY)) {
+            Predicate<ArchiveRecord> replay = ReplayTask.decisions(
+                Arrays.stream(options.getOrDefault("replayDecisions", DEFAULT_REPLAY_DECISIONS).split(","))
+                      .map(decision -> ArchiveRecord.Decision.valueOf(decision.trim().toUpperCase()))
+                      .collect(Collectors.toList()));
+            if (options.containsKey("fromQueue")) {
+                replay = replay.and(ReplayTask.sourceQueue(options.get("fromQueue")));
+            }
+            ReplayTask task = new ReplayTask(manager.client, segments(options.get("replayFrom")), options.get("toQueue"),
+                                             replay, OBJECT_MAPPER, logger,
+                                             Integer.parseInt(options.getOrDefault("senders", String.valueOf(ReplayTask.DEFAULT_SENDERS))))
+                .withRateLimiter(rateLimiter(options));
+            task.setMetrics(metrics);
+            return task.call();
+        } else if (options.get("command").equalsIgnoreCase(CMD_PURGE)
+                   && (options.containsKey("purgeRules") || options.containsKey("purgeOlderThanMinutes"))) {
+            if (asyncEngine != null) {
+                logger.warn(String.format("Selective purge has no %s engine, running on the blocking client with receivers threads%n",
+                                          ENGINE_ASYNC));
+            }
+            SelectivePurgeQueueTask task = new SelectivePurgeQueueTask(
+                manager.client, options.get("queue"), purgePredicate(options), logger,
+                Integer.parseInt(options.getOrDefault("receivers", DEFAULT_RECEIVERS)))
+                .withDrainDetection(
+                    Integer.parseInt(options.getOrDefault("waitTimeSeconds", String.valueOf(DrainController.DEFAULT_WAIT_TIME_SECONDS))),
+                    Integer.parseInt(options.getOrDefault("emptyReceives", String.valueOf(DrainController.DEFAULT_MAX_EMPTY_RECEIVES))),
+                    Long.parseLong(options.getOrDefault("recheckMillis", String.valueOf(DrainController.DEFAULT_RECHECK_MILLIS))))
+                .withHeartbeat(Integer.parseInt(options.getOrDefault(
+                    "heartbeatSeconds", String.valueOf(VisibilityManager.DEFAULT_HEARTBEAT_SECONDS))))
+                .withMaxHeld(Integer.parseInt(options.getOrDefault(
+                    "purgeMaxHeld", String.valueOf(SelectivePurgeQueueTask.DEFAULT_MAX_HELD))));
+            if (context != null) {
+                task.withDeadline(context::getRemainingTimeInMillis,
+                                  Long.parseLong(options.getOrDefault("stopMarginMillis", DEFAULT_STOP_MARGIN_MILLIS)));
+            }
+            task.setMetrics(metrics);
+            return task.call();
         } else if (options.get("command").equalsIgnoreCase(CMD_PURGE)) {
-            return new PurgeQueueTask(manager.client, (String) options.get("queue"), logger)
-                .call();
+            PurgeQueueTask task = new PurgeQueueTask(manager.client, asyncEngine, (String) options.get("queue"), logger);
+            task.setMetrics(metrics);
+            return task.call();
         } else {
             String response = "Please specify command to execute (\"command\" in Lambda environment variables).";
             logger.error(response);
@@ -259,6 +475,302 @@ public class Handler implements RequestHandler<SQSEvent, String> {
         }
     }
 
+    /**
+     * Runs {@link AutoRedriveDaemon} on the queues of {@code fromQueue} and {@code toQueue}, or else on the discovered
+     * ones, until the JVM is stopped. The shutdown hook stops the daemon and waits for the running re-drives.
+     */
+    static String autoRedrive(Map<String, String> options) {
+        String         region      = options.getOrDefault("region", DEFAULT_REGION);
+        AmazonSQS      client      = CLIENTS.sqs(region, options.get("endpoint"));
+        SqsMetrics     metrics     = new SqsMetrics();
+        AsyncSqsEngine asyncEngine = ENGINE_ASYNC.equalsIgnoreCase(options.get("engine"))
+            ? new AsyncSqsEngine(CLIENTS.sqsAsync(region, options.get("endpoint")))
+            : null;
+        if (asyncEngine != null) {
+            asyncEngine.setMetrics(metrics);
+        }
+        List<QueuePair> pairs = options.containsKey("fromQueue")
+            ? Collections.singletonList(new QueuePair(options.get("fromQueue"), options.get("toQueue")))
+            : discoverQueuePairs(client, options);
+        MessageArchive archive = archive(options, "auto");
+        long shutdownMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(options.getOrDefault(
+            "shutdownSeconds", String.valueOf(AutoRedriveDaemon.DEFAULT_SHUTDOWN_SECONDS))));
+        AutoRedriveDaemon daemon = new AutoRedriveDaemon(
+            client,
+            pairs,
+            // a filter per re-drive, so its relative dates, e.g. olderThanDays, are relative to the re-drive
+            pair -> redriveTask(client, asyncEngine, pair.getSourceQueue(), pair.getTargetQueue(), messageFilter(options),
+                                options, null, metrics, archive),
+            rateLimiter(options),
+            logger,
+            Integer.parseInt(options.getOrDefault("parallelism", DEFAULT_PARALLELISM)))
+            .withPolling(TimeUnit.SECONDS.toMillis(Long.parseLong(options.getOrDefault(
+                             "pollSeconds", String.valueOf(AutoRedriveDaemon.DEFAULT_POLL_SECONDS)))),
+                         Integer.parseInt(options.getOrDefault(
+                             "threshold", String.valueOf(AutoRedriveDaemon.DEFAULT_THRESHOLD))))
+            .withBackoff(TimeUnit.SECONDS.toMillis(Long.parseLong(options.getOrDefault(
+                             "minBackoffSeconds", String.valueOf(AutoRedriveDaemon.DEFAULT_MIN_BACKOFF_SECONDS)))),
+                         TimeUnit.SECONDS.toMillis(Long.parseLong(options.getOrDefault(
+                             "maxBackoffSeconds", String.valueOf(AutoRedriveDaemon.DEFAULT_MAX_BACKOFF_SECONDS)))))
+            .withShutdownTimeout(shutdownMillis);
+        daemon.setMetrics(metrics);
+
+        Thread runner = Thread.currentThread();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            daemon.stop();
+            try {
+                // a little longer than the daemon waits for its re-drives, so the archive is closed too
+                runner.join(shutdownMillis + TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "auto-redrive-shutdown"));
+
+        EmfMetricsReporter reporter = new EmfMetricsReporter(
+            metrics, OBJECT_MAPPER, Collections.singletonMap("Command", CMD_AUTO), System.out::println,
+            Long.parseLong(options.getOrDefault("metricsIntervalSeconds",
+                                                String.valueOf(EmfMetricsReporter.DEFAULT_INTERVAL_SECONDS))));
+        try {
+            return daemon.call();
+        } finally {
+            reporter.close();
+            closeArchive(archive);
+            logger.info(String.format("Metrics:%n%s", metrics.snapshot()));
+        }
+    }
+
+    /**
+     * Dead-letter queues among the queues starting with {@code queuePrefix}, paired with their main queues by
+     * {@code discovery}.
+     */
+    private static List<QueuePair> discoverQueuePairs(AmazonSQS client, Map<String, String> options) {
+        QueuePairDiscovery discovery = new QueuePairDiscovery(client, OBJECT_MAPPER);
+        String             prefix    = options.getOrDefault("queuePrefix", "");
+        return DISCOVERY_NAME.equalsIgnoreCase(options.get("discovery"))
+            ? discovery.byName(prefix)
+            : discovery.byRedrivePolicy(prefix);
+    }
+
+    /**
+     * Re-drive task for the configured engine, with the optional key rate limit, deadline and checkpoint. The rate
+     * limiter is set by the caller.
+     */
+    private static RedriveQueueTask redriveTask(AmazonSQS client, AsyncSqsEngine asyncEngine, String fromQueue,
+                                                String toQueue, MessageFilter sendToTarget,
+                                                Map<String, String> options, Context context,
+                                                SqsMetrics metrics, MessageArchive archive) {
+        RedriveQueueTask task;
+        String engine = options.get("engine");
+        if (ENGINE_PIPELINE.equalsIgnoreCase(engine)) {
+            task = new PipelinedRedriveQueueTask(client,
+                             fromQueue,
+                             toQueue,
+                             sendToTarget,
+                             logger,
+                             Integer.parseInt(options.getOrDefault("receivers", DEFAULT_RECEIVERS)),
+                             Integer.parseInt(options.getOrDefault("workers", DEFAULT_WORKERS))
+                             );
+        } else if (asyncEngine != null) {
+            task = new AsyncRedriveQueueTask(client,
+                             asyncEngine,
+                             fromQueue,
+                             toQueue,
+                             sendToTarget,
+                             logger,
+                             Integer.parseInt(options.getOrDefault("inFlight", DEFAULT_IN_FLIGHT))
+                             );
+        } else {
+            task = new RedriveQueueTask(client,
+                             fromQueue,
+                             toQueue,
+                             sendToTarget,
+                             logger,
+                             Boolean.parseBoolean(options.get("batch"))
+                             );
+        }
+        if (options.containsKey("keyRate")) {
+            task.withKeyedRateLimiter(keyedRateLimiter(options),
+                                      Integer.parseInt(options.getOrDefault("deferSeconds", DEFAULT_DEFER_SECONDS)));
+        }
+        if (options.containsKey("dedup")) {
+            task.withDeduplicator(new Deduplicator(
+                Deduplicator.Mode.valueOf(options.get("dedup").toUpperCase()),
+                options.get("dedupKey"),
+                OBJECT_MAPPER.getFactory(),
+                options.containsKey("dedupMemoryMiB") ? Long.parseLong(options.get("dedupMemoryMiB")) * 1024 * 1024
+                                                      : Deduplicator.DEFAULT_MEMORY_BYTES));
+        }
+        if (archive != null) {
+            task.withArchive(archive);
+        }
+        task.withAuditLog(auditLog(fromQueue, toQueue, options));
+        if (Boolean.parseBoolean(options.get("resolvePayloads"))) {
+            task.withPayloadFilter(new S3PayloadFilter(s3Client(options), OBJECT_MAPPER, sendToTarget));
+        }
+        if (context != null) {
+            task.withDeadline(context::getRemainingTimeInMillis,
+                              Long.parseLong(options.getOrDefault("stopMarginMillis", DEFAULT_STOP_MARGIN_MILLIS)));
+        }
+        if (options.containsKey("checkpoint")) {
+            task.withCheckpointStore(checkpointStore(options.get("checkpoint"), options),
+                                     TimeUnit.MINUTES.toMillis(Long.parseLong(options.getOrDefault(
+                                         "checkpointMaxAgeMinutes", DEFAULT_CHECKPOINT_MAX_AGE_MINUTES))));
+        }
+        task.withDrainDetection(
+            Integer.parseInt(options.getOrDefault("waitTimeSeconds", String.valueOf(DrainController.DEFAULT_WAIT_TIME_SECONDS))),
+            Integer.parseInt(options.getOrDefault("emptyReceives", String.valueOf(DrainController.DEFAULT_MAX_EMPTY_RECEIVES))),
+            Long.parseLong(options.getOrDefault("recheckMillis", String.valueOf(DrainController.DEFAULT_RECHECK_MILLIS))));
+        task.withHeartbeat(Integer.parseInt(options.getOrDefault(
+            "heartbeatSeconds", String.valueOf(VisibilityManager.DEFAULT_HEARTBEAT_SECONDS))));
+        task.setMetrics(metrics);
+        return task;
+    }
+
+    /**
+     * Audit log of a re-drive: every message if {@code auditFull}, otherwise the {@code auditSample} of each decision,
+     * e.g. {@code FORWARDED:0.01,DROPPED:1}, with bodies truncated, and progress every {@code progressSeconds}.
+     */
+    private static AuditLog auditLog(String fromQueue, String toQueue, Map<String, String> options) {
+        if (Boolean.parseBoolean(options.get("auditFull"))) {
+            return AuditLog.full(auditLogger);
+        }
+        Map<ArchiveRecord.Decision, Double> sampleRates = new EnumMap<>(ArchiveRecord.Decision.class);
+        for (String sample : options.getOrDefault("auditSample", DEFAULT_AUDIT_SAMPLE).split(",")) {
+            String[] decisionAndRate = sample.split(":");
+            sampleRates.put(ArchiveRecord.Decision.valueOf(decisionAndRate[0].trim().toUpperCase()),
+                            Double.parseDouble(decisionAndRate[1].trim()));
+        }
+        return new AuditLog(auditLogger, new QueuePair(fromQueue, toQueue).toString())
+            .withSampling(sampleRates)
+            .withBodyChars(Integer.parseInt(options.getOrDefault(
+                "auditBodyChars", String.valueOf(AuditLog.DEFAULT_BODY_CHARS))))
+            .withProgress(TimeUnit.SECONDS.toMillis(Long.parseLong(options.getOrDefault(
+                "progressSeconds", String.valueOf(TimeUnit.MILLISECONDS.toSeconds(AuditLog.DEFAULT_PROGRESS_MILLIS))))));
+    }
+
+    /**
+     * Filter from the {@code filterRules} JSON array of {@link FilterRule}s, by default {@link MessageFilter#heiEvents}.
+     */
+    private static MessageFilter messageFilter(Map<String, String> options) {
+        if (!options.containsKey("filterRules")) {
+            return MessageFilter.heiEvents(OBJECT_MAPPER.getFactory(), Clock.systemDefaultZone());
+        }
+        try {
+            FilterRule[] rules = OBJECT_MAPPER.readValue(options.get("filterRules"), FilterRule[].class);
+            return new MessageFilter(Arrays.asList(rules), OBJECT_MAPPER.getFactory(), Clock.systemDefaultZone());
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid filterRules: " + options.get("filterRules"), e);
+        }
+    }
+
+    /**
+     * Messages to delete by a selective purge: matching all {@code purgeRules} (see {@link FilterRule}) and older than
+     * {@code purgeOlderThanMinutes}, if set.
+     */
+    private static Predicate<Message> purgePredicate(Map<String, String> options) {
+        Predicate<Message> predicate = message -> true;
+        if (options.containsKey("purgeRules")) {
+            try {
+                FilterRule[] rules = OBJECT_MAPPER.readValue(options.get("purgeRules"), FilterRule[].class);
+                predicate = SelectivePurgeQueueTask.body(
+                    new MessageFilter(Arrays.asList(rules), OBJECT_MAPPER.getFactory(), Clock.systemDefaultZone()));
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Invalid purgeRules: " + options.get("purgeRules"), e);
+            }
+        }
+        if (options.containsKey("purgeOlderThanMinutes")) {
+            predicate = predicate.and(SelectivePurgeQueueTask.olderThan(
+                Duration.ofMinutes(Long.parseLong(options.get("purgeOlderThanMinutes")))));
+        }
+        return predicate;
+    }
+
+    private static AdaptiveRateLimiter rateLimiter(Map<String, String> options) {
+        return new AdaptiveRateLimiter(
+            Double.parseDouble(options.getOrDefault("minRate", String.valueOf(AdaptiveRateLimiter.DEFAULT_MIN_RATE))),
+            Double.parseDouble(options.getOrDefault("maxRate", String.valueOf(AdaptiveRateLimiter.DEFAULT_MAX_RATE))),
+            Long.parseLong(options.getOrDefault("latencyTargetMillis",
+                                                String.valueOf(AdaptiveRateLimiter.DEFAULT_LATENCY_TARGET_MILLIS))));
+    }
+
+    private static KeyedRateLimiter keyedRateLimiter(Map<String, String> options) {
+        String keyExtractor = options.getOrDefault("keyExtractor", KEY_WEBHOOK_URL);
+        if (!keyExtractor.equalsIgnoreCase(KEY_WEBHOOK_URL)) {
+            throw new IllegalArgumentException("Unsupported key extractor: " + keyExtractor);
+        }
+        return new KeyedRateLimiter(new WebhookUrlKeyExtractor(OBJECT_MAPPER), Double.parseDouble(options.get("keyRate")));
+    }
+
+    /**
+     * @param location {@code s3://bucket/prefix} or a local directory, e.g. {@code /tmp/checkpoints}
+     */
+    private static CheckpointStore checkpointStore(String location, Map<String, String> options) {
+        if (location.startsWith("s3://")) {
+            String[] bucketAndPrefix = location.substring("s3://".length()).split("/", 2);
+            return new S3CheckpointStore(s3Client(options),
+                                         bucketAndPrefix[0], bucketAndPrefix.length > 1 ? bucketAndPrefix[1] : "",
+                                         OBJECT_MAPPER);
+        }
+        return new FileCheckpointStore(Paths.get(location), OBJECT_MAPPER);
+    }
+
+    /**
+     * Archive of the re-driven messages in the {@code archive} directory, e.g. on an EFS mount; null if not set.
+     */
+    private static MessageArchive archive(Map<String, String> options, String name) {
+        if (!options.containsKey("archive")) {
+            return null;
+        }
+        return new MessageArchive(
+            new RollingNdjsonWriter(
+                OBJECT_MAPPER,
+                Paths.get(options.get("archive")),
+                name + "-" + System.currentTimeMillis(),
+                RollingNdjsonWriter.DEFAULT_BUFFER_SIZE,
+                Long.parseLong(options.getOrDefault("archiveFileBytes",
+                                                    String.valueOf(RollingNdjsonWriter.DEFAULT_MAX_FILE_BYTES))),
+                RollingNdjsonWriter.DEFAULT_FLUSH_INTERVAL_MILLIS),
+            MessageArchive.DEFAULT_CAPACITY);
+    }
+
+    private static void closeArchive(MessageArchive archive) {
+        if (archive != null) {
+            archive.close();
+            logger.info(String.format("Archived %s%n", archive));
+        }
+    }
+
+    /**
+     * @param location a segment or export file, or a directory whose {@code .ndjson.gz} files are replayed in name
+     *                 order
+     */
+    private static List<Path> segments(String location) {
+        Path path = Paths.get(location);
+        if (!Files.isDirectory(path)) {
+            return Collections.singletonList(path);
+        }
+        try (Stream<Path> files = Files.list(path)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".ndjson.gz"))
+                        .sorted()
+                        .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Invokes this function again, asynchronously, so it continues the re-drive from the checkpoint.
+     */
+    private static void continueInNewInvocation(Context context) {
+        logger.info(String.format("Continuing re-drive in a new invocation of %s%n", context.getInvokedFunctionArn()));
+        LambdaClientHolder.CLIENT.invoke(InvokeRequest.builder()
+                                                      .functionName(context.getInvokedFunctionArn())
+                                                      .invocationType(InvocationType.EVENT)
+                                                      .payload(SdkBytes.fromUtf8String("{}"))
+                                                      .build())
+                                 .join();
+    }
+
     @Data
     @NoArgsConstructor
     @AllArgsConstructor
@@ -273,22 +785,27 @@ public class Handler implements RequestHandler<SQSEvent, String> {
         }
     }
 
-    private static class GroupByWebhookUrl implements BiFunction<Message, String, String> {
+    /**
+     * Collects the text of Webhooks outbox messages by webhook URL.
+     */
+    static class GroupByWebhookUrl implements BiFunction<Message, String, String> {
+        private final ObjectMapper             objectMapper;
         private final Map<String, Set<String>> webhookUrlSet;
 
-        public GroupByWebhookUrl(Map<String, Set<String>> webhookUrlSet) {
+        public GroupByWebhookUrl(ObjectMapper objectMapper, Map<String, Set<String>> webhookUrlSet) {
+            this.objectMapper = objectMapper;
             this.webhookUrlSet = webhookUrlSet;
         }
 
         @Override
         public String apply(Message message, String messageBody) {
             try {
-                JsonNode root    = OBJECT_MAPPER.readTree(messageBody);
+                JsonNode root    = objectMapper.readTree(messageBody);
                 String   payload = root.get("payload").textValue();
-                root = OBJECT_MAPPER.readTree(payload);
+                root = objectMapper.readTree(payload);
                 String url = root.get("url").textValue();
                 payload = root.get("payload").textValue();
-                root = OBJECT_MAPPER.readTree(payload);
+                root = objectMapper.readTree(payload);
                 if (root.has("text")) {
                     payload = root.get("text").textValue();
                 }
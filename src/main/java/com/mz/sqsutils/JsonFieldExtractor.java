@@ -0,0 +1,105 @@
+package com.mz.sqsutils;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Extracts a fixed set of fields from JSON documents with a streaming {@link JsonParser}, without building a tree.
+ * <p>
+ * Paths are dot separated, e.g. {@code payload.payload.statusTime}. A path segment may be a nested object or a string
+ * holding an encoded JSON document, as in our event envelopes: {@code {"payload": "{\"payload\": \"{...}\"}"}}.
+ * Fields are read in one pass of each document; fields and sub-documents not on a path are skipped without
+ * materializing them. Documents can be streamed, e.g. from S3. Thread-safe.
+ */
+public class JsonFieldExtractor {
+
+    private final JsonFactory jsonFactory;
+    private final Node        root = new Node();
+    private final int         fieldCount;
+
+    /**
+     * @param paths fields to extract; {@link #extract(String)} returns their values in the same order
+     */
+    public JsonFieldExtractor(JsonFactory jsonFactory, List<String> paths) {
+        this.jsonFactory = jsonFactory;
+        this.fieldCount = paths.size();
+        for (int i = 0; i < paths.size(); i++) {
+            Node node = root;
+            for (String segment : paths.get(i).split("\\.")) {
+                node = node.children.computeIfAbsent(segment, key -> new Node());
+            }
+            node.index = i;
+        }
+    }
+
+    /**
+     * @return values of the fields, by path index; null for a missing field. Non-string scalars are returned as their
+     * text, objects and arrays are not returned.
+     * @throws IOException if the document, or a string-encoded document on a path, is not valid JSON
+     */
+    public String[] extract(String json) throws IOException {
+        String[] values = new String[fieldCount];
+        extract(json, root, values);
+        return values;
+    }
+
+    /**
+     * Like {@link #extract(String)}, reading the document from {@code json} up to the end of its root object. The
+     * reader is not closed.
+     */
+    public String[] extract(Reader json) throws IOException {
+        String[] values = new String[fieldCount];
+        try (JsonParser parser = jsonFactory.createParser(json).disable(JsonParser.Feature.AUTO_CLOSE_SOURCE)) {
+            extract(parser, root, values);
+        }
+        return values;
+    }
+
+    private void extract(String json, Node node, String[] values) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(json)) {
+            extract(parser, node, values);
+        }
+    }
+
+    private void extract(JsonParser parser, Node node, String[] values) throws IOException {
+        if (parser.nextToken() == JsonToken.START_OBJECT) {
+            extractObject(parser, node, values);
+        }
+    }
+
+    /**
+     * Reads the fields of the object the parser is positioned at, up to its END_OBJECT.
+     */
+    private void extractObject(JsonParser parser, Node node, String[] values) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            Node      child = node.children.get(parser.getCurrentName());
+            JsonToken value = parser.nextToken();
+            if (child == null) {
+                parser.skipChildren();
+            } else if (value == JsonToken.START_OBJECT) {
+                extractObject(parser, child, values);
+            } else if (value.isScalarValue() && value != JsonToken.VALUE_NULL) {
+                String text = parser.getText();
+                if (child.index >= 0) {
+                    values[child.index] = text;
+                }
+                if (!child.children.isEmpty() && value == JsonToken.VALUE_STRING) {
+                    extract(text, child, values);
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private static class Node {
+        private final Map<String, Node> children = new HashMap<>();
+        private int index = -1;
+    }
+}
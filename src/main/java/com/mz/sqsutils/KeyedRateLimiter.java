@@ -0,0 +1,54 @@
+package com.mz.sqsutils;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.RateLimiter;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Token bucket per message key, e.g. per webhook URL, so one busy destination does not slow down the others.
+ * <p>
+ * Keys not seen for a while are evicted, and the number of tracked keys is capped, to keep memory bounded.
+ * Thread-safe.
+ */
+public class KeyedRateLimiter {
+
+    private static final long MAX_KEYS            = 10_000;
+    private static final long IDLE_EXPIRY_MINUTES = 10;
+
+    private final Function<String, String>          keyExtractor;
+    private final double                            keyRate;
+    private final LoadingCache<String, RateLimiter> limiters;
+
+    /**
+     * @param keyExtractor maps a message body to its key; messages with a null key are not limited
+     * @param keyRate      permits per second for each key
+     */
+    public KeyedRateLimiter(Function<String, String> keyExtractor, double keyRate) {
+        this.keyExtractor = keyExtractor;
+        this.keyRate = keyRate;
+        this.limiters = CacheBuilder.newBuilder()
+                                    .maximumSize(MAX_KEYS)
+                                    .expireAfterAccess(IDLE_EXPIRY_MINUTES, TimeUnit.MINUTES)
+                                    .build(CacheLoader.from(key -> RateLimiter.create(keyRate)));
+    }
+
+    /**
+     * @return true if the message can be forwarded now, false if its key is saturated
+     */
+    public boolean tryAcquire(String messageBody) {
+        String key = keyExtractor.apply(messageBody);
+        return key == null || limiters.getUnchecked(key).tryAcquire();
+    }
+
+    public long getKeyCount() {
+        return limiters.size();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%.1f requests per second per key, %,d keys", keyRate, getKeyCount());
+    }
+}
@@ -0,0 +1,105 @@
+package com.mz.sqsutils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import lombok.Value;
+
+/**
+ * Lock-free latency histogram with logarithmic buckets: bucket {@code i} holds latencies below {@code 2^i}
+ * microseconds, the last bucket everything above about 1 minute. Percentiles are the upper bound of their bucket, so
+ * they are accurate within a factor of 2, which is enough to tell a 20 ms call from a 200 ms one.
+ */
+public class LatencyHistogram {
+
+    private static final int BUCKETS = 27;
+
+    private final AtomicLongArray buckets     = new AtomicLongArray(BUCKETS);
+    private final AtomicLong      count       = new AtomicLong();
+    private final AtomicLong      sum         = new AtomicLong();
+    private final AtomicLong      max         = new AtomicLong();
+    /**
+     * Maximum since the last {@link #intervalSnapshot()}: a maximum cannot be subtracted like the counts.
+     */
+    private final AtomicLong      intervalMax = new AtomicLong();
+
+    public void record(long nanos) {
+        long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+        int  bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        buckets.incrementAndGet(bucket);
+        count.incrementAndGet();
+        sum.addAndGet(nanos);
+        max.accumulateAndGet(nanos, Math::max);
+        intervalMax.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * @return everything recorded so far, with the maximum of the whole lifetime
+     */
+    public Snapshot snapshot() {
+        return snapshot(max.get());
+    }
+
+    /**
+     * Like {@link #snapshot()}, but with the maximum recorded since the previous interval snapshot, which is then reset.
+     * Subtract the previous interval snapshot to get the latencies of the interval, maximum included.
+     */
+    public Snapshot intervalSnapshot() {
+        return snapshot(intervalMax.getAndSet(0));
+    }
+
+    private Snapshot snapshot(long maxNanos) {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+        }
+        return new Snapshot(counts, count.get(), sum.get(), maxNanos);
+    }
+
+    /**
+     * Point-in-time copy. Snapshots can be subtracted to get the latencies recorded in an interval.
+     */
+    @Value
+    public static class Snapshot {
+        long[] buckets;
+        long   count;
+        long   sumNanos;
+        long   maxNanos;
+
+        public double getMeanMillis() {
+            return count == 0 ? 0 : sumNanos / 1e6 / count;
+        }
+
+        public double getMaxMillis() {
+            return maxNanos / 1e6;
+        }
+
+        /**
+         * @param percentile e.g. 0.99
+         * @return upper bound of the bucket holding the percentile, in milliseconds; 0 if nothing was recorded
+         */
+        public double getPercentileMillis(double percentile) {
+            long rank = (long) Math.ceil(percentile * count);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank && seen > 0) {
+                    return Math.min((1L << i) / 1e3, getMaxMillis());
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * @return latencies recorded since {@code earlier}, with the maximum of this snapshot: the interval's maximum if
+         * this is an {@link LatencyHistogram#intervalSnapshot()}
+         */
+        public Snapshot minus(Snapshot earlier) {
+            long[] counts = new long[buckets.length];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = buckets[i] - earlier.buckets[i];
+            }
+            return new Snapshot(counts, count - earlier.count, sumNanos - earlier.sumNanos, maxNanos);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.mz.sqsutils;
+
+import java.io.Closeable;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Append-only archive of the messages a re-drive forwards or deletes, so a re-drive with a bad filter can be undone
+ * with a {@link ReplayTask}.
+ * <p>
+ * Records are appended to a bounded in-memory queue; a single writer thread serializes them to gzip NDJSON segments
+ * rotated by size (see {@link RollingNdjsonWriter}), so re-drive threads do not wait for the disk. When the writer
+ * falls behind, {@link #append(ArchiveRecord)} blocks rather than losing records, and if the writer fails, appending
+ * fails, which stops the re-drive before it deletes messages that are not archived.
+ * <p>
+ * The archive is write-ahead: before deleting messages, a re-drive calls {@link #sync()}, which waits until their
+ * records are flushed to the segment, so a process killed right after the delete has them on disk. Threads syncing at
+ * the same time share one flush. Thread-safe.
+ */
+public class MessageArchive implements Closeable {
+
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private static final int  WRITE_BATCH_SIZE    = 256;
+    private static final long POLL_TIMEOUT_MILLIS = 100;
+
+    private final RollingNdjsonWriter          writer;
+    private final BlockingQueue<ArchiveRecord> pending;
+    private final Thread                       writerThread;
+    private final AtomicLong                   appended = new AtomicLong();
+    private final AtomicLong                   stalls   = new AtomicLong();
+    /**
+     * Held while queueing a record, so the n-th record appended is the n-th written.
+     */
+    private final Object                       appends  = new Object();
+    private final Object                       flushes  = new Object();
+
+    private volatile boolean          closed;
+    private volatile RuntimeException failure;
+    private volatile long             written;
+    private volatile long             syncTarget;
+    private volatile long             flushed;
+
+    /**
+     * @param capacity records buffered in memory before {@link #append(ArchiveRecord)} waits for the writer
+     */
+    public MessageArchive(RollingNdjsonWriter writer, int capacity) {
+        this.writer = writer;
+        this.pending = new ArrayBlockingQueue<>(capacity);
+        this.writerThread = new Thread(this::write, "archive-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * Queues the record for writing; waits while the buffer is full.
+     *
+     * @throws IllegalStateException if the archive is closed or the writer failed
+     */
+    public void append(ArchiveRecord record) {
+        checkWritable();
+        synchronized (appends) {
+            if (!pending.offer(record)) {
+                stalls.incrementAndGet();
+                try {
+                    while (!pending.offer(record, POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                        checkWritable();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while archiving message " + record.getMessageId(), e);
+                }
+            }
+            appended.incrementAndGet();
+        }
+    }
+
+    /**
+     * Waits until every record appended so far is written and flushed to its segment.
+     *
+     * @throws IllegalStateException if the writer failed
+     */
+    public void sync() {
+        long target = appended.get();
+        synchronized (flushes) {
+            if (target > syncTarget) {
+                syncTarget = target;
+            }
+            while (flushed < target) {
+                checkWritable();
+                long writtenNow = written;
+                if (writtenNow >= target) {
+                    writer.flush();
+                    flushed = writtenNow;
+                    return;
+                }
+                try {
+                    flushes.wait(POLL_TIMEOUT_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while flushing the archive", e);
+                }
+            }
+        }
+    }
+
+    public long getRecords() {
+        return appended.get();
+    }
+
+    /**
+     * @return segments written so far, in order
+     */
+    public List<Path> getFiles() {
+        return writer.getFiles();
+    }
+
+    /**
+     * Writes the buffered records and closes the current segment.
+     *
+     * @throws IllegalStateException if the writer failed; records appended since are not archived
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while closing the archive", e);
+        }
+        if (failure == null) {
+            // appended while the writer thread was stopping
+            List<ArchiveRecord> rest = new ArrayList<>();
+            pending.drainTo(rest);
+            rest.forEach(writer::write);
+        }
+        writer.close();
+        if (failure != null) {
+            throw new IllegalStateException("Archive incomplete", failure);
+        }
+    }
+
+    private void write() {
+        List<ArchiveRecord> batch = new ArrayList<>(WRITE_BATCH_SIZE);
+        try {
+            while (!closed || !pending.isEmpty()) {
+                ArchiveRecord first = pending.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                pending.drainTo(batch, WRITE_BATCH_SIZE - 1);
+                batch.forEach(writer::write);
+                written += batch.size();
+                batch.clear();
+                if (syncTarget > flushed) {
+                    synchronized (flushes) {
+                        flushes.notifyAll();
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            failure = new IllegalStateException("Archive writer interrupted", e);
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+        if (failure != null) {
+            pending.clear();
+        }
+    }
+
+    private void checkWritable() {
+        if (failure != null) {
+            throw new IllegalStateException("Unable to archive messages", failure);
+        }
+        if (closed) {
+            throw new IllegalStateException("Archive closed");
+        }
+    }
+
+    @Override
+    public String toString() {
+        List<Path> files = getFiles();
+        return String.format("%,d records in %d segments%s (%,d bytes uncompressed)%s", getRecords(), files.size(),
+                             files.isEmpty() ? "" : " in " + files.get(0).getParent(), writer.getBytes(),
+                             stalls.get() == 0 ? "" : String.format(", writer fell behind %,d times", stalls.get()));
+    }
+}
@@ -0,0 +1,60 @@
+package com.mz.sqsutils;
+
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Message attribute as written to NDJSON exports and archives. Binary values are written in Base64.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessageAttribute {
+    /**
+     * {@code String}, {@code Number} or {@code Binary}, optionally with a custom type, e.g. {@code Number.int}.
+     */
+    private String dataType;
+    private String stringValue;
+    private byte[] binaryValue;
+
+    /**
+     * @return null if the message has no attributes
+     */
+    static Map<String, MessageAttribute> of(Map<String, MessageAttributeValue> values) {
+        if (values == null || values.isEmpty()) {
+            return null;
+        }
+        Map<String, MessageAttribute> attributes = new LinkedHashMap<>();
+        values.forEach((name, value) -> attributes.put(name, new MessageAttribute(
+            value.getDataType(), value.getStringValue(), bytes(value.getBinaryValue()))));
+        return attributes;
+    }
+
+    /**
+     * @return the attributes to send, empty if there are none
+     */
+    static Map<String, MessageAttributeValue> toValues(Map<String, MessageAttribute> attributes) {
+        Map<String, MessageAttributeValue> values = new LinkedHashMap<>();
+        if (attributes != null) {
+            attributes.forEach((name, attribute) -> values.put(name, new MessageAttributeValue()
+                .withDataType(attribute.getDataType())
+                .withStringValue(attribute.getStringValue())
+                .withBinaryValue(attribute.getBinaryValue() == null ? null : ByteBuffer.wrap(attribute.getBinaryValue()))));
+        }
+        return values;
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        if (buffer == null) {
+            return null;
+        }
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+}
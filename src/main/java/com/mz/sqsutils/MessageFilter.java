@@ -0,0 +1,332 @@
+package com.mz.sqsutils;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+
+/**
+ * Compiled re-drive filter: a message is forwarded to the target queue only if it passes all rules, otherwise it is
+ * dropped.
+ * <p>
+ * Rules are compiled once per run: the fields of all rules are extracted in a single streaming pass of the message
+ * (see {@link JsonFieldExtractor}), and time cutoffs are computed from the clock when the filter is created, not per
+ * message. A message missing a filtered field fails the filter with an exception, so it stays in the source queue.
+ * Payloads too large for a message, e.g. in S3, can be filtered as a stream, see {@link #test(Reader)}. Thread-safe.
+ */
+public class MessageFilter implements Predicate<String> {
+
+    public enum Op {
+        EQ, NE, CONTAINS, NOT_CONTAINS,
+        /**
+         * Numeric comparisons.
+         */
+        GT, GE, LT, LE,
+        /**
+         * ISO-8601 timestamp after/before the given one.
+         */
+        AFTER, BEFORE,
+        /**
+         * ISO-8601 timestamp within/older than the given number of days from now.
+         */
+        NEWER_THAN_DAYS, OLDER_THAN_DAYS
+    }
+
+    static final String SLACK_WEBHOOK = "https://hooks.slack.com/services/";
+    static final String STATUS_TIME   = "payload.payload.statusTime";
+
+    private static final Set<DayOfWeek> LONG_AGE_DAYS = EnumSet.of(
+        DayOfWeek.SATURDAY, DayOfWeek.SUNDAY, DayOfWeek.MONDAY, DayOfWeek.TUESDAY);
+
+    private final String[]                exclusions;
+    private final String[]                inclusions;
+    private final JsonFieldExtractor      extractor;
+    private final List<String>            fields;
+    private final List<Predicate<String>> conditions;
+    private final List<FilterRule>        rules;
+
+    public MessageFilter(List<FilterRule> rules, JsonFactory jsonFactory, Clock clock) {
+        List<String> exclusions = new ArrayList<>();
+        List<String> inclusions = new ArrayList<>();
+        this.fields = new ArrayList<>();
+        this.conditions = new ArrayList<>();
+        for (FilterRule rule : rules) {
+            if (rule.getExclude() != null) {
+                exclusions.add(rule.getExclude());
+            } else if (rule.getInclude() != null) {
+                inclusions.add(rule.getInclude());
+            } else if (rule.getField() != null && rule.getOp() != null) {
+                fields.add(rule.getField());
+                conditions.add(compile(Op.valueOf(rule.getOp().toUpperCase()), rule.getValue(), clock));
+            } else {
+                throw new IllegalArgumentException("Invalid filter rule " + rule);
+            }
+        }
+        this.exclusions = exclusions.toArray(new String[0]);
+        this.inclusions = inclusions.toArray(new String[0]);
+        this.extractor = new JsonFieldExtractor(jsonFactory, fields);
+        this.rules = rules;
+    }
+
+    /**
+     * Filter of HEI events: drops Slack webhooks, and events whose status time is older than 5 days on Saturday to
+     * Tuesday, 3 days otherwise, so events from before the weekend are still re-driven early in the week.
+     */
+    public static MessageFilter heiEvents(JsonFactory jsonFactory, Clock clock) {
+        DayOfWeek today      = clock.instant().atZone(clock.getZone()).getDayOfWeek();
+        int       maxAgeDays = LONG_AGE_DAYS.contains(today) ? 5 : 3;
+        return new MessageFilter(Arrays.asList(
+            FilterRule.builder().exclude(SLACK_WEBHOOK).build(),
+            FilterRule.builder().field(STATUS_TIME).op(Op.NEWER_THAN_DAYS.name()).value(Integer.toString(maxAgeDays)).build()),
+                                 jsonFactory, clock);
+    }
+
+    @Override
+    public boolean test(String messageBody) {
+        for (String exclusion : exclusions) {
+            if (messageBody.contains(exclusion)) {
+                return false;
+            }
+        }
+        for (String inclusion : inclusions) {
+            if (!messageBody.contains(inclusion)) {
+                return false;
+            }
+        }
+        if (conditions.isEmpty()) {
+            return true;
+        }
+        String[] values;
+        try {
+            values = extractor.extract(messageBody);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return matches(values, messageBody);
+    }
+
+    /**
+     * Like {@link #test(String)}, for a payload read from {@code payload} as a stream instead of held in memory: the
+     * texts of the rules are searched for as it is read, and the fields are extracted in the same pass. Without field
+     * rules, the payload is not parsed, and is only read up to the first excluded text. The reader is not closed.
+     *
+     * @throws IOException if the payload cannot be read; an invalid payload fails the filter like an invalid message
+     */
+    public boolean test(Reader payload) throws IOException {
+        TextMatcher matcher = new TextMatcher(payload, exclusions, inclusions);
+        String[]    values  = null;
+        if (!conditions.isEmpty()) {
+            try {
+                values = extractor.extract(matcher);
+            } catch (JsonProcessingException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        matcher.drain();
+        if (matcher.isExcluded() || !matcher.isIncluded()) {
+            return false;
+        }
+        return values == null || matches(values, "payload");
+    }
+
+    /**
+     * @return false if the filter passes every message without reading it, e.g. without rules
+     */
+    public boolean readsMessages() {
+        return exclusions.length > 0 || inclusions.length > 0 || !conditions.isEmpty();
+    }
+
+    private boolean matches(String[] values, String message) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == null) {
+                throw new IllegalArgumentException(String.format("Field %s not found in message %s", fields.get(i), message));
+            }
+            if (!conditions.get(i).test(values[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Predicate<String> compile(Op op, String value, Clock clock) {
+        switch (op) {
+            case EQ:
+                return field -> Objects.equals(field, value);
+            case NE:
+                return field -> !Objects.equals(field, value);
+            case CONTAINS:
+                return field -> field.contains(value);
+            case NOT_CONTAINS:
+                return field -> !field.contains(value);
+            case GT:
+                return numeric(value, comparison -> comparison > 0);
+            case GE:
+                return numeric(value, comparison -> comparison >= 0);
+            case LT:
+                return numeric(value, comparison -> comparison < 0);
+            case LE:
+                return numeric(value, comparison -> comparison <= 0);
+            case AFTER:
+                return after(Instant.parse(value));
+            case BEFORE:
+                return after(Instant.parse(value)).negate();
+            case NEWER_THAN_DAYS:
+                return after(clock.instant().minus(Duration.ofDays(Long.parseLong(value))));
+            case OLDER_THAN_DAYS:
+                return after(clock.instant().minus(Duration.ofDays(Long.parseLong(value)))).negate();
+            default:
+                throw new IllegalArgumentException("Unsupported filter operation " + op);
+        }
+    }
+
+    private static Predicate<String> numeric(String value, IntPredicate comparison) {
+        BigDecimal number = new BigDecimal(value);
+        return field -> comparison.test(new BigDecimal(field).compareTo(number));
+    }
+
+    private static Predicate<String> after(Instant cutoff) {
+        return field -> Instant.parse(field).isAfter(cutoff);
+    }
+
+    @Override
+    public String toString() {
+        return rules.toString();
+    }
+
+    /**
+     * Searches for the exclusions and inclusions in the characters read through it, with a Knuth-Morris-Pratt
+     * automaton per text, so a text split across two reads is found too.
+     */
+    private static final class TextMatcher extends FilterReader {
+        private final String[]  texts;
+        private final int[][]   fallbacks;
+        private final int[]     states;
+        private final boolean[] found;
+        private final int       exclusions;
+
+        TextMatcher(Reader in, String[] exclusions, String[] inclusions) {
+            super(in);
+            this.exclusions = exclusions.length;
+            this.texts = new String[exclusions.length + inclusions.length];
+            System.arraycopy(exclusions, 0, texts, 0, exclusions.length);
+            System.arraycopy(inclusions, 0, texts, exclusions.length, inclusions.length);
+            this.fallbacks = new int[texts.length][];
+            this.states = new int[texts.length];
+            this.found = new boolean[texts.length];
+            for (int i = 0; i < texts.length; i++) {
+                fallbacks[i] = fallbacks(texts[i]);
+                found[i] = texts[i].isEmpty();
+            }
+        }
+
+        boolean isExcluded() {
+            for (int i = 0; i < exclusions; i++) {
+                if (found[i]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean isIncluded() {
+            for (int i = exclusions; i < texts.length; i++) {
+                if (!found[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Reads the rest of the characters, up to an excluded text.
+         */
+        void drain() throws IOException {
+            char[] buffer = new char[8192];
+            int    read   = 0;
+            while (read >= 0 && !isExcluded()) {
+                read = read(buffer, 0, buffer.length);
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            int c = super.read();
+            if (c >= 0) {
+                match((char) c);
+            }
+            return c;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            for (int i = offset; i < offset + read; i++) {
+                match(buffer[i]);
+            }
+            return read;
+        }
+
+        /**
+         * Skipped characters are read, to be searched.
+         */
+        @Override
+        public long skip(long n) throws IOException {
+            char[] buffer  = new char[(int) Math.min(n, 8192)];
+            long   skipped = 0;
+            int    read;
+            while (skipped < n && (read = read(buffer, 0, (int) Math.min(n - skipped, buffer.length))) >= 0) {
+                skipped += read;
+            }
+            return skipped;
+        }
+
+        private void match(char c) {
+            for (int i = 0; i < texts.length; i++) {
+                if (found[i]) {
+                    continue;
+                }
+                String text  = texts[i];
+                int    state = states[i];
+                while (state > 0 && text.charAt(state) != c) {
+                    state = fallbacks[i][state - 1];
+                }
+                if (text.charAt(state) == c) {
+                    state++;
+                }
+                found[i] = state == text.length();
+                states[i] = state;
+            }
+        }
+
+        /**
+         * @return for each prefix of the text, the length of its longest proper prefix that is also its suffix
+         */
+        private static int[] fallbacks(String text) {
+            int[] fallbacks = new int[text.length()];
+            for (int i = 1, length = 0; i < text.length(); i++) {
+                while (length > 0 && text.charAt(i) != text.charAt(length)) {
+                    length = fallbacks[length - 1];
+                }
+                if (text.charAt(i) == text.charAt(length)) {
+                    length++;
+                }
+                fallbacks[i] = length;
+            }
+            return fallbacks;
+        }
+    }
+}
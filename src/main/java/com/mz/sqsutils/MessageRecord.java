@@ -0,0 +1,33 @@
+package com.mz.sqsutils;
+
+import com.amazonaws.services.sqs.model.Message;
+import java.util.Map;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * SQS message as written to NDJSON exports, one JSON object per line.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class MessageRecord {
+    private String                        messageId;
+    /**
+     * System attributes, e.g. {@code SentTimestamp}, {@code ApproximateFirstReceiveTimestamp}.
+     */
+    private Map<String, String>           attributes;
+    /**
+     * Message attributes, null if there are none.
+     */
+    private Map<String, MessageAttribute> messageAttributes;
+    private String                        body;
+
+    public static MessageRecord of(Message message) {
+        return new MessageRecord(message.getMessageId(), message.getAttributes(),
+                                 MessageAttribute.of(message.getMessageAttributes()), message.getBody());
+    }
+}
@@ -0,0 +1,50 @@
+package com.mz.sqsutils;
+
+import com.amazonaws.services.sqs.model.Message;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.util.Map;
+import lombok.Value;
+
+/**
+ * Location of a message payload stored in S3 by the Amazon SQS Extended Client. The body of such a message is only a
+ * pointer to the payload, {@code ["software.amazon.payloadoffloading.PayloadS3Pointer",{"s3BucketName":...,"s3Key":...}]}
+ * (or the object alone, from older clients), and its {@code ExtendedPayloadSize} (or {@code SQSLargePayloadSize})
+ * message attribute is the size of the payload.
+ * <p>
+ * Moving the message with its attributes moves the payload: consumers using the extended client read it from S3.
+ */
+@Value
+public class PayloadPointer {
+
+    static final String SIZE_ATTRIBUTE        = "ExtendedPayloadSize";
+    static final String LEGACY_SIZE_ATTRIBUTE = "SQSLargePayloadSize";
+
+    String bucket;
+    String key;
+
+    /**
+     * @return true if the body of the message is a pointer to its payload; the body is not parsed
+     */
+    static boolean isPointer(Message message) {
+        Map<String, ?> attributes = message.getMessageAttributes();
+        return attributes.containsKey(SIZE_ATTRIBUTE) || attributes.containsKey(LEGACY_SIZE_ATTRIBUTE);
+    }
+
+    static PayloadPointer parse(String body, ObjectMapper objectMapper) throws IOException {
+        JsonNode pointer = objectMapper.readTree(body);
+        if (pointer != null && pointer.isArray() && pointer.size() == 2) {
+            pointer = pointer.get(1);
+        }
+        if (pointer == null || !pointer.hasNonNull("s3BucketName") || !pointer.hasNonNull("s3Key")) {
+            throw new IOException("Not an S3 payload pointer: " + body);
+        }
+        return new PayloadPointer(pointer.get("s3BucketName").asText(), pointer.get("s3Key").asText());
+    }
+
+    @Override
+    public String toString() {
+        return "s3://" + bucket + "/" + key;
+    }
+}
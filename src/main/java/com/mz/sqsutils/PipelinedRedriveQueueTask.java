@@ -0,0 +1,262 @@
+package com.mz.sqsutils;
+
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.Message;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import org.slf4j.Logger;
+
+/**
+ * Concurrent re-drive. Receiver threads feed a bounded queue of received messages, a pool of workers filters and
+ * forwards them in batches, and a single delete stage removes forwarded and dropped messages from the source queue
+ * in batches.
+ * <p>
+ * Receivers stop once the {@link DrainController} finds the source queue drained, more than {@code maxSkips}
+ * messages were skipped or the deadline is near. Counters and the summary are the same as in the sequential {@link RedriveQueueTask}.
+ * <p>
+ * From a FIFO source queue, each worker has its own queue of received messages, and all messages of a group go to
+ * the same worker, so groups are forwarded in parallel and each one in order.
+ * <p>
+ * If a stage fails, the others stop, and the messages already forwarded but not yet deleted are deleted before the
+ * failure is rethrown, so a retry does not forward them again.
+ */
+public class PipelinedRedriveQueueTask extends RedriveQueueTask {
+
+    private static final long POLL_TIMEOUT_MILLIS     = 100;
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 5_000;
+
+    private final int receivers;
+    private final int workers;
+
+    private volatile boolean stopped;
+
+    /**
+     * @param receivers number of threads receiving from the source queue
+     * @param workers   number of threads filtering and forwarding messages to the target queue
+     */
+    PipelinedRedriveQueueTask(AmazonSQS client, String sourceQueue, String targetQueue, Predicate<String> sendToTarget,
+                              Logger logger, int receivers, int workers) {
+        super(client, sourceQueue, targetQueue, sendToTarget, logger, true);
+        this.receivers = receivers;
+        this.workers = workers;
+    }
+
+    @Override
+    protected String describeEngine() {
+        return String.format(" with %d receivers and %d workers", receivers, workers);
+    }
+
+    @Override
+    protected void redrive(int maxSkips) {
+        List<BlockingQueue<Message>> received = new ArrayList<>();
+        if (ordered) {
+            for (int i = 0; i < workers; i++) {
+                received.add(new ArrayBlockingQueue<>(MAX_BATCH_SIZE * 2));
+            }
+        } else {
+            received.add(new ArrayBlockingQueue<>(workers * MAX_BATCH_SIZE * 2));
+        }
+        BlockingQueue<Message> deletes  = new ArrayBlockingQueue<>(workers * MAX_BATCH_SIZE * 2);
+        Queue<Message>         leftover = new ConcurrentLinkedQueue<>();
+        CountDownLatch receiving = new CountDownLatch(receivers);
+        CountDownLatch working   = new CountDownLatch(workers);
+
+        ExecutorService executor = Executors.newFixedThreadPool(
+            receivers + workers + 1,
+            new ThreadFactoryBuilder().setNameFormat("redrive-%d").setDaemon(true).build());
+        List<Future<?>> stages = new ArrayList<>();
+        try {
+            for (int i = 0; i < receivers; i++) {
+                stages.add(executor.submit(stopOnFailure(() -> receive(received, maxSkips, receiving))));
+            }
+            for (int i = 0; i < workers; i++) {
+                BlockingQueue<Message> input = received.get(i % received.size());
+                stages.add(executor.submit(stopOnFailure(() -> forward(input, receiving, deletes, leftover, working))));
+            }
+            stages.add(executor.submit(stopOnFailure(() -> delete(deletes, working))));
+            awaitAll(stages);
+        } finally {
+            executor.shutdownNow();
+            awaitTermination(executor);
+            List<Message> forwarded = new ArrayList<>(leftover);
+            deletes.drainTo(forwarded);
+            deleteForwarded(forwarded);
+            List<Message> unprocessed = new ArrayList<>();
+            received.forEach(queue -> queue.drainTo(unprocessed));
+            visibility.release(unprocessed);
+        }
+    }
+
+    private void receive(List<BlockingQueue<Message>> received, int maxSkips, CountDownLatch receiving) {
+        try {
+            while (!stopped && !shouldStop(maxSkips)) {
+                List<Message> messages = receiveMessages(sourceQueue, drain.getWaitTimeSeconds()).getMessages();
+                drain.received(messages.size(), allNew(messages));
+                if (messages.isEmpty()) {
+                    continue;
+                }
+                visibility.track(messages);
+                for (int i = 0; i < messages.size(); i++) {
+                    if (!put(input(received, messages.get(i)), messages.get(i))) {
+                        visibility.release(messages.subList(i, messages.size()));
+                        break;
+                    }
+                }
+            }
+        } finally {
+            receiving.countDown();
+        }
+    }
+
+    /**
+     * @return the queue of the worker of the message's group, or the queue shared by all workers
+     */
+    private static BlockingQueue<Message> input(List<BlockingQueue<Message>> received, Message message) {
+        return received.size() == 1 ? received.get(0)
+                                    : received.get(Math.floorMod(messageGroupId(message).hashCode(), received.size()));
+    }
+
+    private void forward(BlockingQueue<Message> received, CountDownLatch receiving,
+                         BlockingQueue<Message> deletes, Queue<Message> leftover, CountDownLatch working) {
+        try {
+            List<Message> batch;
+            while (!(batch = take(received, receiving)).isEmpty()) {
+                List<Message> forwarded = forwardBatch(batch);
+                visibility.done(batch);
+                for (int i = 0; i < forwarded.size(); i++) {
+                    if (!put(deletes, forwarded.get(i))) {
+                        // the delete stage is stopping, the messages are deleted once all stages are done
+                        leftover.addAll(forwarded.subList(i, forwarded.size()));
+                        break;
+                    }
+                }
+            }
+        } finally {
+            working.countDown();
+        }
+    }
+
+    private void delete(BlockingQueue<Message> deletes, CountDownLatch working) {
+        List<Message> batch;
+        while (!(batch = take(deletes, working)).isEmpty()) {
+            deleteBatch(batch);
+        }
+    }
+
+    /**
+     * Deletes the messages left in the delete queue by a stopped pipeline. A failure is logged rather than thrown, so
+     * it does not hide the failure that stopped the pipeline.
+     */
+    private void deleteForwarded(List<Message> forwarded) {
+        for (int i = 0; i < forwarded.size(); i += MAX_BATCH_SIZE) {
+            List<Message> batch = forwarded.subList(i, Math.min(i + MAX_BATCH_SIZE, forwarded.size()));
+            try {
+                deleteBatch(batch);
+            } catch (RuntimeException e) {
+                logger.error(String.format("Unable to delete %,d forwarded messages, they will be forwarded again.%n",
+                                           forwarded.size() - i), e);
+                return;
+            }
+        }
+    }
+
+    private static void awaitTermination(ExecutorService executor) {
+        try {
+            executor.awaitTermination(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Takes up to {@link #MAX_BATCH_SIZE} messages, waiting while the upstream stage is still running.
+     *
+     * @return empty list once the upstream stage is done and the queue is drained, or the task was stopped
+     */
+    private List<Message> take(BlockingQueue<Message> queue, CountDownLatch upstream) {
+        List<Message> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        try {
+            while (!stopped) {
+                Message first = queue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+                    return batch;
+                }
+                if (upstream.getCount() == 0 && queue.isEmpty()) {
+                    return batch;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return batch;
+    }
+
+    /**
+     * @return false if the task was stopped before the message was queued
+     */
+    private boolean put(BlockingQueue<Message> queue, Message message) {
+        try {
+            while (!stopped) {
+                if (queue.offer(message, POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+                // downstream is busy, wait unless stopped
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stopped = true;
+        }
+        return false;
+    }
+
+    /**
+     * A failed stage stops the other stages, so they do not wait forever on a queue nobody consumes.
+     */
+    private Runnable stopOnFailure(Runnable stage) {
+        return () -> {
+            try {
+                stage.run();
+            } catch (RuntimeException | Error e) {
+                stopped = true;
+                throw e;
+            }
+        };
+    }
+
+    private void awaitAll(List<Future<?>> stages) {
+        RuntimeException failure = null;
+        for (Future<?> stage : stages) {
+            try {
+                stage.get();
+            } catch (ExecutionException e) {
+                stopped = true;
+                if (failure == null) {
+                    failure = e.getCause() instanceof RuntimeException
+                        ? (RuntimeException) e.getCause()
+                        : new RuntimeException(e.getCause());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                stopped = true;
+                throw new RuntimeException("Re-drive interrupted.", e);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.mz.sqsutils;
+
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequestEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.GetQueueAttributesRequest;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.transform.ChangeMessageVisibilityBatchRequestMarshaller;
+import com.amazonaws.services.sqs.model.transform.DeleteMessageBatchRequestMarshaller;
+import com.amazonaws.services.sqs.model.transform.DeleteMessageBatchResultStaxUnmarshaller;
+import com.amazonaws.services.sqs.model.transform.GetQueueAttributesRequestMarshaller;
+import com.amazonaws.services.sqs.model.transform.GetQueueAttributesResultStaxUnmarshaller;
+import com.amazonaws.services.sqs.model.transform.ReceiveMessageRequestMarshaller;
+import com.amazonaws.services.sqs.model.transform.ReceiveMessageResultStaxUnmarshaller;
+import com.amazonaws.services.sqs.model.transform.SendMessageBatchRequestMarshaller;
+import com.amazonaws.services.sqs.model.transform.SendMessageBatchResultStaxUnmarshaller;
+import com.amazonaws.transform.StaxUnmarshallerContext;
+import com.amazonaws.transform.Unmarshaller;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.StringReader;
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.Collections;
+import javax.xml.stream.XMLInputFactory;
+
+/**
+ * Exercises the classes every command needs, without any network call, so their loading and first-use
+ * initialization happen during function init rather than in the first invocation, and are captured by snapshots of
+ * the initialized function.
+ */
+final class Priming {
+
+    private static final String QUEUE_URL = "https://sqs.us-west-2.amazonaws.com/000000000000/Priming";
+
+    private static final String MESSAGE_BODY =
+        "{\"payload\":\"{\\\"url\\\":\\\"https://example.com/webhook\\\","
+        + "\\\"payload\\\":\\\"{\\\\\\\"statusTime\\\\\\\":\\\\\\\"2020-01-01T00:00:00Z\\\\\\\","
+        + "\\\\\\\"text\\\\\\\":\\\\\\\"priming\\\\\\\"}\\\"}\"}";
+
+    private static final String RECEIVE_RESPONSE =
+        "<ReceiveMessageResponse><ReceiveMessageResult><Message>"
+        + "<MessageId>1</MessageId><ReceiptHandle>1</ReceiptHandle><MD5OfBody>0</MD5OfBody><Body>{}</Body>"
+        + "<Attribute><Name>ApproximateFirstReceiveTimestamp</Name><Value>0</Value></Attribute>"
+        + "<MessageAttribute><Name>a</Name><Value><DataType>String</DataType><StringValue>1</StringValue></Value>"
+        + "</MessageAttribute>"
+        + "</Message></ReceiveMessageResult></ReceiveMessageResponse>";
+
+    private static final String SEND_BATCH_RESPONSE =
+        "<SendMessageBatchResponse><SendMessageBatchResult>"
+        + "<SendMessageBatchResultEntry><Id>0</Id><MessageId>1</MessageId><MD5OfMessageBody>0</MD5OfMessageBody>"
+        + "</SendMessageBatchResultEntry>"
+        + "<BatchResultErrorEntry><Id>1</Id><Code>InternalError</Code><SenderFault>false</SenderFault>"
+        + "</BatchResultErrorEntry></SendMessageBatchResult></SendMessageBatchResponse>";
+
+    private static final String DELETE_BATCH_RESPONSE =
+        "<DeleteMessageBatchResponse><DeleteMessageBatchResult>"
+        + "<DeleteMessageBatchResultEntry><Id>0</Id></DeleteMessageBatchResultEntry>"
+        + "</DeleteMessageBatchResult></DeleteMessageBatchResponse>";
+
+    private static final String ATTRIBUTES_RESPONSE =
+        "<GetQueueAttributesResponse><GetQueueAttributesResult>"
+        + "<Attribute><Name>ApproximateNumberOfMessages</Name><Value>0</Value></Attribute>"
+        + "</GetQueueAttributesResult></GetQueueAttributesResponse>";
+
+    private Priming() {
+    }
+
+    static void prime(ObjectMapper objectMapper) throws Exception {
+        primeJackson(objectMapper);
+        primeSqsMarshallers();
+    }
+
+    private static void primeJackson(ObjectMapper objectMapper) throws Exception {
+        FilterRule[] rules = objectMapper.readValue(
+            "[{\"exclude\":\"text\"},{\"field\":\"payload.payload.statusTime\",\"op\":\"NEWER_THAN_DAYS\",\"value\":\"3\"}]",
+            FilterRule[].class);
+        new MessageFilter(Arrays.asList(rules), objectMapper.getFactory(), Clock.systemUTC()).test(MESSAGE_BODY);
+        MessageFilter.heiEvents(objectMapper.getFactory(), Clock.systemUTC()).test(MESSAGE_BODY);
+        new WebhookUrlKeyExtractor(objectMapper).apply(MESSAGE_BODY);
+        objectMapper.readValue(objectMapper.writeValueAsString(new RedriveCheckpoint()), RedriveCheckpoint.class);
+    }
+
+    private static void primeSqsMarshallers() throws Exception {
+        new ReceiveMessageRequestMarshaller().marshall(
+            new ReceiveMessageRequest(QUEUE_URL).withMaxNumberOfMessages(10)
+                                                .withWaitTimeSeconds(0)
+                                                .withAttributeNames(SqsTask.RECEIVE_ATTRIBUTES)
+                                                .withMessageAttributeNames(SqsTask.ALL_MESSAGE_ATTRIBUTES));
+        new SendMessageBatchRequestMarshaller().marshall(new SendMessageBatchRequest(
+            QUEUE_URL, Collections.singletonList(new SendMessageBatchRequestEntry("0", MESSAGE_BODY).withMessageAttributes(
+                Collections.singletonMap("a", new MessageAttributeValue().withDataType("String").withStringValue("1"))))));
+        new DeleteMessageBatchRequestMarshaller().marshall(new DeleteMessageBatchRequest(
+            QUEUE_URL, Collections.singletonList(new DeleteMessageBatchRequestEntry("0", "1"))));
+        new ChangeMessageVisibilityBatchRequestMarshaller().marshall(new ChangeMessageVisibilityBatchRequest(
+            QUEUE_URL, Collections.singletonList(new ChangeMessageVisibilityBatchRequestEntry("0", "1").withVisibilityTimeout(0))));
+        new GetQueueAttributesRequestMarshaller().marshall(
+            new GetQueueAttributesRequest(QUEUE_URL).withAttributeNames("ApproximateNumberOfMessages"));
+
+        XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+        unmarshall(xmlInputFactory, ReceiveMessageResultStaxUnmarshaller.getInstance(), RECEIVE_RESPONSE);
+        unmarshall(xmlInputFactory, SendMessageBatchResultStaxUnmarshaller.getInstance(), SEND_BATCH_RESPONSE);
+        unmarshall(xmlInputFactory, DeleteMessageBatchResultStaxUnmarshaller.getInstance(), DELETE_BATCH_RESPONSE);
+        unmarshall(xmlInputFactory, GetQueueAttributesResultStaxUnmarshaller.getInstance(), ATTRIBUTES_RESPONSE);
+    }
+
+    private static <T> T unmarshall(XMLInputFactory xmlInputFactory, Unmarshaller<T, StaxUnmarshallerContext> unmarshaller,
+                                    String response) throws Exception {
+        StaxUnmarshallerContext context = new StaxUnmarshallerContext(
+            xmlInputFactory.createXMLEventReader(new StringReader(response)));
+        return unmarshaller.unmarshall(context);
+    }
+}
@@ -4,6 +4,7 @@ import com.amazonaws.services.sqs.AmazonSQS;
 import com.amazonaws.services.sqs.model.PurgeQueueRequest;
 import com.amazonaws.services.sqs.model.PurgeQueueResult;
 import com.amazonaws.services.sqs.model.QueueDoesNotExistException;
+import java.util.concurrent.CompletionException;
 import org.slf4j.Logger;
 
 /**
@@ -15,15 +16,23 @@ public class PurgeQueueTask extends SqsTask {
     private final Logger logger;
 
     public PurgeQueueTask(AmazonSQS client, String queueUrl, Logger logger) {
-        super(client);
+        this(client, null, queueUrl, logger);
+    }
+
+    public PurgeQueueTask(AmazonSQS client, AsyncSqsEngine asyncEngine, String queueUrl, Logger logger) {
+        super(client, asyncEngine);
         this.queueUrl = queueUrl;
         this.logger = logger;
     }
 
     @Override
     public String call() {
+        if (asyncEngine != null) {
+            return purgeAsync();
+        }
         try {
-            PurgeQueueResult result = client.purgeQueue(new PurgeQueueRequest(queueUrl));
+            PurgeQueueResult result = metrics.time(SqsMetrics.Operation.PURGE,
+                                                   () -> client.purgeQueue(new PurgeQueueRequest(queueUrl)));
             String response = String.format("Purge completed successfully. %s%n", result);
             logger.info(response);
             return response;
@@ -33,4 +42,20 @@ public class PurgeQueueTask extends SqsTask {
             return response;
         }
     }
+
+    private String purgeAsync() {
+        try {
+            asyncEngine.purgeQueue(queueUrl).join();
+            String response = String.format("Purge completed successfully. %s%n", queueUrl);
+            logger.info(response);
+            return response;
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof software.amazon.awssdk.services.sqs.model.QueueDoesNotExistException) {
+                String response = String.format("Purge failed. Queue does not exist. %s%n", queueUrl);
+                logger.error(response);
+                return response;
+            }
+            throw e;
+        }
+    }
 }
@@ -0,0 +1,86 @@
+package com.mz.sqsutils;
+
+import java.util.List;
+import java.util.Map;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Report of {@link AnalyzeQueueTask}, written as JSON.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class QueueAnalysis {
+    private String            queue;
+    /**
+     * Messages analyzed, each once.
+     */
+    private long              messages;
+    /**
+     * Messages in the queue when the analysis started, up to the limit. More than {@link #messages} if some were in
+     * flight in another consumer, or not received before the queue looked drained.
+     */
+    private long              expectedMessages;
+    /**
+     * Messages received again during the analysis, e.g. after their visibility timeout, and not counted twice.
+     */
+    private long              duplicates;
+    /**
+     * Total size of the message bodies, in UTF-8 bytes.
+     */
+    private long              bytes;
+    private long              durationMillis;
+    /**
+     * Messages by time since their {@code ApproximateFirstReceiveTimestamp}, see {@link AgeHistogram}.
+     */
+    private Map<String, Long> ages;
+    /**
+     * First receive time of the oldest and newest message, ISO-8601.
+     */
+    private String            oldest;
+    private String            newest;
+    /**
+     * Messages that are not JSON, so no key was extracted.
+     */
+    private long              unparsable;
+    private List<KeyReport>   keys;
+
+    /**
+     * Most frequent values of one field.
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Builder
+    public static class KeyReport {
+        private String         path;
+        /**
+         * Messages without the field.
+         */
+        private long           missing;
+        /**
+         * Overcount of a {@link TopValue#getCount()} that is exceeded with a probability under 1%.
+         */
+        private long           errorBound;
+        private List<TopValue> top;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class TopValue {
+        private String value;
+        /**
+         * Estimated number of messages with the value, never below the true number.
+         */
+        private long   count;
+        /**
+         * Guaranteed number of messages with the value.
+         */
+        private long   minCount;
+    }
+}
@@ -0,0 +1,118 @@
+package com.mz.sqsutils;
+
+import com.amazonaws.services.sqs.model.Message;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.google.common.base.Utf8;
+import java.io.IOException;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiFunction;
+
+/**
+ * Aggregates the messages read by a {@link ReadQueueTask} in fixed memory, whatever the number of messages: an
+ * {@link AgeHistogram}, and for each key path the most frequent values, from a {@link TopKCounter} refined with a
+ * {@link CountMinSketch}. Values longer than {@value #MAX_VALUE_LENGTH} characters are truncated.
+ * <p>
+ * Not thread-safe: {@link ReadQueueTask} consumes one page at a time.
+ */
+public class QueueAnalyzer implements BiFunction<Message, String, String> {
+
+    public static final int DEFAULT_TOP_K = 20;
+
+    static final int MAX_VALUE_LENGTH = 256;
+
+    /**
+     * Counted items per reported item: items more frequent than 1 / (topK * 50) of the messages are always counted.
+     */
+    private static final int COUNTERS_PER_ITEM = 50;
+    private static final int SKETCH_WIDTH      = 4096;
+    private static final int SKETCH_DEPTH      = 5;
+
+    private final List<String>       keyPaths;
+    private final JsonFieldExtractor keyExtractor;
+    private final int                topK;
+    private final Clock              clock;
+    private final long               startMillis;
+    private final TopKCounter[]      topValues;
+    private final CountMinSketch[]   frequencies;
+    private final long[]             missing;
+    private final AgeHistogram       ages = new AgeHistogram();
+
+    private long messages;
+    private long bytes;
+    private long unparsable;
+
+    /**
+     * @param keyPaths fields whose values are counted, see {@link JsonFieldExtractor}; may be empty
+     * @param topK     most frequent values reported for each field
+     */
+    public QueueAnalyzer(List<String> keyPaths, int topK, JsonFactory jsonFactory, Clock clock) {
+        this.keyPaths = keyPaths;
+        this.keyExtractor = new JsonFieldExtractor(jsonFactory, keyPaths);
+        this.topK = topK;
+        this.clock = clock;
+        this.startMillis = clock.millis();
+        this.topValues = new TopKCounter[keyPaths.size()];
+        this.frequencies = new CountMinSketch[keyPaths.size()];
+        this.missing = new long[keyPaths.size()];
+        for (int i = 0; i < keyPaths.size(); i++) {
+            topValues[i] = new TopKCounter(topK * COUNTERS_PER_ITEM);
+            frequencies[i] = new CountMinSketch(SKETCH_WIDTH, SKETCH_DEPTH);
+        }
+    }
+
+    @Override
+    public String apply(Message message, String messageBody) {
+        messages++;
+        bytes += Utf8.encodedLength(messageBody);
+        String firstReceive = message.getAttributes().get("ApproximateFirstReceiveTimestamp");
+        if (firstReceive != null) {
+            ages.record(Long.parseLong(firstReceive), startMillis);
+        }
+        if (keyPaths.isEmpty()) {
+            return messageBody;
+        }
+        String[] values;
+        try {
+            values = keyExtractor.extract(messageBody);
+        } catch (IOException e) {
+            unparsable++;
+            return messageBody;
+        }
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == null) {
+                missing[i]++;
+                continue;
+            }
+            String value = values[i].length() > MAX_VALUE_LENGTH ? values[i].substring(0, MAX_VALUE_LENGTH) : values[i];
+            topValues[i].add(value);
+            frequencies[i].add(value);
+        }
+        return messageBody;
+    }
+
+    public QueueAnalysis analysis(String queueUrl) {
+        List<QueueAnalysis.KeyReport> keys = new ArrayList<>(keyPaths.size());
+        for (int i = 0; i < keyPaths.size(); i++) {
+            List<QueueAnalysis.TopValue> top = new ArrayList<>(topK);
+            for (TopKCounter.Item item : topValues[i].top(topK)) {
+                // both overestimate, the smaller is closer
+                long count = Math.min(item.getCount(), frequencies[i].estimate(item.getValue()));
+                top.add(new QueueAnalysis.TopValue(item.getValue(), count, item.getCount() - item.getError()));
+            }
+            keys.add(new QueueAnalysis.KeyReport(keyPaths.get(i), missing[i], frequencies[i].getErrorBound(), top));
+        }
+        return QueueAnalysis.builder()
+                            .queue(queueUrl)
+                            .messages(messages)
+                            .bytes(bytes)
+                            .durationMillis(clock.millis() - startMillis)
+                            .ages(ages.getBuckets())
+                            .oldest(ages.getOldest() == null ? null : ages.getOldest().toString())
+                            .newest(ages.getNewest() == null ? null : ages.getNewest().toString())
+                            .unparsable(unparsable)
+                            .keys(keys)
+                            .build();
+    }
+}
@@ -0,0 +1,23 @@
+package com.mz.sqsutils;
+
+import lombok.Value;
+
+/**
+ * Approximate number of messages in a queue, from its {@code ApproximateNumberOfMessages*} attributes. SQS updates
+ * them with a delay of up to a minute.
+ */
+@Value
+public class QueueDepth {
+    int visible;
+    int delayed;
+    int notVisible;
+
+    public int getTotal() {
+        return visible + delayed + notVisible;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%,d visible, %,d delayed, %,d in flight", visible, delayed, notVisible);
+    }
+}
@@ -0,0 +1,24 @@
+package com.mz.sqsutils;
+
+import lombok.Value;
+
+/**
+ * Dead-letter queue and the queue its messages are re-driven to.
+ */
+@Value
+public class QueuePair {
+    String sourceQueue;
+    String targetQueue;
+
+    /**
+     * @return last segment of a queue URL (or the name itself)
+     */
+    static String queueName(String queue) {
+        return queue.substring(queue.lastIndexOf('/') + 1);
+    }
+
+    @Override
+    public String toString() {
+        return queueName(sourceQueue) + " -> " + queueName(targetQueue);
+    }
+}
@@ -0,0 +1,98 @@
+package com.mz.sqsutils;
+
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.GetQueueAttributesRequest;
+import com.amazonaws.services.sqs.model.ListQueuesRequest;
+import com.amazonaws.services.sqs.model.ListQueuesResult;
+import com.amazonaws.services.sqs.model.QueueAttributeName;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds dead-letter queues and their main queues among the queues whose name starts with a prefix.
+ */
+public class QueuePairDiscovery {
+
+    private static final String DLQ = "DLQ";
+
+    private final AmazonSQS    client;
+    private final ObjectMapper objectMapper;
+
+    public QueuePairDiscovery(AmazonSQS client, ObjectMapper objectMapper) {
+        this.client = client;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Pairs queues by name: the main queue of {@code WebhooksOutboxProdDLQ-123} is {@code WebhooksOutboxProd-123},
+     * the main queue of {@code MvbEarpJobStateDLQProd} is {@code MvbEarpJobStateProd}. DLQs without a main queue are
+     * ignored.
+     */
+    public List<QueuePair> byName(String prefix) {
+        Map<String, String> queues = listQueues(prefix);
+        List<QueuePair>     pairs  = new ArrayList<>();
+        queues.forEach((name, url) -> {
+            int dlq = name.indexOf(DLQ);
+            if (dlq < 0) {
+                return;
+            }
+            String mainQueue = queues.get(name.substring(0, dlq) + name.substring(dlq + DLQ.length()));
+            if (mainQueue != null) {
+                pairs.add(new QueuePair(url, mainQueue));
+            }
+        });
+        return pairs;
+    }
+
+    /**
+     * Pairs each queue with the dead-letter queue named in its {@code RedrivePolicy} attribute. Both queues must match
+     * the prefix.
+     */
+    public List<QueuePair> byRedrivePolicy(String prefix) {
+        Map<String, String> queues = listQueues(prefix);
+        List<QueuePair>     pairs  = new ArrayList<>();
+        for (String mainQueue : queues.values()) {
+            String redrivePolicy = client.getQueueAttributes(
+                new GetQueueAttributesRequest(mainQueue).withAttributeNames(QueueAttributeName.RedrivePolicy))
+                                         .getAttributes()
+                                         .get(QueueAttributeName.RedrivePolicy.toString());
+            if (redrivePolicy == null) {
+                continue;
+            }
+            String deadLetterQueue = queues.get(deadLetterQueueName(redrivePolicy));
+            if (deadLetterQueue != null) {
+                pairs.add(new QueuePair(deadLetterQueue, mainQueue));
+            }
+        }
+        return pairs;
+    }
+
+    /**
+     * @return queue URLs by queue name, in name order
+     */
+    private Map<String, String> listQueues(String prefix) {
+        Map<String, String> queues    = new LinkedHashMap<>();
+        String              nextToken = null;
+        do {
+            ListQueuesResult result = client.listQueues(
+                new ListQueuesRequest(prefix).withMaxResults(1000).withNextToken(nextToken));
+            result.getQueueUrls().stream().sorted().forEach(url -> queues.put(QueuePair.queueName(url), url));
+            nextToken = result.getNextToken();
+        } while (nextToken != null);
+        return queues;
+    }
+
+    private String deadLetterQueueName(String redrivePolicy) {
+        try {
+            JsonNode arn = objectMapper.readTree(redrivePolicy).get("deadLetterTargetArn");
+            return arn == null ? null : arn.textValue().substring(arn.textValue().lastIndexOf(':') + 1);
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Unable to parse redrive policy %s", redrivePolicy), e);
+        }
+    }
+}
@@ -2,56 +2,246 @@ package com.mz.sqsutils;
 
 import com.amazonaws.services.sqs.AmazonSQS;
 import com.amazonaws.services.sqs.model.Message;
-import com.amazonaws.services.sqs.model.ReceiveMessageResult;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiFunction;
 import org.slf4j.Logger;
 
 
 /**
+ * Reads up to the number of messages in the queue when the read starts, without deleting them.
+ * <p>
+ * Receives use long polling, and the read ends like a re-drive does (see {@link DrainController}), so a sparse queue
+ * is not mistaken for an empty one. Read messages are not held: they reappear after the queue's visibility timeout,
+ * so memory and in-flight messages do not grow with the queue. A message received again is recognized by its message
+ * id and consumed once; a page with nothing left to consume counts towards the end of the read like a page of new
+ * messages.
+ *
  * @author max
  */
 public class ReadQueueTask extends SqsTask {
 
+    /**
+     * Messages read by default: enough to sample a queue without flooding the logs.
+     */
+    public static final int DEFAULT_LIMIT = 10;
+
+    /**
+     * Read up to the number of messages in the queue when the read starts.
+     */
+    public static final int NO_LIMIT = 0;
+
+    private static final HashFunction MESSAGE_ID_HASH = Hashing.farmHashFingerprint64();
+
     private final String           queueUrl;
     private final Logger            logger;
     private final BiFunction<Message, String, String> messageBodyConsumer;
+    private final int               inFlight;
+    private       int               limit = DEFAULT_LIMIT;
+    private       int               waitTimeSeconds  = DrainController.DEFAULT_WAIT_TIME_SECONDS;
+    private       int               maxEmptyReceives = DrainController.DEFAULT_MAX_EMPTY_RECEIVES;
+    private       long              recheckMillis    = DrainController.DEFAULT_RECHECK_MILLIS;
+
+    private VisibilityManager visibility;
+    private FingerprintSet    messageIds;
+    private int               expectedMessageCount;
+    private int               consumed;
+    private int               duplicates;
 
     public ReadQueueTask(AmazonSQS client, String queueUrl, BiFunction<Message, String, String> messageBodyConsumer, Logger logger) {
-        super(client);
+        this(client, null, 1, queueUrl, messageBodyConsumer, logger);
+    }
+
+    /**
+     * @param asyncEngine if not null, messages are received with up to {@code inFlight} concurrent requests
+     */
+    public ReadQueueTask(AmazonSQS client, AsyncSqsEngine asyncEngine, int inFlight, String queueUrl,
+                         BiFunction<Message, String, String> messageBodyConsumer, Logger logger) {
+        super(client, asyncEngine);
         this.queueUrl = queueUrl;
         this.messageBodyConsumer = messageBodyConsumer;
         this.logger = logger;
+        this.inFlight = inFlight;
+    }
+
+    /**
+     * @param limit maximum number of messages to read, or {@link #NO_LIMIT}
+     */
+    public ReadQueueTask withLimit(int limit) {
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * @see RedriveQueueTask#withDrainDetection(int, int, long)
+     */
+    public ReadQueueTask withDrainDetection(int waitTimeSeconds, int maxEmptyReceives, long recheckMillis) {
+        this.waitTimeSeconds = waitTimeSeconds;
+        this.maxEmptyReceives = maxEmptyReceives;
+        this.recheckMillis = recheckMillis;
+        return this;
     }
 
     @Override
     public String call() {
-        int expectedMessageCount = getTotalMessageCount(queueUrl);
-        if (expectedMessageCount > 10) {
-            expectedMessageCount = 10;
+        expectedMessageCount = getTotalMessageCount(queueUrl);
+        if (limit != NO_LIMIT && expectedMessageCount > limit) {
+            expectedMessageCount = limit;
         }
-        int  readCount               = 0;
         long operationStartTimestamp = System.currentTimeMillis();
+        // room for every message id, up to the dedup memory cap; a full set lets duplicates through
+        messageIds = new FingerprintSet(Math.min(4L * Long.BYTES * expectedMessageCount, Deduplicator.DEFAULT_MEMORY_BYTES));
+        visibility = new VisibilityManager(
+            (messages, timeout) -> changeMessageVisibilityBatch(queueUrl, messages, timeout), 0, logger);
+        DrainController drain = new DrainController(() -> getQueueDepth(queueUrl), waitTimeSeconds, maxEmptyReceives,
+                                                    recheckMillis, logger);
+
+        try {
+            if (asyncEngine != null) {
+                readAsync(expectedMessageCount, operationStartTimestamp, drain);
+            } else {
+                read(expectedMessageCount, operationStartTimestamp, drain);
+            }
+        } finally {
+            visibility.close();
+        }
+        String response = String.format("ReadQueueTask completed: %,d of %,d messages read%s.", consumed,
+                                        expectedMessageCount,
+                                        duplicates == 0 ? "" : String.format(", %,d received twice", duplicates));
+        logger.info(response);
+        return response;
+    }
+
+    /**
+     * @return messages in the queue when the read started, up to the limit
+     */
+    public int getExpectedMessageCount() {
+        return expectedMessageCount;
+    }
+
+    /**
+     * @return messages consumed, each once
+     */
+    public synchronized int getConsumed() {
+        return consumed;
+    }
+
+    /**
+     * @return messages received again after they were consumed, and not consumed again
+     */
+    public synchronized int getDuplicates() {
+        return duplicates;
+    }
 
-        ReceiveMessageResult sqsMessages = receiveMessages(queueUrl);
-        List<Message>        messages    = sqsMessages.getMessages();
+    private void read(int expectedMessageCount, long operationStartTimestamp, DrainController drain) {
+        while (getConsumed() < expectedMessageCount && drain.shouldContinue()) {
+            List<Message> messages = receiveMessages(
+                queueUrl, drain.getWaitTimeSeconds(),
+                Math.min(MAX_BATCH_SIZE, expectedMessageCount - getConsumed())).getMessages();
+            int read = consume(messages, operationStartTimestamp);
+            drain.received(messages.size(), read == 0);
+        }
+    }
 
-        while (!messages.isEmpty() && readCount <= expectedMessageCount) {
-            for (Message message : messages) {
-                long firstTimeReceivedMillis = getLongAttr(message, "ApproximateFirstReceiveTimestamp");
-                if (firstTimeReceivedMillis > operationStartTimestamp) {
-                    break;
-                }
+    /**
+     * Receives can only claim the messages left to read, so the chains never receive more than
+     * {@code expectedMessageCount} new messages in total. Pages are consumed, and the drain checked, on a small thread
+     * pool, off the SDK's event loop.
+     */
+    private void readAsync(int expectedMessageCount, long operationStartTimestamp, DrainController drain) {
+        ExecutorService executor = Executors.newFixedThreadPool(
+            Math.min(inFlight, 2), new ThreadFactoryBuilder().setNameFormat("read-consume-%d").setDaemon(true).build());
+        AtomicInteger                 claimed = new AtomicInteger();
+        List<CompletableFuture<Void>> chains  = new ArrayList<>(inFlight);
+        try {
+            for (int i = 0; i < inFlight; i++) {
+                CompletableFuture<Void> chain = new CompletableFuture<>();
+                next(chain, claimed, expectedMessageCount, operationStartTimestamp, drain, executor);
+                chains.add(chain);
+            }
+            CompletableFuture.allOf(chains.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 
-                messageBodyConsumer.apply(message, message.getBody());
+    private void next(CompletableFuture<Void> done, AtomicInteger claimed, int expectedMessageCount,
+                      long operationStartTimestamp, DrainController drain, ExecutorService executor) {
+        int claim = drain.shouldContinue() ? claim(claimed, expectedMessageCount) : 0;
+        if (claim == 0) {
+            done.complete(null);
+            return;
+        }
+        asyncEngine.receiveMessages(queueUrl, drain.getWaitTimeSeconds(), claim)
+                   .thenApplyAsync(messages -> {
+                       int read = consume(messages, operationStartTimestamp);
+                       // return what was claimed but not read to the other chains
+                       claimed.addAndGet(read - claim);
+                       drain.received(messages.size(), read == 0);
+                       return read;
+                   }, executor)
+                   .whenCompleteAsync((read, error) -> {
+                       if (error != null) {
+                           done.completeExceptionally(error);
+                       } else {
+                           next(done, claimed, expectedMessageCount, operationStartTimestamp, drain, executor);
+                       }
+                   }, executor);
+    }
 
+    /**
+     * @return number of messages the next receive may request, up to {@link #MAX_BATCH_SIZE}; 0 once all messages to
+     * read are claimed by receives completed or in flight
+     */
+    private static int claim(AtomicInteger claimed, int expectedMessageCount) {
+        while (true) {
+            int current = claimed.get();
+            int claim   = Math.min(MAX_BATCH_SIZE, expectedMessageCount - current);
+            if (claim <= 0) {
+                return 0;
+            }
+            if (claimed.compareAndSet(current, current + claim)) {
+                return claim;
             }
-            readCount += messages.size();
-            messages = receiveMessages(queueUrl).getMessages();
         }
-        String response = "ReadQueueTask completed.";
-        logger.info(response);
-        return response;
+    }
+
+    /**
+     * Consumers are not required to be thread-safe, so pages received concurrently are consumed one at a time.
+     * Messages after the first message received during this read are not consumed, and are released right away.
+     *
+     * @return number of messages consumed, without the messages received again
+     */
+    private synchronized int consume(List<Message> messages, long operationStartTimestamp) {
+        int read = 0;
+        for (int i = 0; i < messages.size(); i++) {
+            Message message                 = messages.get(i);
+            long    firstTimeReceivedMillis = getLongAttr(message, "ApproximateFirstReceiveTimestamp");
+            if (firstTimeReceivedMillis > operationStartTimestamp) {
+                visibility.release(messages.subList(i, messages.size()));
+                break;
+            }
+            if (!messageIds.add(MESSAGE_ID_HASH.hashString(message.getMessageId(), StandardCharsets.UTF_8).asLong())) {
+                duplicates++;
+                continue;
+            }
+
+            messageBodyConsumer.apply(message, message.getBody());
+            consumed++;
+            read++;
+        }
+        return read;
     }
 
 }
@@ -0,0 +1,40 @@
+package com.mz.sqsutils;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * State of a re-drive that stopped before the Lambda deadline, so the next invocation can continue it. Skipped
+ * messages are not carried over: they are made visible when an invocation ends, and the next one skips them again.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class RedriveCheckpoint {
+    private String sourceQueue;
+    private String targetQueue;
+    /**
+     * Start of the first invocation. Messages first received after it are skipped, in every invocation.
+     */
+    private long   redriveStartTimestamp;
+    /**
+     * Skip budget computed by the first invocation.
+     */
+    private int    maxSkips;
+    private int    invocations;
+    /**
+     * When the checkpoint was saved. Checkpoints older than the maximum age are not continued.
+     */
+    private long   savedTimestamp;
+    private int    created;
+    private int    deleted;
+    private int    dropped;
+    private int    deferred;
+    private int    duplicates;
+    private int    received;
+}
@@ -1,34 +1,80 @@
 package com.mz.sqsutils;
 
+import com.amazonaws.AmazonClientException;
 import com.amazonaws.services.sqs.AmazonSQS;
 import com.amazonaws.services.sqs.model.DeleteMessageRequest;
 import com.amazonaws.services.sqs.model.Message;
 import com.amazonaws.services.sqs.model.ReceiveMessageResult;
-import com.google.common.util.concurrent.RateLimiter;
+import com.mz.sqsutils.ArchiveRecord.Decision;
+import com.mz.sqsutils.SqsMetrics.Operation;
+import java.io.UncheckedIOException;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
 import java.util.function.Predicate;
 import org.slf4j.Logger;
 
 /**
  * Sends message from the source queue to the target queue and deletes them in the source queue.
  * Useful for re-driving DLQ into its regular queue.
+ * <p>
+ * To a FIFO target queue, messages keep their group and deduplication id. From a FIFO source queue to a FIFO target
+ * queue, messages are re-driven in batches, and in order within each message group:
+ * <ul>
+ * <li>a batch request has at most one message of each group, so a failed entry is retried before the next message
+ * of its group is sent; a page with several messages of a group is sent in as many rounds,</li>
+ * <li>a message that is skipped, deferred or cannot be sent holds back the following messages of its group, which are
+ * kept invisible until the re-drive ends, then released, and received after it.</li>
+ * </ul>
+ * SQS does not return more messages of a group while one of them is in flight, so the only messages a re-drive holds
+ * back are the ones received with the message holding their group.
  */
 public class RedriveQueueTask extends SqsTask {
+    protected final String            sourceQueue;
+    protected final String            targetQueue;
+    protected final Predicate<String> sendToTarget;
+    protected final Logger            logger;
+    private final   boolean           batched;
     /**
-     * Slack has a limit for webhooks at 3200 requests per 5 minutes (10.6 rps)
-     * If exceeded, webhook will be disabled.
-     * At 5 rps, 10K messages will be re-driven in 33.3 min
-     * At 8 rps - in 20.8 min
+     * Both queues are FIFO queues, the order of messages within a group is kept.
      */
-    private static final double REDRIVE_RATE = 888.0;
+    protected final boolean           ordered;
 
-    private final String            sourceQueue;
-    private final String            targetQueue;
-    private final Predicate<String> sendToTarget;
-    private final Logger            logger;
+    protected final RedriveStats stats = new RedriveStats();
+    /**
+     * Number of each message being forwarded, by receipt handle, so it is audited once sent.
+     */
+    private final Map<String, Integer> forwarding = new ConcurrentHashMap<>();
+
+    protected long                redriveStartTimestamp;
+    protected AdaptiveRateLimiter rateLimiter;
+    protected VisibilityManager   visibility;
+    protected DrainController     drain;
+    private   KeyedRateLimiter    keyedRateLimiter;
+    private   Deduplicator        deduplicator;
+    private   MessageArchive      archive;
+    private   AuditLog            audit;
+    private   Predicate<Message>  payloadFilter;
+    private   int                 deferSeconds;
+    private   LongSupplier        remainingTimeMillis = () -> Long.MAX_VALUE;
+    private   long                stopMarginMillis;
+    private   CheckpointStore     checkpointStore;
+    private   long                checkpointMaxAgeMillis;
+    private   int                 heartbeatSeconds;
+    private   int                 waitTimeSeconds;
+    private   int                 maxEmptyReceives = 1;
+    private   long                recheckMillis;
+    private   String              outcome;
+    private   volatile boolean    outOfTime;
 
     /**
      * @param client       SQS client
@@ -38,11 +84,153 @@ public class RedriveQueueTask extends SqsTask {
      *                     source queue without forwarding
      */
     RedriveQueueTask(AmazonSQS client, String sourceQueue, String targetQueue, Predicate<String> sendToTarget, Logger logger) {
-        super(client);
+        this(client, sourceQueue, targetQueue, sendToTarget, logger, false);
+    }
+
+    /**
+     * @param batched if true, each received page is forwarded with SendMessageBatch and deleted with
+     *                DeleteMessageBatch instead of one request per message
+     */
+    RedriveQueueTask(AmazonSQS client, String sourceQueue, String targetQueue, Predicate<String> sendToTarget, Logger logger,
+                     boolean batched) {
+        this(client, null, sourceQueue, targetQueue, sendToTarget, logger, batched);
+    }
+
+    RedriveQueueTask(AmazonSQS client, AsyncSqsEngine asyncEngine, String sourceQueue, String targetQueue,
+                     Predicate<String> sendToTarget, Logger logger, boolean batched) {
+        super(client, asyncEngine);
         this.sourceQueue = sourceQueue;
         this.targetQueue = targetQueue;
         this.sendToTarget = sendToTarget;
         this.logger = logger;
+        this.audit = AuditLog.full(logger);
+        this.batched = batched;
+        this.ordered = isFifo(sourceQueue) && isFifo(targetQueue);
+    }
+
+    /**
+     * @param rateLimiter limits the rate of forwarded and dropped messages; may be shared with other tasks. By default,
+     *                    each task has its own limiter with the default floor and ceiling.
+     */
+    RedriveQueueTask withRateLimiter(AdaptiveRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+        return this;
+    }
+
+    /**
+     * @param keyedRateLimiter limits the rate of forwarded messages per key
+     * @param deferSeconds     messages whose key is saturated are made invisible for this long instead of forwarded;
+     *                         the re-drive keeps receiving until they are visible again, and re-drives them then,
+     *                         unless it stops early, e.g. at the deadline
+     */
+    RedriveQueueTask withKeyedRateLimiter(KeyedRateLimiter keyedRateLimiter, int deferSeconds) {
+        this.keyedRateLimiter = keyedRateLimiter;
+        this.deferSeconds = deferSeconds;
+        return this;
+    }
+
+    /**
+     * @param deduplicator detects copies of messages already forwarded by this run
+     */
+    RedriveQueueTask withDeduplicator(Deduplicator deduplicator) {
+        this.deduplicator = deduplicator;
+        return this;
+    }
+
+    /**
+     * @param archive records every forwarded and deleted message before it is deleted from the source queue; may be
+     *                shared with other tasks
+     */
+    RedriveQueueTask withArchive(MessageArchive archive) {
+        this.archive = archive;
+        return this;
+    }
+
+    /**
+     * @param audit logs the decision taken for each message. By default, every message is logged with its whole body,
+     *              by the task's logger.
+     */
+    RedriveQueueTask withAuditLog(AuditLog audit) {
+        this.audit = audit;
+        return this;
+    }
+
+    /**
+     * @param payloadFilter filter of a message whose body is a {@link PayloadPointer} by its payload, e.g. in S3,
+     *                      instead of the filter; it fails with an {@link AmazonClientException} or an
+     *                      {@link UncheckedIOException} if the payload cannot be read. By default, such messages are
+     *                      forwarded without filtering.
+     */
+    RedriveQueueTask withPayloadFilter(Predicate<Message> payloadFilter) {
+        this.payloadFilter = payloadFilter;
+        return this;
+    }
+
+    /**
+     * @param remainingTimeMillis time left before the invocation is killed, e.g. {@code Context::getRemainingTimeInMillis}
+     * @param stopMarginMillis    the re-drive stops this long before the deadline, to finish in-flight messages and
+     *                            save the checkpoint
+     */
+    RedriveQueueTask withDeadline(LongSupplier remainingTimeMillis, long stopMarginMillis) {
+        this.remainingTimeMillis = remainingTimeMillis;
+        this.stopMarginMillis = stopMarginMillis;
+        return this;
+    }
+
+    /**
+     * @param checkpointStore where a re-drive stopped by the deadline saves its state, and where the next invocation
+     *                        continues from
+     * @param maxAgeMillis    a checkpoint saved longer ago is discarded, and the re-drive starts over, e.g. when the
+     *                        invocation that should have continued it never ran
+     */
+    RedriveQueueTask withCheckpointStore(CheckpointStore checkpointStore, long maxAgeMillis) {
+        this.checkpointStore = checkpointStore;
+        this.checkpointMaxAgeMillis = maxAgeMillis;
+        return this;
+    }
+
+    /**
+     * @param heartbeatSeconds visibility timeout kept for messages being filtered and forwarded, see
+     *                         {@link VisibilityManager}. By default, there are no heartbeats, and skipped messages are
+     *                         released when the re-drive ends, or reappear after the queue's visibility timeout if it
+     *                         runs longer.
+     */
+    RedriveQueueTask withHeartbeat(int heartbeatSeconds) {
+        this.heartbeatSeconds = heartbeatSeconds;
+        return this;
+    }
+
+    /**
+     * @param waitTimeSeconds  long polling wait of each receive
+     * @param maxEmptyReceives empty receives in a row before the source queue is considered drained, see
+     *                         {@link DrainController}
+     * @param recheckMillis    interval of the periodic source queue depth recheck, 0 to disable. By default, receives
+     *                         use short polling and the depth is checked after each empty receive only.
+     */
+    RedriveQueueTask withDrainDetection(int waitTimeSeconds, int maxEmptyReceives, long recheckMillis) {
+        this.waitTimeSeconds = waitTimeSeconds;
+        this.maxEmptyReceives = maxEmptyReceives;
+        this.recheckMillis = recheckMillis;
+        return this;
+    }
+
+    public RedriveStats getStats() {
+        return stats;
+    }
+
+    /**
+     * @return how the last {@link #call()} ended: drained, caught up, or stopped early and why; null if it did not
+     * re-drive
+     */
+    public String getOutcome() {
+        return outcome;
+    }
+
+    /**
+     * @return true if the last {@link #call()} stopped before the deadline and the re-drive is not complete
+     */
+    public boolean isOutOfTime() {
+        return outOfTime;
     }
 
     @Override
@@ -55,61 +243,415 @@ public class RedriveQueueTask extends SqsTask {
 
             return response;
         }
-        int expectedMsgCount = getTotalMessageCount(sourceQueue);
-        if (expectedMsgCount == 0) {
-            String response = "Source queue is empty.";
-            logger.error(response);
-            return response;
+        String            checkpointKey = CheckpointStore.key(sourceQueue, targetQueue);
+        RedriveCheckpoint checkpoint    = loadCheckpoint(checkpointKey);
+        int               maxSkips;
+        int               invocations;
+        if (checkpoint != null) {
+            redriveStartTimestamp = checkpoint.getRedriveStartTimestamp();
+            maxSkips = checkpoint.getMaxSkips();
+            invocations = checkpoint.getInvocations() + 1;
+            stats.restore(checkpoint);
+            logger.info(String.format("Continuing re-drive started at %s, invocation %d.%n",
+                                      Instant.ofEpochMilli(redriveStartTimestamp), invocations));
+        } else {
+            int expectedMsgCount = getTotalMessageCount(sourceQueue);
+            if (expectedMsgCount == 0) {
+                String response = "Source queue is empty.";
+                logger.error(response);
+                return response;
+            }
+            redriveStartTimestamp = System.currentTimeMillis();
+            maxSkips = expectedMsgCount / 2;
+            invocations = 1;
+            logger.info(String.format("Re-driving %,d messages.%n", expectedMsgCount));
+        }
+
+        if (rateLimiter == null) {
+            rateLimiter = new AdaptiveRateLimiter();
+        }
+        logger.info(String.format("Re-driving at %s%s.%n", rateLimiter, describeEngine()));
+
+        drain = new DrainController(() -> getQueueDepth(sourceQueue), waitTimeSeconds, maxEmptyReceives, recheckMillis,
+                                    logger);
+        visibility = new VisibilityManager(
+            (messages, timeout) -> changeMessageVisibilityBatch(sourceQueue, messages, timeout), heartbeatSeconds, logger);
+        try {
+            redrive(maxSkips);
+        } finally {
+            visibility.close();
+        }
+
+        if (outOfTime) {
+            outcome = "Stopped early: deadline";
+        } else if (stats.getSkipped() > maxSkips) {
+            outcome = String.format("Stopped early: more than %,d messages skipped", maxSkips);
+        } else {
+            drain.finish();
+            outcome = drain.toString();
+        }
+        String response = stats.summary(outOfTime ? "stopped at the deadline"
+                                                  : stats.getSkipped() > maxSkips ? "stopped early" : "complete",
+                                        Duration.between(Instant.ofEpochMilli(redriveStartTimestamp), Instant.now()),
+                                        sourceQueue, targetQueue)
+            + String.format("Outcome: %s%n", outcome)
+            + String.format("Rate: %s%n", rateLimiter)
+            + (keyedRateLimiter == null ? "" : String.format("Key rate: %s%n", keyedRateLimiter))
+            + (deduplicator == null ? "" : String.format("Dedup: %s%n", deduplicator))
+            + (visibility.getReleased() + visibility.getExtended() == 0 ? "" : String.format("Visibility: %s%n", visibility));
+        if (checkpointStore != null && outOfTime) {
+            checkpointStore.save(checkpointKey, stats.toCheckpoint()
+                                                     .sourceQueue(sourceQueue)
+                                                     .targetQueue(targetQueue)
+                                                     .redriveStartTimestamp(redriveStartTimestamp)
+                                                     .maxSkips(maxSkips)
+                                                     .invocations(invocations)
+                                                     .savedTimestamp(System.currentTimeMillis())
+                                                     .build());
+            response += String.format("Stopped before the deadline in invocation %d. Checkpoint saved.%n", invocations);
+        } else if (checkpointStore != null) {
+            checkpointStore.clear(checkpointKey);
+        } else if (outOfTime) {
+            response += String.format("Stopped before the deadline. Re-drive is not complete.%n");
+        }
+        logger.info(response);
+
+        return response;
+    }
+
+    /**
+     * @return the checkpoint to continue from, or null to start a new re-drive
+     */
+    private RedriveCheckpoint loadCheckpoint(String checkpointKey) {
+        if (checkpointStore == null) {
+            return null;
+        }
+        RedriveCheckpoint checkpoint = checkpointStore.load(checkpointKey);
+        if (checkpoint != null && System.currentTimeMillis() - checkpoint.getSavedTimestamp() > checkpointMaxAgeMillis) {
+            logger.warn(String.format("Discarding checkpoint saved at %s, older than %,d ms; starting over.%n",
+                                      Instant.ofEpochMilli(checkpoint.getSavedTimestamp()), checkpointMaxAgeMillis));
+            checkpointStore.clear(checkpointKey);
+            return null;
+        }
+        return checkpoint;
+    }
+
+    /**
+     * @return true if the re-drive should not receive more messages: the source queue is drained, the skip budget is
+     * exhausted or the deadline is near
+     */
+    protected boolean shouldStop(int maxSkips) {
+        if (remainingTimeMillis.getAsLong() < stopMarginMillis) {
+            outOfTime = true;
+        }
+        return outOfTime || stats.getSkipped() > maxSkips || !drain.shouldContinue();
+    }
+
+    protected String describeEngine() {
+        return batched || ordered ? " in batches" : "";
+    }
+
+    /**
+     * Moves messages until {@link #shouldStop(int)}.
+     */
+    protected void redrive(int maxSkips) {
+        while (!shouldStop(maxSkips)) {
+            ReceiveMessageResult sqsMessages = receiveMessages(sourceQueue, drain.getWaitTimeSeconds());
+            List<Message>        messages    = sqsMessages.getMessages();
+            drain.received(messages.size(), allNew(messages));
+            if (messages.isEmpty()) {
+                continue;
+            }
+            visibility.track(messages);
+            if (batched || ordered) {
+                deleteBatch(forwardBatch(messages));
+            } else {
+                messages.forEach(this::redrive);
+            }
+            visibility.done(messages);
         }
-        long redriveStartTimestamp = System.currentTimeMillis();
-        int  maxSkips              = expectedMsgCount / 2;
-        int  createCounter         = 0;
-        int  deleteCounter         = 0;
-        int  skipCounter           = 0;
-        int  dropCounter           = 0;
-        int  messageCount          = 0;
+    }
+
+    /**
+     * @return true if the page has messages, and all of them were sent after the re-drive started
+     */
+    protected boolean allNew(List<Message> messages) {
+        return !messages.isEmpty() && messages.stream().allMatch(this::isNewMessage);
+    }
 
-        logger.info(String.format("Re-driving %,d messages at %.1f requests per second.%n", expectedMsgCount, REDRIVE_RATE));
-        RateLimiter rateLimiter = RateLimiter.create(REDRIVE_RATE);
+    protected boolean isNewMessage(Message message) {
+        long firstTimeReceivedMillis = getLongAttr(message, "ApproximateFirstReceiveTimestamp");
+        return firstTimeReceivedMillis > redriveStartTimestamp;
+    }
+
+    private void redrive(Message message) {
+        int messageCount = stats.received();
+        if (isNewMessage(message)) {
+            stats.skipped();
+            visibility.hold(Collections.singletonList(message));
+            return;
+        }
+        boolean forward = metrics.filter(() -> shouldForward(message));
+        if (forward && isDuplicate(message)) {
+            metrics.limiterWait(rateLimiter.acquire(1));
+            archive(Decision.DUPLICATE, message);
+            stats.duplicate();
+            audit.record(Decision.DUPLICATE, messageCount, message);
+        } else if (forward) {
+            if (isSaturated(message)) {
+                forget(message);
+                rateLimiter.record(() -> metrics.time(Operation.CHANGE_VISIBILITY, () -> client.changeMessageVisibility(
+                    sourceQueue, message.getReceiptHandle(), deferSeconds)));
+                stats.deferred(1);
+                drain.deferred(deferSeconds);
+                return;
+            }
+            metrics.limiterWait(rateLimiter.acquire(1));
+            rateLimiter.record(() -> metrics.time(Operation.SEND, () -> client.sendMessage(toSendRequest(targetQueue, message))));
+            metrics.entries(Operation.SEND, 1);
+            archive(Decision.FORWARDED, message);
+            audit.record(Decision.FORWARDED, messageCount, message);
+            stats.created(1);
+        } else {
+            metrics.limiterWait(rateLimiter.acquire(1));
+            archive(Decision.DROPPED, message);
+            stats.dropped();
+            audit.record(Decision.DROPPED, messageCount, message);
+        }
+        syncArchive();
+        rateLimiter.record(() -> metrics.time(Operation.DELETE, () -> client.deleteMessage(
+            new DeleteMessageRequest()
+                .withReceiptHandle(message.getReceiptHandle())
+                .withQueueUrl(sourceQueue))));
+        metrics.entries(Operation.DELETE, 1);
+        stats.deleted(1);
+    }
 
-        ReceiveMessageResult sqsMessages = receiveMessages(sourceQueue);
-        List<Message>        messages    = sqsMessages.getMessages();
-        while (!messages.isEmpty() && skipCounter <= maxSkips) {
+    /**
+     * Forwards the page with one SendMessageBatch request. Messages that could not be sent are left in the source
+     * queue.
+     *
+     * @return forwarded and dropped messages, i.e. messages to delete from the source queue
+     */
+    protected List<Message> forwardBatch(List<Message> messages) {
+        List<Message> delete  = new ArrayList<>(messages.size());
+        List<Message> forward = select(messages, delete);
+        if (ordered) {
+            OrderedSend send = new OrderedSend(forward);
+            for (List<Message> round = send.next(); !round.isEmpty(); round = send.next()) {
+                List<Message> entries = round;
+                send.sent(rateLimiter.recordBatch(entries.size(), () -> sendMessageBatch(targetQueue, entries)));
+            }
+            return forwarded(send.finish(), delete);
+        }
+        return forwarded(rateLimiter.recordBatch(forward.size(), () -> sendMessageBatch(targetQueue, forward)), delete);
+    }
+
+    /**
+     * Sends the messages of a page to a FIFO queue in rounds of at most one message per group, see the class comment.
+     * One instance per page.
+     */
+    protected class OrderedSend {
+        private final List<List<Message>> rounds       = new ArrayList<>();
+        private final Set<String>         failedGroups = new HashSet<>();
+        private final List<Message>       held         = new ArrayList<>();
+        private final BatchResult         result       = new BatchResult();
+        private       int                 next;
+
+        protected OrderedSend(List<Message> messages) {
+            Map<String, Integer> sizes = new HashMap<>();
             for (Message message : messages) {
-                messageCount++;
-                long firstTimeReceivedMillis = getLongAttr(message, "ApproximateFirstReceiveTimestamp");
-                if (firstTimeReceivedMillis > redriveStartTimestamp) {
-                    skipCounter++;
+                int round = sizes.merge(messageGroupId(message), 1, Integer::sum) - 1;
+                if (round == rounds.size()) {
+                    rounds.add(new ArrayList<>());
+                }
+                rounds.get(round).add(message);
+            }
+        }
+
+        /**
+         * @return the messages of the next round whose group did not fail; empty when all rounds were sent
+         */
+        protected List<Message> next() {
+            while (next < rounds.size()) {
+                List<Message> round = new ArrayList<>();
+                for (Message message : rounds.get(next++)) {
+                    (failedGroups.contains(messageGroupId(message)) ? held : round).add(message);
+                }
+                if (!round.isEmpty()) {
+                    return round;
+                }
+            }
+            return Collections.emptyList();
+        }
+
+        protected void sent(BatchResult sent) {
+            result.add(sent);
+            sent.getFailed().forEach(failure -> failedGroups.add(messageGroupId(failure.getMessage())));
+        }
+
+        /**
+         * Holds the messages held back by a failed message of their group until the end of the run, see
+         * {@link VisibilityManager#hold}.
+         *
+         * @return outcome of all rounds
+         */
+        protected BatchResult finish() {
+            visibility.hold(held);
+            held.forEach(message -> forwarding.remove(message.getReceiptHandle()));
+            return result;
+        }
+    }
+
+    protected void deleteBatch(List<Message> delete) {
+        syncArchive();
+        deleted(rateLimiter.recordBatch(delete.size(), () -> deleteMessageBatch(sourceQueue, delete)));
+    }
+
+    /**
+     * Skips (and holds) new messages and applies the filter, then waits for the rate limiter.
+     *
+     * @param delete receives dropped messages
+     * @return messages to forward
+     */
+    protected List<Message> select(List<Message> messages, List<Message> delete) {
+        List<Message> forward = new ArrayList<>(messages.size());
+        List<Message> defer   = new ArrayList<>();
+        List<Message> skip    = new ArrayList<>();
+        Set<String>   held    = new HashSet<>();
+        for (Message message : messages) {
+            int messageCount = stats.received();
+            if (ordered && held.contains(messageGroupId(message))) {
+                // received again after the message holding its group
+                skip.add(message);
+                continue;
+            }
+            if (isNewMessage(message)) {
+                stats.skipped();
+                skip.add(message);
+                held.add(messageGroupId(message));
+                continue;
+            }
+            if (metrics.filter(() -> shouldForward(message))) {
+                if (isDuplicate(message)) {
+                    delete.add(message);
+                    archive(Decision.DUPLICATE, message);
+                    stats.duplicate();
+                    audit.record(Decision.DUPLICATE, messageCount, message);
                     continue;
                 }
-                rateLimiter.acquire();
-                if (sendToTarget.test(message.getBody())) {
-                    client.sendMessage(targetQueue, message.getBody());
-                    logger.info(String.format("Forwarding(%d): %s%n", messageCount, message.getBody()));
-                    createCounter++;
-                } else {
-                    dropCounter++;
-                    logger.info(String.format("Dropping(%d): %s%n", messageCount, message.getBody()));
+                if (isSaturated(message)) {
+                    forget(message);
+                    defer.add(message);
+                    held.add(messageGroupId(message));
+                    continue;
                 }
-                client.deleteMessage(
-                    new DeleteMessageRequest()
-                        .withReceiptHandle(message.getReceiptHandle())
-                        .withQueueUrl(sourceQueue));
-                deleteCounter++;
+                forward.add(message);
+                forwarding.put(message.getReceiptHandle(), messageCount);
+            } else {
+                delete.add(message);
+                archive(Decision.DROPPED, message);
+                stats.dropped();
+                audit.record(Decision.DROPPED, messageCount, message);
+            }
+        }
+        visibility.hold(skip);
+        if (!defer.isEmpty()) {
+            BatchResult deferred = rateLimiter.recordBatch(
+                defer.size(), () -> changeMessageVisibilityBatch(sourceQueue, defer, deferSeconds));
+            stats.deferred(deferred.getSuccessful().size());
+            if (!deferred.getSuccessful().isEmpty()) {
+                drain.deferred(deferSeconds);
             }
-            messages = receiveMessages(sourceQueue).getMessages();
+            reportFailures("defer", deferred);
         }
+        if (!forward.isEmpty() || !delete.isEmpty()) {
+            metrics.limiterWait(rateLimiter.acquire(forward.size() + delete.size()));
+        }
+        return forward;
+    }
 
-        String response = String.format(
-            "Re-drive complete in %s from %s to %s.%n" +
-                "Created: %,d%n" +
-                "Deleted: %,d%n" +
-                "Dropped: %,d%n" +
-                "Skipped: %,d%n",
-            Duration.between(Instant.ofEpochMilli(redriveStartTimestamp), Instant.now()), sourceQueue, targetQueue,
-            createCounter, deleteCounter, dropCounter, skipCounter);
-        logger.info(response);
+    /**
+     * Applies the filter to the body of the message. A body that is only a {@link PayloadPointer} is neither parsed
+     * nor filtered, unless there is a payload filter; the message is forwarded with the pointer either way.
+     */
+    private boolean shouldForward(Message message) {
+        if (!PayloadPointer.isPointer(message)) {
+            return sendToTarget.test(message.getBody());
+        }
+        if (payloadFilter == null) {
+            return true;
+        }
+        try {
+            return payloadFilter.test(message);
+        } catch (AmazonClientException | UncheckedIOException e) {
+            logger.warn(String.format("Unable to read the payload of %s, forwarding it unfiltered: %s%n",
+                                      message.getMessageId(), e));
+            return true;
+        }
+    }
 
-        return response;
+    private boolean isSaturated(Message message) {
+        return keyedRateLimiter != null && !keyedRateLimiter.tryAcquire(message.getBody());
+    }
+
+    private boolean isDuplicate(Message message) {
+        return deduplicator != null && deduplicator.isDuplicate(message.getBody());
+    }
+
+    /**
+     * The message was not forwarded, its copies are not duplicates.
+     */
+    private void forget(Message message) {
+        if (deduplicator != null) {
+            deduplicator.forget(message.getBody());
+        }
+    }
+
+    private void archive(Decision decision, Message message) {
+        if (archive != null) {
+            archive.append(ArchiveRecord.of(decision, sourceQueue, targetQueue, message));
+        }
+    }
+
+    /**
+     * Waits until the archive records of the messages about to be deleted are on disk, see {@link MessageArchive#sync()}.
+     */
+    protected void syncArchive() {
+        if (archive != null) {
+            archive.sync();
+        }
+    }
+
+    /**
+     * @return {@code delete} with the successfully sent messages added
+     */
+    protected List<Message> forwarded(BatchResult sent, List<Message> delete) {
+        stats.created(sent.getSuccessful().size());
+        for (Message message : sent.getSuccessful()) {
+            archive(Decision.FORWARDED, message);
+            Integer messageCount = forwarding.remove(message.getReceiptHandle());
+            audit.record(Decision.FORWARDED, messageCount == null ? 0 : messageCount, message);
+        }
+        reportFailures("send", sent);
+        for (BatchResult.Failure failure : sent.getFailed()) {
+            forwarding.remove(failure.getMessage().getReceiptHandle());
+            forget(failure.getMessage());
+        }
+        delete.addAll(sent.getSuccessful());
+        return delete;
+    }
+
+
+    protected void deleted(BatchResult deleted) {
+        stats.deleted(deleted.getSuccessful().size());
+        reportFailures("delete", deleted);
+    }
+
+    protected void reportFailures(String operation, BatchResult result) {
+        for (BatchResult.Failure failure : result.getFailed()) {
+            logger.error(String.format("Unable to %s message. %s%n", operation, failure));
+            stats.failed(failure);
+        }
     }
 }
@@ -0,0 +1,157 @@
+package com.mz.sqsutils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Re-drive counters. Thread-safe, so they can be shared by all workers of a concurrent re-drive.
+ */
+public class RedriveStats {
+
+    /**
+     * Failures listed in the summary; further ones are only counted.
+     */
+    public static final int MAX_LISTED_FAILURES = 100;
+
+    private final AtomicInteger created    = new AtomicInteger();
+    private final AtomicInteger deleted    = new AtomicInteger();
+    private final AtomicInteger dropped    = new AtomicInteger();
+    private final AtomicInteger skipped    = new AtomicInteger();
+    private final AtomicInteger deferred   = new AtomicInteger();
+    private final AtomicInteger duplicates = new AtomicInteger();
+    private final AtomicInteger received   = new AtomicInteger();
+    private final AtomicInteger failed     = new AtomicInteger();
+
+    private final Queue<BatchResult.Failure> failures = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @return sequence number of the received message, used in the per-message log lines
+     */
+    int received() {
+        return received.incrementAndGet();
+    }
+
+    void created(int count) {
+        created.addAndGet(count);
+    }
+
+    void deleted(int count) {
+        deleted.addAndGet(count);
+    }
+
+    void dropped() {
+        dropped.incrementAndGet();
+    }
+
+    void skipped() {
+        skipped.incrementAndGet();
+    }
+
+    void deferred(int count) {
+        deferred.addAndGet(count);
+    }
+
+    void duplicate() {
+        duplicates.incrementAndGet();
+    }
+
+    void failed(BatchResult.Failure failure) {
+        if (failed.incrementAndGet() <= MAX_LISTED_FAILURES) {
+            failures.add(failure);
+        }
+    }
+
+    public int getCreated() {
+        return created.get();
+    }
+
+    public int getDeleted() {
+        return deleted.get();
+    }
+
+    public int getDropped() {
+        return dropped.get();
+    }
+
+    public int getSkipped() {
+        return skipped.get();
+    }
+
+    public int getDeferred() {
+        return deferred.get();
+    }
+
+    public int getDuplicates() {
+        return duplicates.get();
+    }
+
+    public int getReceived() {
+        return received.get();
+    }
+
+    public int getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * @return the first {@link #MAX_LISTED_FAILURES} failures
+     */
+    public List<BatchResult.Failure> getFailures() {
+        return new ArrayList<>(failures);
+    }
+
+    /**
+     * Continues counting from a checkpoint of a previous invocation. Skipped messages are counted per invocation, see
+     * {@link RedriveCheckpoint}.
+     */
+    void restore(RedriveCheckpoint checkpoint) {
+        created.set(checkpoint.getCreated());
+        deleted.set(checkpoint.getDeleted());
+        dropped.set(checkpoint.getDropped());
+        deferred.set(checkpoint.getDeferred());
+        duplicates.set(checkpoint.getDuplicates());
+        received.set(checkpoint.getReceived());
+    }
+
+    RedriveCheckpoint.RedriveCheckpointBuilder toCheckpoint() {
+        return RedriveCheckpoint.builder()
+                                .created(getCreated())
+                                .deleted(getDeleted())
+                                .dropped(getDropped())
+                                .deferred(getDeferred())
+                                .duplicates(getDuplicates())
+                                .received(getReceived());
+    }
+
+    /**
+     * @param status how the re-drive ended, e.g. {@code complete} or {@code stopped at the deadline}
+     */
+    public String summary(String status, Duration duration, String sourceQueue, String targetQueue) {
+        StringBuilder summary = new StringBuilder(String.format(
+            "Re-drive %s in %s from %s to %s.%n" +
+                "Created: %,d%n" +
+                "Deleted: %,d%n" +
+                "Dropped: %,d%n" +
+                "Skipped: %,d%n",
+            status, duration, sourceQueue, targetQueue,
+            getCreated(), getDeleted(), getDropped(), getSkipped()));
+        if (getDeferred() > 0) {
+            summary.append(String.format("Deferred: %,d%n", getDeferred()));
+        }
+        if (getDuplicates() > 0) {
+            summary.append(String.format("Duplicates: %,d%n", getDuplicates()));
+        }
+        if (getFailed() > 0) {
+            summary.append(String.format("Failed: %,d%n", getFailed()));
+            failures.forEach(failure -> summary.append(failure).append(System.lineSeparator()));
+            if (getFailed() > failures.size()) {
+                summary.append(String.format("... and %,d more failures%n", getFailed() - failures.size()));
+            }
+        }
+        return summary.toString();
+    }
+}
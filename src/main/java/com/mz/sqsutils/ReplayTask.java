@@ -0,0 +1,193 @@
+package com.mz.sqsutils;
+
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.Message;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.zip.GZIPInputStream;
+import org.slf4j.Logger;
+
+/**
+ * Sends the messages of {@link MessageArchive} segments, or of exports, to a queue, e.g. to undo a re-drive that
+ * dropped messages with a bad filter.
+ * <p>
+ * Segments are streamed record by record, so memory use does not depend on their size. Selected records are sent in
+ * batches of {@link #MAX_BATCH_SIZE} by {@code senders} threads, at the rate of an {@link AdaptiveRateLimiter}. A
+ * segment that ends abruptly, e.g. written by a re-drive that was killed, is replayed up to its last complete record.
+ * Messages are sent with their original body; the archive itself is not modified, so a replay can be repeated.
+ * <p>
+ * To a FIFO queue, messages keep their group and deduplication id, and all messages of a group are sent by the same
+ * thread, in the order of the segments.
+ */
+public class ReplayTask extends SqsTask {
+
+    public static final int DEFAULT_SENDERS = 4;
+
+    private final List<Path>               segments;
+    private final String                   targetQueue;
+    private final Predicate<ArchiveRecord> replay;
+    private final ObjectMapper             objectMapper;
+    private final Logger                   logger;
+    private final int                      senders;
+    private final boolean                  ordered;
+
+    private final AtomicInteger read      = new AtomicInteger();
+    private final AtomicInteger skipped   = new AtomicInteger();
+    private final AtomicInteger replayed  = new AtomicInteger();
+    private final AtomicInteger failed    = new AtomicInteger();
+    private final List<Path>    truncated = new ArrayList<>();
+
+    private AdaptiveRateLimiter rateLimiter = new AdaptiveRateLimiter();
+    private int                 submitted;
+
+    /**
+     * @param segments gzip NDJSON files of {@link ArchiveRecord}s, replayed in order
+     * @param replay   true for the records to send
+     * @param senders  number of threads sending batches
+     */
+    public ReplayTask(AmazonSQS client, List<Path> segments, String targetQueue, Predicate<ArchiveRecord> replay,
+                      ObjectMapper objectMapper, Logger logger, int senders) {
+        super(client);
+        this.segments = segments;
+        this.targetQueue = targetQueue;
+        this.replay = replay;
+        this.objectMapper = objectMapper;
+        this.logger = logger;
+        this.senders = senders;
+        this.ordered = isFifo(targetQueue);
+    }
+
+    /**
+     * @param rateLimiter limits the rate of sent messages
+     */
+    ReplayTask withRateLimiter(AdaptiveRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+        return this;
+    }
+
+    /**
+     * Records of the given decisions; {@link ArchiveRecord.Decision#EXPORTED} selects the records of exports.
+     */
+    public static Predicate<ArchiveRecord> decisions(List<ArchiveRecord.Decision> decisions) {
+        return record -> decisions.contains(record.getDecision() == null ? ArchiveRecord.Decision.EXPORTED
+                                                                         : record.getDecision());
+    }
+
+    /**
+     * Records of messages received from the given queue.
+     */
+    public static Predicate<ArchiveRecord> sourceQueue(String queueUrl) {
+        return record -> queueUrl.equals(record.getSourceQueue());
+    }
+
+    @Override
+    public String call() {
+        long start = System.currentTimeMillis();
+        logger.info(String.format("Replaying %d segments to %s at %s%n", segments.size(), targetQueue, rateLimiter));
+
+        // one thread per sender, so the batches of a sender are sent in order
+        ThreadFactory         threads   = new ThreadFactoryBuilder().setNameFormat("replay-%d").setDaemon(true).build();
+        List<ExecutorService> executors = new ArrayList<>(senders);
+        for (int i = 0; i < senders; i++) {
+            executors.add(Executors.newSingleThreadExecutor(threads));
+        }
+        // bounds the batches read ahead of the senders
+        Semaphore batches = new Semaphore(senders * 2);
+        try {
+            List<List<Message>> pending = new ArrayList<>();
+            for (int i = 0; i < (ordered ? senders : 1); i++) {
+                pending.add(new ArrayList<>(MAX_BATCH_SIZE));
+            }
+            for (Path segment : segments) {
+                replay(segment, pending, executors, batches);
+            }
+            for (int i = 0; i < pending.size(); i++) {
+                if (!pending.get(i).isEmpty()) {
+                    submit(pending.get(i), executors.get(i), batches);
+                }
+            }
+            batches.acquire(senders * 2);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Replay interrupted", e);
+        } finally {
+            executors.forEach(ExecutorService::shutdownNow);
+        }
+
+        String response = String.format(
+            "Replay complete in %s to %s.%nRead: %,d%nReplayed: %,d%nSkipped: %,d%nFailed: %,d%nRate: %s%n",
+            Duration.ofMillis(System.currentTimeMillis() - start), targetQueue, read.get(), replayed.get(),
+            skipped.get(), failed.get(), rateLimiter)
+            + (truncated.isEmpty() ? "" : String.format("Truncated segments: %s%n", truncated));
+        logger.info(response);
+        return response;
+    }
+
+    /**
+     * @param pending batches being filled: one per sender to a FIFO queue, each for the groups of the sender;
+     *                otherwise one, sent by the senders in turn
+     */
+    private void replay(Path segment, List<List<Message>> pending, List<ExecutorService> executors, Semaphore batches)
+        throws InterruptedException {
+        logger.info(String.format("Replaying %s%n", segment));
+        int records = 0;
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(segment), RollingNdjsonWriter.DEFAULT_BUFFER_SIZE);
+             MappingIterator<ArchiveRecord> iterator = objectMapper.readerFor(ArchiveRecord.class).readValues(in)) {
+            while (iterator.hasNextValue()) {
+                ArchiveRecord record = iterator.nextValue();
+                records++;
+                read.incrementAndGet();
+                if (!replay.test(record)) {
+                    skipped.incrementAndGet();
+                    continue;
+                }
+                Message       message = record.toMessage();
+                int           sender  = ordered ? Math.floorMod(messageGroupId(message).hashCode(), senders) : 0;
+                List<Message> batch   = pending.get(sender);
+                batch.add(message);
+                if (batch.size() == MAX_BATCH_SIZE) {
+                    submit(batch, executors.get(ordered ? sender : submitted++ % senders), batches);
+                    pending.set(sender, new ArrayList<>(MAX_BATCH_SIZE));
+                }
+            }
+        } catch (IOException e) {
+            logger.warn(String.format("Segment %s ends abruptly after %,d records: %s%n", segment, records,
+                                      e.getMessage()));
+            truncated.add(segment);
+        }
+    }
+
+    private void submit(List<Message> batch, ExecutorService executor, Semaphore batches) throws InterruptedException {
+        batches.acquire();
+        executor.execute(() -> {
+            try {
+                metrics.limiterWait(rateLimiter.acquire(batch.size()));
+                BatchResult sent = rateLimiter.recordBatch(batch.size(), () -> sendMessageBatch(targetQueue, batch));
+                replayed.addAndGet(sent.getSuccessful().size());
+                for (BatchResult.Failure failure : sent.getFailed()) {
+                    logger.error(String.format("Unable to replay message. %s%n", failure));
+                    failed.incrementAndGet();
+                }
+            } catch (RuntimeException e) {
+                logger.error(String.format("Unable to replay %d messages: %s%n", batch.size(), e.getMessage()));
+                failed.addAndGet(batch.size());
+            } finally {
+                batches.release();
+            }
+        });
+    }
+}
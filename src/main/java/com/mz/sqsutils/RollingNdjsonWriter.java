@@ -0,0 +1,164 @@
+package com.mz.sqsutils;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.google.common.io.CountingOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes objects as gzip compressed NDJSON (one JSON document per line) to a sequence of files
+ * {@code prefix-00001.ndjson.gz}, {@code prefix-00002.ndjson.gz}, ... in a directory.
+ * <p>
+ * Memory use is constant: records are serialized straight into a fixed-size buffer in front of the compressor, and a
+ * file is rolled over once it holds {@code maxFileBytes} of uncompressed JSON. Buffered data is flushed (and
+ * compressed with a sync flush, so the file can be read while it is written) at most once per flush interval, or on
+ * {@link #flush()}.
+ * Thread-safe.
+ */
+public class RollingNdjsonWriter implements Closeable {
+
+    public static final int  DEFAULT_BUFFER_SIZE           = 64 * 1024;
+    public static final long DEFAULT_MAX_FILE_BYTES        = 64L * 1024 * 1024;
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 5_000;
+
+    private static final String SUFFIX = ".ndjson.gz";
+
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter writer;
+    private final Path         directory;
+    private final String       prefix;
+    private final int          bufferSize;
+    private final long         maxFileBytes;
+    private final long         flushIntervalNanos;
+    private final List<Path>   files = new ArrayList<>();
+
+    private JsonGenerator        generator;
+    private CountingOutputStream fileBytes;
+    private long                 lastFlush;
+    private long                 records;
+    private long                 totalBytes;
+
+    public RollingNdjsonWriter(ObjectMapper objectMapper, Path directory, String prefix) {
+        this(objectMapper, directory, prefix, DEFAULT_BUFFER_SIZE, DEFAULT_MAX_FILE_BYTES, DEFAULT_FLUSH_INTERVAL_MILLIS);
+    }
+
+    /**
+     * @param bufferSize          size of the write buffer, in bytes
+     * @param maxFileBytes        uncompressed size after which the next file is started
+     * @param flushIntervalMillis buffered records are flushed to the file at least this often, while records are written
+     */
+    public RollingNdjsonWriter(ObjectMapper objectMapper, Path directory, String prefix, int bufferSize,
+                               long maxFileBytes, long flushIntervalMillis) {
+        this.objectMapper = objectMapper;
+        this.writer = objectMapper.writer()
+                                  .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+                                  .without(SerializationFeature.INDENT_OUTPUT);
+        this.directory = directory;
+        this.prefix = prefix;
+        this.bufferSize = bufferSize;
+        this.maxFileBytes = maxFileBytes;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+    }
+
+    /**
+     * Appends a record as one line.
+     */
+    public synchronized void write(Object record) {
+        try {
+            if (generator == null) {
+                open();
+            }
+            writer.writeValue(generator, record);
+            generator.writeRaw('\n');
+            records++;
+            long now = System.nanoTime();
+            if (now - lastFlush >= flushIntervalNanos) {
+                generator.flush();
+                lastFlush = now;
+            }
+            if (fileBytes.getCount() + generator.getOutputBuffered() >= maxFileBytes) {
+                closeFile();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Flushes the records written so far to the current file, whatever the flush interval.
+     */
+    public synchronized void flush() {
+        if (generator == null) {
+            return;
+        }
+        try {
+            generator.flush();
+            lastFlush = System.nanoTime();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public synchronized long getRecords() {
+        return records;
+    }
+
+    /**
+     * @return files written so far, in order
+     */
+    public synchronized List<Path> getFiles() {
+        return new ArrayList<>(files);
+    }
+
+    /**
+     * @return uncompressed bytes written so far
+     */
+    public synchronized long getBytes() {
+        return totalBytes + (fileBytes == null ? 0 : fileBytes.getCount() + generator.getOutputBuffered());
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            closeFile();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void open() throws IOException {
+        Files.createDirectories(directory);
+        Path file = directory.resolve(String.format("%s-%05d%s", prefix, files.size() + 1, SUFFIX));
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                               StandardOpenOption.TRUNCATE_EXISTING);
+        fileBytes = new CountingOutputStream(new BufferedOutputStream(
+            new GZIPOutputStream(Channels.newOutputStream(channel), bufferSize, true), bufferSize));
+        generator = objectMapper.getFactory().createGenerator(fileBytes);
+        files.add(file);
+        lastFlush = System.nanoTime();
+    }
+
+    private void closeFile() throws IOException {
+        if (generator == null) {
+            return;
+        }
+        generator.close();
+        totalBytes += fileBytes.getCount();
+        generator = null;
+        fileBytes = null;
+    }
+}
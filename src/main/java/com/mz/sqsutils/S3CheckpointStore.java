@@ -0,0 +1,50 @@
+package com.mz.sqsutils;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Stores checkpoints as JSON objects in S3, so they survive across Lambda execution environments.
+ */
+public class S3CheckpointStore implements CheckpointStore {
+
+    private final AmazonS3     s3;
+    private final String       bucket;
+    private final String       prefix;
+    private final ObjectMapper objectMapper;
+
+    public S3CheckpointStore(AmazonS3 s3, String bucket, String prefix, ObjectMapper objectMapper) {
+        this.s3 = s3;
+        this.bucket = bucket;
+        this.prefix = prefix.isEmpty() || prefix.endsWith("/") ? prefix : prefix + "/";
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public RedriveCheckpoint load(String key) {
+        if (!s3.doesObjectExist(bucket, prefix + key)) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(s3.getObjectAsString(bucket, prefix + key), RedriveCheckpoint.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Unable to read checkpoint s3://%s/%s%s", bucket, prefix, key), e);
+        }
+    }
+
+    @Override
+    public void save(String key, RedriveCheckpoint checkpoint) {
+        try {
+            s3.putObject(bucket, prefix + key, objectMapper.writeValueAsString(checkpoint));
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Unable to write checkpoint s3://%s/%s%s", bucket, prefix, key), e);
+        }
+    }
+
+    @Override
+    public void clear(String key) {
+        s3.deleteObject(bucket, prefix + key);
+    }
+}
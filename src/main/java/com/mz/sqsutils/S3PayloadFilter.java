@@ -0,0 +1,61 @@
+package com.mz.sqsutils;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+import com.amazonaws.services.sqs.model.Message;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Predicate;
+
+/**
+ * Filter of a message by its payload: its body, or for a message whose body is a {@link PayloadPointer}, the S3 object
+ * it points to, streamed through {@link MessageFilter#test(java.io.Reader)} without holding it in memory. The object is
+ * not downloaded if the filter does not read messages. Such messages are still forwarded with the pointer. Thread-safe.
+ */
+public class S3PayloadFilter implements Predicate<Message> {
+
+    private final AmazonS3      s3;
+    private final ObjectMapper  objectMapper;
+    private final MessageFilter filter;
+
+    public S3PayloadFilter(AmazonS3 s3, ObjectMapper objectMapper, MessageFilter filter) {
+        this.s3 = s3;
+        this.objectMapper = objectMapper;
+        this.filter = filter;
+    }
+
+    /**
+     * @throws UncheckedIOException if the pointer is invalid or the payload cannot be read
+     */
+    @Override
+    public boolean test(Message message) {
+        if (!PayloadPointer.isPointer(message)) {
+            return filter.test(message.getBody());
+        }
+        if (!filter.readsMessages()) {
+            return true;
+        }
+        PayloadPointer pointer;
+        try {
+            pointer = PayloadPointer.parse(message.getBody(), objectMapper);
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Invalid payload pointer in message %s", message.getMessageId()), e);
+        }
+        try (S3Object object = s3.getObject(pointer.getBucket(), pointer.getKey())) {
+            S3ObjectInputStream content = object.getObjectContent();
+            boolean             forward = filter.test(new InputStreamReader(content, StandardCharsets.UTF_8));
+            if (content.read() >= 0) {
+                // stopped at an excluded text, the rest is not worth downloading
+                content.abort();
+            }
+            return forward;
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Unable to read the payload %s of message %s", pointer,
+                                                         message.getMessageId()), e);
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package com.mz.sqsutils;
+
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.Message;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import org.slf4j.Logger;
+
+/**
+ * Deletes only the messages matching a predicate, e.g. poison messages of a DLQ, and keeps the others.
+ * <p>
+ * Receiver threads receive pages concurrently and delete the matching messages with {@code DeleteMessageBatch}. The
+ * other ones are {@link VisibilityManager#hold held} invisible until the purge ends, with heartbeats, and then made
+ * visible all at once: released right away, they would be received again and again by the purge, each receive
+ * counting towards {@code maxReceiveCount} of a queue with a redrive policy. Consumers of the queue do not get them
+ * while the purge runs.
+ * <p>
+ * Held messages count towards the queue's limit of in-flight messages, about 120,000 for a standard queue and 20,000
+ * for a FIFO queue, above which receives fail. Only their receipt handles are held, and once {@code maxHeld} are held,
+ * they are all released: the purge receives them again later, and counts each kept message once, by its message id.
+ * <p>
+ * The purge stops once every message that was in the queue when it started was seen, or the {@link DrainController}
+ * sees the queue drained, or as many pages in a row with only kept messages sent after the start.
+ * <p>
+ * A message the predicate fails on, e.g. missing a filtered field, is kept.
+ */
+public class SelectivePurgeQueueTask extends SqsTask {
+
+    public static final int DEFAULT_RECEIVERS = 4;
+    public static final int DEFAULT_MAX_HELD  = 10_000;
+
+    private static final HashFunction MESSAGE_ID_HASH = Hashing.farmHashFingerprint64();
+
+    private final String             queueUrl;
+    private final Predicate<Message> shouldDelete;
+    private final Logger             logger;
+    private final int                receivers;
+
+    private final AtomicInteger kept     = new AtomicInteger();
+    private final AtomicInteger deleted  = new AtomicInteger();
+    private final AtomicInteger failed   = new AtomicInteger();
+    private final AtomicInteger received = new AtomicInteger();
+
+    private int          waitTimeSeconds  = DrainController.DEFAULT_WAIT_TIME_SECONDS;
+    private int          maxEmptyReceives = DrainController.DEFAULT_MAX_EMPTY_RECEIVES;
+    private long         recheckMillis    = DrainController.DEFAULT_RECHECK_MILLIS;
+    private int          heartbeatSeconds = VisibilityManager.DEFAULT_HEARTBEAT_SECONDS;
+    private int          maxHeld          = DEFAULT_MAX_HELD;
+    private LongSupplier remainingTimeMillis = () -> Long.MAX_VALUE;
+    private long         stopMarginMillis;
+
+    private volatile boolean  outOfTime;
+    private long              startTimestamp;
+    private int               initialMessages;
+    private FingerprintSet    keptIds;
+    private DrainController   drain;
+    private VisibilityManager visibility;
+
+    /**
+     * @param shouldDelete true for the messages to delete
+     * @param receivers    number of threads receiving and deleting
+     */
+    public SelectivePurgeQueueTask(AmazonSQS client, String queueUrl, Predicate<Message> shouldDelete, Logger logger,
+                                   int receivers) {
+        super(client);
+        this.queueUrl = queueUrl;
+        this.shouldDelete = shouldDelete;
+        this.logger = logger;
+        this.receivers = receivers;
+    }
+
+    /**
+     * @see RedriveQueueTask#withDrainDetection(int, int, long)
+     */
+    SelectivePurgeQueueTask withDrainDetection(int waitTimeSeconds, int maxEmptyReceives, long recheckMillis) {
+        this.waitTimeSeconds = waitTimeSeconds;
+        this.maxEmptyReceives = maxEmptyReceives;
+        this.recheckMillis = recheckMillis;
+        return this;
+    }
+
+    /**
+     * @param heartbeatSeconds visibility timeout kept for the kept messages until the purge ends, see
+     *                         {@link VisibilityManager}; 0 lets them reappear after the queue's visibility timeout,
+     *                         and be received again
+     */
+    SelectivePurgeQueueTask withHeartbeat(int heartbeatSeconds) {
+        this.heartbeatSeconds = heartbeatSeconds;
+        return this;
+    }
+
+    /**
+     * @param maxHeld number of kept messages held invisible at most; once reached, they are released and received
+     *                again later. Keep it well below the queue's limit of in-flight messages
+     */
+    SelectivePurgeQueueTask withMaxHeld(int maxHeld) {
+        this.maxHeld = maxHeld;
+        return this;
+    }
+
+    /**
+     * @see RedriveQueueTask#withDeadline(LongSupplier, long)
+     */
+    SelectivePurgeQueueTask withDeadline(LongSupplier remainingTimeMillis, long stopMarginMillis) {
+        this.remainingTimeMillis = remainingTimeMillis;
+        this.stopMarginMillis = stopMarginMillis;
+        return this;
+    }
+
+    /**
+     * Messages sent before the given age, from their {@code SentTimestamp}.
+     */
+    public static Predicate<Message> olderThan(Duration age) {
+        return message -> {
+            long sentBefore = System.currentTimeMillis() - age.toMillis();
+            return Long.parseLong(message.getAttributes().get("SentTimestamp")) < sentBefore;
+        };
+    }
+
+    /**
+     * Messages whose body passes the filter, e.g. a {@link MessageFilter} with {@code include} and field rules.
+     */
+    public static Predicate<Message> body(Predicate<String> filter) {
+        return message -> filter.test(message.getBody());
+    }
+
+    @Override
+    public String call() {
+        long start = System.currentTimeMillis();
+        startTimestamp = start;
+        initialMessages = getQueueDepth(queueUrl).getVisible();
+        keptIds = new FingerprintSet(Math.min(4L * Long.BYTES * initialMessages, Deduplicator.DEFAULT_MEMORY_BYTES));
+        drain = new DrainController(() -> getQueueDepth(queueUrl), waitTimeSeconds, maxEmptyReceives, recheckMillis,
+                                    logger);
+        visibility = new VisibilityManager(
+            (messages, timeout) -> changeMessageVisibilityBatch(queueUrl, messages, timeout), heartbeatSeconds, logger);
+        logger.info(String.format("Selective purge of %s: %,d messages with %d receivers%n",
+                                  queueUrl, initialMessages, receivers));
+
+        ExecutorService executor = Executors.newFixedThreadPool(
+            receivers, new ThreadFactoryBuilder().setNameFormat("purge-%d").setDaemon(true).build());
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < receivers; i++) {
+                futures.add(executor.submit(this::receive));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Selective purge interrupted", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException
+                  ? (RuntimeException) e.getCause() : new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+            visibility.close();
+        }
+        drain.finish();
+
+        String response = String.format(
+            "Selective purge complete in %s of %s.%nReceived: %,d%nDeleted: %,d%nKept: %,d%nFailed: %,d%nOutcome: %s%n",
+            Duration.ofMillis(System.currentTimeMillis() - start), queueUrl, received.get(), deleted.get(),
+            kept.get(), failed.get(), outcome())
+            + (visibility.getReleased() + visibility.getExtended() == 0 ? "" : String.format("Visibility: %s%n", visibility));
+        logger.info(response);
+        return response;
+    }
+
+    private String outcome() {
+        if (outOfTime) {
+            return "Stopped early: deadline";
+        }
+        if (allSeen()) {
+            return String.format("ALL_SEEN, %,d messages at the start", initialMessages);
+        }
+        return drain.toString();
+    }
+
+    public boolean isOutOfTime() {
+        return outOfTime;
+    }
+
+    private void receive() {
+        while (!shouldStop()) {
+            List<Message> messages = receiveMessages(queueUrl, drain.getWaitTimeSeconds()).getMessages();
+            received.addAndGet(messages.size());
+            List<Message> toDelete = new ArrayList<>(messages.size());
+            List<Message> toKeep   = new ArrayList<>(messages.size());
+            boolean       allNew   = !messages.isEmpty();
+            for (Message message : messages) {
+                if (matches(message)) {
+                    toDelete.add(message);
+                    allNew = false;
+                } else {
+                    // only the receipt handle is needed to release the message, do not hold on to the body
+                    toKeep.add(new Message().withMessageId(message.getMessageId())
+                                            .withReceiptHandle(message.getReceiptHandle()));
+                    if (keptIds.add(MESSAGE_ID_HASH.hashString(message.getMessageId(), StandardCharsets.UTF_8).asLong())) {
+                        kept.incrementAndGet();
+                    }
+                    allNew &= getLongAttr(message, "SentTimestamp") > startTimestamp;
+                }
+            }
+            drain.received(messages.size(), allNew);
+            visibility.hold(toKeep);
+            if (visibility.getHeld() >= maxHeld) {
+                logger.info(String.format("Releasing %,d kept messages, the most held at once.%n", visibility.getHeld()));
+                visibility.releaseHeld();
+            }
+            if (!toDelete.isEmpty()) {
+                BatchResult result = deleteMessageBatch(queueUrl, toDelete);
+                deleted.addAndGet(result.getSuccessful().size());
+                failed.addAndGet(result.getFailed().size());
+            }
+        }
+    }
+
+    private boolean matches(Message message) {
+        try {
+            return shouldDelete.test(message);
+        } catch (RuntimeException e) {
+            logger.warn(String.format("Keeping message %s: %s%n", message.getMessageId(), e.getMessage()));
+            return false;
+        }
+    }
+
+    private boolean shouldStop() {
+        if (remainingTimeMillis.getAsLong() < stopMarginMillis) {
+            outOfTime = true;
+        }
+        return outOfTime || Thread.currentThread().isInterrupted()
+               || allSeen() || !drain.shouldContinue();
+    }
+
+    private boolean allSeen() {
+        return initialMessages > 0 && deleted.get() + failed.get() + kept.get() >= initialMessages;
+    }
+}
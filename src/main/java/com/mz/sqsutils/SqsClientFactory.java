@@ -0,0 +1,152 @@
+package com.mz.sqsutils;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.client.builder.AwsClientBuilder.EndpointConfiguration;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.AmazonSQSClientBuilder;
+import io.netty.channel.ChannelOption;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.core.retry.RetryPolicy;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.sqs.SqsAsyncClient;
+import software.amazon.awssdk.services.sqs.SqsAsyncClientBuilder;
+
+/**
+ * Builds the SQS and S3 clients, once per region and endpoint, and keeps them for the life of the JVM, so every task
+ * of every invocation shares their connection pools. Clients are built on first use.
+ * <p>
+ * The SDK defaults, 50 connections and no keep-alive, throttle the parallel engines: a client has enough connections
+ * for the receivers, workers or in-flight requests of a command, sockets are kept alive, and connections are renewed
+ * after {@code connectionTtl} so they follow changes of the endpoint's addresses.
+ */
+public class SqsClientFactory {
+
+    public static final int  DEFAULT_MAX_CONNECTIONS       = 64;
+    public static final long DEFAULT_CONNECTION_TTL_MILLIS = 60_000;
+    /**
+     * Same as the SDK default. Throttled calls are retried by the SDK before the {@link AdaptiveRateLimiter} sees them,
+     * fewer retries make the rate adapt sooner.
+     */
+    public static final int  DEFAULT_MAX_ERROR_RETRY       = 3;
+
+    private final Map<String, AmazonSQS>      sqsClients      = new ConcurrentHashMap<>();
+    private final Map<String, SqsAsyncClient> sqsAsyncClients = new ConcurrentHashMap<>();
+    private final Map<String, AmazonS3>       s3Clients       = new ConcurrentHashMap<>();
+
+    private int     maxConnections      = DEFAULT_MAX_CONNECTIONS;
+    private boolean tcpKeepAlive        = true;
+    private long    connectionTtlMillis = DEFAULT_CONNECTION_TTL_MILLIS;
+    private int     maxErrorRetry       = DEFAULT_MAX_ERROR_RETRY;
+
+    /**
+     * @param maxConnections connections of each client, the maximum number of concurrent requests
+     */
+    SqsClientFactory withMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+        return this;
+    }
+
+    /**
+     * @param tcpKeepAlive TCP keep-alive of the connections
+     */
+    SqsClientFactory withTcpKeepAlive(boolean tcpKeepAlive) {
+        this.tcpKeepAlive = tcpKeepAlive;
+        return this;
+    }
+
+    /**
+     * @param connectionTtlMillis connections are closed once this old, -1 to keep them until they are idle
+     */
+    SqsClientFactory withConnectionTtl(long connectionTtlMillis) {
+        this.connectionTtlMillis = connectionTtlMillis;
+        return this;
+    }
+
+    /**
+     * @param maxErrorRetry retries of a call failed with a retryable error, e.g. throttling, 0 to disable
+     */
+    SqsClientFactory withMaxErrorRetry(int maxErrorRetry) {
+        this.maxErrorRetry = maxErrorRetry;
+        return this;
+    }
+
+    /**
+     * @param endpoint endpoint instead of the region's, e.g. {@code http://localhost:9324} for a local SQS stand-in;
+     *                 may be null
+     */
+    public AmazonSQS sqs(String region, String endpoint) {
+        return sqsClients.computeIfAbsent(key(region, endpoint), key -> {
+            AmazonSQSClientBuilder builder = AmazonSQSClientBuilder.standard()
+                                                                   .withClientConfiguration(clientConfiguration());
+            return (endpoint == null ? builder.withRegion(region)
+                                     : builder.withEndpointConfiguration(new EndpointConfiguration(endpoint, region)))
+                .build();
+        });
+    }
+
+    /**
+     * Non-blocking client of the {@code ASYNC} engine, with the same settings.
+     */
+    public SqsAsyncClient sqsAsync(String region, String endpoint) {
+        return sqsAsyncClients.computeIfAbsent(key(region, endpoint), key -> {
+            // this SDK version has no tcpKeepAlive setting, the socket option is set directly
+            NettyNioAsyncHttpClient.Builder httpClient = NettyNioAsyncHttpClient.builder()
+                                                                                .maxConcurrency(maxConnections)
+                                                                                .putChannelOption(ChannelOption.SO_KEEPALIVE,
+                                                                                                  tcpKeepAlive);
+            if (connectionTtlMillis > 0) {
+                httpClient.connectionTimeToLive(Duration.ofMillis(connectionTtlMillis));
+            }
+            SqsAsyncClientBuilder builder = SqsAsyncClient.builder()
+                                                          .region(Region.of(region))
+                                                          .httpClientBuilder(httpClient)
+                                                          .overrideConfiguration(ClientOverrideConfiguration.builder()
+                                                              .retryPolicy(RetryPolicy.builder()
+                                                                                      .numRetries(maxErrorRetry)
+                                                                                      .build())
+                                                              .build());
+            return (endpoint == null ? builder : builder.endpointOverride(URI.create(endpoint))).build();
+        });
+    }
+
+    /**
+     * @param endpoint endpoint instead of the region's, e.g. for a local S3 stand-in, with path-style bucket names;
+     *                 may be null
+     */
+    public AmazonS3 s3(String region, String endpoint) {
+        return s3Clients.computeIfAbsent(key(region, endpoint), key -> {
+            AmazonS3ClientBuilder builder = AmazonS3ClientBuilder.standard()
+                                                                 .withClientConfiguration(clientConfiguration());
+            if (endpoint == null) {
+                return builder.withRegion(region).build();
+            }
+            return builder.withEndpointConfiguration(new EndpointConfiguration(endpoint, region))
+                          .withPathStyleAccessEnabled(true)
+                          .build();
+        });
+    }
+
+    private ClientConfiguration clientConfiguration() {
+        return new ClientConfiguration().withMaxConnections(maxConnections)
+                                        .withTcpKeepAlive(tcpKeepAlive)
+                                        .withConnectionTTL(connectionTtlMillis)
+                                        .withMaxErrorRetry(maxErrorRetry);
+    }
+
+    private static String key(String region, String endpoint) {
+        return endpoint == null ? region : region + " " + endpoint;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d connections per client, keep-alive %s, connection TTL %,d ms, %d retries",
+                             maxConnections, tcpKeepAlive, connectionTtlMillis, maxErrorRetry);
+    }
+}
@@ -0,0 +1,205 @@
+package com.mz.sqsutils;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+import lombok.Value;
+
+/**
+ * Metrics of SQS tasks: latency, calls, entries, errors and throttles of each SQS operation, plus the CPU time of
+ * message filters and the time spent waiting for the rate limiter. Together they tell whether a task is bound by SQS,
+ * by the filter or by the limiter.
+ * <p>
+ * Thread-safe and cheap enough to record every call. {@link #snapshot()} gives a consistent-enough copy for reports
+ * and tests; {@link EmfMetricsReporter} publishes them to CloudWatch.
+ */
+public class SqsMetrics {
+
+    public enum Operation {
+        RECEIVE, SEND, DELETE, CHANGE_VISIBILITY, PURGE, GET_ATTRIBUTES
+    }
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final Map<Operation, OperationMetrics> operations       = new EnumMap<>(Operation.class);
+    private final LongAdder                        filterCalls      = new LongAdder();
+    private final LongAdder                        filterCpuNanos   = new LongAdder();
+    private final LongAdder                        limiterWaitNanos = new LongAdder();
+    private final long                             startNanos       = System.nanoTime();
+
+    public SqsMetrics() {
+        for (Operation operation : Operation.values()) {
+            operations.put(operation, new OperationMetrics());
+        }
+    }
+
+    /**
+     * Runs an SQS call and records its latency, and its failure if it throws.
+     */
+    public <T> T time(Operation operation, Supplier<T> call) {
+        long start = System.nanoTime();
+        try {
+            T result = call.get();
+            called(operation, System.nanoTime() - start);
+            return result;
+        } catch (RuntimeException e) {
+            called(operation, System.nanoTime() - start);
+            failed(operation, AdaptiveRateLimiter.isThrottling(e));
+            throw e;
+        }
+    }
+
+    /**
+     * Records the latency of a call timed by the caller, e.g. a non-blocking one.
+     */
+    public void called(Operation operation, long nanos) {
+        OperationMetrics metrics = operations.get(operation);
+        metrics.latency.record(nanos);
+        metrics.calls.increment();
+    }
+
+    public void failed(Operation operation, boolean throttled) {
+        operations.get(operation).errors.increment();
+        if (throttled) {
+            operations.get(operation).throttles.increment();
+        }
+    }
+
+    /**
+     * Records the messages processed by a call, e.g. received messages or successful batch entries.
+     */
+    public void entries(Operation operation, int count) {
+        operations.get(operation).entries.add(count);
+    }
+
+    /**
+     * Records the entries of a batch request.
+     */
+    public void batch(Operation operation, BatchResult result) {
+        entries(operation, result.getSuccessful().size());
+        for (BatchResult.Failure failure : result.getFailed()) {
+            failed(operation, AdaptiveRateLimiter.isThrottlingCode(failure.getCode()));
+        }
+    }
+
+    /**
+     * Runs a message filter and records its CPU time (wall time if the JVM does not measure thread CPU time).
+     */
+    public boolean filter(BooleanSupplier filter) {
+        long start = cpuTime();
+        try {
+            return filter.getAsBoolean();
+        } finally {
+            filterCpuNanos.add(cpuTime() - start);
+            filterCalls.increment();
+        }
+    }
+
+    /**
+     * @param seconds time waited for the rate limiter, as returned by {@link AdaptiveRateLimiter#acquire(int)}
+     */
+    public void limiterWait(double seconds) {
+        limiterWaitNanos.add((long) (seconds * 1e9));
+    }
+
+    public Snapshot snapshot() {
+        return snapshot(false);
+    }
+
+    /**
+     * Like {@link #snapshot()}, but the latency maximums are those since the previous interval snapshot. Subtract the
+     * previous interval snapshot to get the metrics of the interval; only one reporter should take them.
+     */
+    public Snapshot intervalSnapshot() {
+        return snapshot(true);
+    }
+
+    private Snapshot snapshot(boolean interval) {
+        Map<Operation, OperationSnapshot> snapshots = new EnumMap<>(Operation.class);
+        operations.forEach((operation, metrics) -> snapshots.put(operation, metrics.snapshot(interval)));
+        return new Snapshot(System.nanoTime() - startNanos, snapshots, filterCalls.sum(), filterCpuNanos.sum(),
+                            limiterWaitNanos.sum());
+    }
+
+    private static long cpuTime() {
+        return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    private static class OperationMetrics {
+        private final LatencyHistogram latency   = new LatencyHistogram();
+        private final LongAdder        calls     = new LongAdder();
+        private final LongAdder        entries   = new LongAdder();
+        private final LongAdder        errors    = new LongAdder();
+        private final LongAdder        throttles = new LongAdder();
+
+        private OperationSnapshot snapshot(boolean interval) {
+            return new OperationSnapshot(interval ? latency.intervalSnapshot() : latency.snapshot(), calls.sum(),
+                                         entries.sum(), errors.sum(), throttles.sum());
+        }
+    }
+
+    @Value
+    public static class OperationSnapshot {
+        LatencyHistogram.Snapshot latency;
+        long                      calls;
+        /**
+         * Messages received, or batch entries processed successfully.
+         */
+        long                      entries;
+        /**
+         * Failed calls and failed batch entries.
+         */
+        long                      errors;
+        long                      throttles;
+
+        OperationSnapshot minus(OperationSnapshot earlier) {
+            return new OperationSnapshot(latency.minus(earlier.latency), calls - earlier.calls,
+                                         entries - earlier.entries, errors - earlier.errors,
+                                         throttles - earlier.throttles);
+        }
+    }
+
+    @Value
+    public static class Snapshot {
+        long                              elapsedNanos;
+        Map<Operation, OperationSnapshot> operations;
+        long                              filterCalls;
+        long                              filterCpuNanos;
+        long                              limiterWaitNanos;
+
+        public OperationSnapshot get(Operation operation) {
+            return operations.get(operation);
+        }
+
+        /**
+         * @return metrics recorded since {@code earlier}
+         */
+        public Snapshot minus(Snapshot earlier) {
+            Map<Operation, OperationSnapshot> deltas = new EnumMap<>(Operation.class);
+            operations.forEach((operation, snapshot) -> deltas.put(operation, snapshot.minus(earlier.get(operation))));
+            return new Snapshot(elapsedNanos - earlier.elapsedNanos, deltas, filterCalls - earlier.filterCalls,
+                                filterCpuNanos - earlier.filterCpuNanos, limiterWaitNanos - earlier.limiterWaitNanos);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder summary = new StringBuilder();
+            operations.forEach((operation, snapshot) -> {
+                if (snapshot.getCalls() > 0) {
+                    summary.append(String.format(
+                        "%s: %,d calls, %,d entries, %,d errors, %,d throttles, p50 %.1f ms, p99 %.1f ms, max %.1f ms%n",
+                        operation, snapshot.getCalls(), snapshot.getEntries(), snapshot.getErrors(),
+                        snapshot.getThrottles(), snapshot.getLatency().getPercentileMillis(0.5),
+                        snapshot.getLatency().getPercentileMillis(0.99), snapshot.getLatency().getMaxMillis()));
+                }
+            });
+            summary.append(String.format("Filter: %,d calls, %,d ms CPU. Rate limiter wait: %,d ms%n",
+                                         filterCalls, filterCpuNanos / 1_000_000, limiterWaitNanos / 1_000_000));
+            return summary.toString();
+        }
+    }
+}
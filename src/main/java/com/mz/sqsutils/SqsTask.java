@@ -1,14 +1,29 @@
 package com.mz.sqsutils;
 
 import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequestEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequestEntry;
 import com.amazonaws.services.sqs.model.GetQueueAttributesResult;
 import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
 import com.amazonaws.services.sqs.model.QueueAttributeName;
 import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
 import com.amazonaws.services.sqs.model.ReceiveMessageResult;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
+import com.google.common.base.Utf8;
+import com.mz.sqsutils.SqsMetrics.Operation;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.function.Function;
 import lombok.RequiredArgsConstructor;
 
 import static com.amazonaws.services.sqs.model.QueueAttributeName.ApproximateNumberOfMessages;
@@ -20,28 +35,267 @@ import static com.amazonaws.services.sqs.model.QueueAttributeName.ApproximateNum
  */
 public abstract class SqsTask implements Callable {
 
+    /**
+     * Maximum number of entries in a single SendMessageBatch or DeleteMessageBatch request.
+     */
+    protected static final int MAX_BATCH_SIZE = 10;
+
+    /**
+     * Maximum total size of the bodies and message attributes of the entries of a single SendMessageBatch request.
+     */
+    protected static final int MAX_BATCH_PAYLOAD_BYTES = 256 * 1024;
+
+    /**
+     * Entries failed with a non sender fault (e.g. throttling, internal error) are retried up to this number of attempts.
+     */
+    protected static final int MAX_BATCH_ATTEMPTS = 3;
+
+    /**
+     * System attributes requested with every receive. The timestamps tell the messages sent before a command started
+     * from the newer ones; the others are only set on messages of FIFO queues.
+     */
+    static final String[] RECEIVE_ATTRIBUTES = {
+        "ApproximateFirstReceiveTimestamp", "SentTimestamp", "MessageGroupId", "MessageDeduplicationId", "SequenceNumber"
+    };
+
+    /**
+     * Message attributes requested with every receive, so messages are forwarded with them.
+     */
+    static final String ALL_MESSAGE_ATTRIBUTES = "All";
+
     protected final AmazonSQS client;
 
+    /**
+     * Non-blocking engine, or null if the task runs on the blocking {@link #client} only.
+     */
+    protected final AsyncSqsEngine asyncEngine;
+
+    protected SqsMetrics metrics = new SqsMetrics();
+
     public SqsTask(AmazonSQS client) {
+        this(client, null);
+    }
+
+    public SqsTask(AmazonSQS client, AsyncSqsEngine asyncEngine) {
         this.client = client;
+        this.asyncEngine = asyncEngine;
+    }
+
+    public SqsMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @param metrics where SQS calls are recorded; may be shared with other tasks and the {@link AsyncSqsEngine}
+     */
+    public void setMetrics(SqsMetrics metrics) {
+        this.metrics = metrics;
     }
 
     protected ReceiveMessageResult receiveMessages(String sourceQueue) {
-        return client.receiveMessage(
+        return receiveMessages(sourceQueue, 0);
+    }
+
+    /**
+     * @param waitTimeSeconds long polling wait, up to 20 seconds; 0 for short polling
+     */
+    protected ReceiveMessageResult receiveMessages(String sourceQueue, int waitTimeSeconds) {
+        return receiveMessages(sourceQueue, waitTimeSeconds, MAX_BATCH_SIZE);
+    }
+
+    /**
+     * @param maxMessages messages to receive at most, up to {@link #MAX_BATCH_SIZE}
+     */
+    protected ReceiveMessageResult receiveMessages(String sourceQueue, int waitTimeSeconds, int maxMessages) {
+        ReceiveMessageResult result = metrics.time(Operation.RECEIVE, () -> client.receiveMessage(
             new ReceiveMessageRequest(sourceQueue)
-                .withMaxNumberOfMessages(10)
-                .withAttributeNames("ApproximateFirstReceiveTimestamp"));
+                .withMaxNumberOfMessages(maxMessages)
+                .withWaitTimeSeconds(waitTimeSeconds)
+                .withAttributeNames(RECEIVE_ATTRIBUTES)
+                .withMessageAttributeNames(ALL_MESSAGE_ATTRIBUTES)));
+        metrics.entries(Operation.RECEIVE, result.getMessages().size());
+        return result;
+    }
+
+    /**
+     * Sends up to {@link #MAX_BATCH_SIZE} messages to the queue, in one request unless their payload exceeds
+     * {@link #MAX_BATCH_PAYLOAD_BYTES}, see {@link #sendBatches(List)}. Entries that fail with a retryable error are
+     * re-sent individually in the following attempts; the rest of the batch is not re-sent.
+     */
+    protected BatchResult sendMessageBatch(String queueUrl, List<Message> messages) {
+        BatchResult result = new BatchResult();
+        for (List<Message> batch : sendBatches(messages)) {
+            result.add(executeBatch(Operation.SEND, batch, pending -> {
+                List<SendMessageBatchRequestEntry> entries = new ArrayList<>(pending.size());
+                pending.forEach((id, message) -> entries.add(toSendEntry(queueUrl, id, message)));
+                return client.sendMessageBatch(new SendMessageBatchRequest(queueUrl, entries)).getFailed();
+            }));
+        }
+        return result;
+    }
+
+    /**
+     * Splits messages into consecutive batches of at most {@link #MAX_BATCH_SIZE} entries and
+     * {@link #MAX_BATCH_PAYLOAD_BYTES}, so large messages do not fail a whole SendMessageBatch request. A message that
+     * is larger on its own is sent alone.
+     */
+    static List<List<Message>> sendBatches(List<Message> messages) {
+        List<List<Message>> batches = new ArrayList<>();
+        List<Message>       batch   = new ArrayList<>(Math.min(messages.size(), MAX_BATCH_SIZE));
+        int                 bytes   = 0;
+        for (Message message : messages) {
+            int size = payloadSize(message);
+            if (!batch.isEmpty() && (batch.size() == MAX_BATCH_SIZE || bytes + size > MAX_BATCH_PAYLOAD_BYTES)) {
+                batches.add(batch);
+                batch = new ArrayList<>(MAX_BATCH_SIZE);
+                bytes = 0;
+            }
+            batch.add(message);
+            bytes += size;
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    /**
+     * @return size of the message as SQS counts it against the limits: body and message attributes (names, types and
+     * values), in bytes
+     */
+    static int payloadSize(Message message) {
+        int size = Utf8.encodedLength(message.getBody());
+        for (Map.Entry<String, MessageAttributeValue> attribute : message.getMessageAttributes().entrySet()) {
+            MessageAttributeValue value = attribute.getValue();
+            size += Utf8.encodedLength(attribute.getKey()) + Utf8.encodedLength(value.getDataType());
+            if (value.getStringValue() != null) {
+                size += Utf8.encodedLength(value.getStringValue());
+            }
+            if (value.getBinaryValue() != null) {
+                size += value.getBinaryValue().remaining();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Deletes up to {@link #MAX_BATCH_SIZE} messages from the queue in one request, retrying failed entries.
+     */
+    protected BatchResult deleteMessageBatch(String queueUrl, List<Message> messages) {
+        return executeBatch(Operation.DELETE, messages, pending -> {
+            List<DeleteMessageBatchRequestEntry> entries = new ArrayList<>(pending.size());
+            pending.forEach((id, message) -> entries.add(new DeleteMessageBatchRequestEntry(id, message.getReceiptHandle())));
+            return client.deleteMessageBatch(new DeleteMessageBatchRequest(queueUrl, entries)).getFailed();
+        });
+    }
+
+    /**
+     * Changes the visibility timeout of up to {@link #MAX_BATCH_SIZE} messages in one request, retrying failed
+     * entries. A timeout of 0 makes the messages visible immediately.
+     */
+    protected BatchResult changeMessageVisibilityBatch(String queueUrl, List<Message> messages, int visibilityTimeout) {
+        return executeBatch(Operation.CHANGE_VISIBILITY, messages, pending -> {
+            List<ChangeMessageVisibilityBatchRequestEntry> entries = new ArrayList<>(pending.size());
+            pending.forEach((id, message) -> entries.add(
+                new ChangeMessageVisibilityBatchRequestEntry(id, message.getReceiptHandle())
+                    .withVisibilityTimeout(visibilityTimeout)));
+            return client.changeMessageVisibilityBatch(new ChangeMessageVisibilityBatchRequest(queueUrl, entries)).getFailed();
+        });
+    }
+
+    /**
+     * Builds the batch entry that forwards {@code message} to the queue, body and message attributes unchanged. The id
+     * is unique within the batch. To a FIFO queue, the message keeps its group and deduplication id, see
+     * {@link #messageGroupId(Message)}.
+     */
+    protected SendMessageBatchRequestEntry toSendEntry(String queueUrl, String id, Message message) {
+        SendMessageBatchRequestEntry entry = new SendMessageBatchRequestEntry(id, message.getBody())
+            .withMessageAttributes(message.getMessageAttributes());
+        if (isFifo(queueUrl)) {
+            entry.withMessageGroupId(messageGroupId(message))
+                 .withMessageDeduplicationId(messageDeduplicationId(message));
+        }
+        return entry;
+    }
+
+    /**
+     * Same as {@link #toSendEntry(String, String, Message)} for a single message.
+     */
+    protected SendMessageRequest toSendRequest(String queueUrl, Message message) {
+        SendMessageRequest request = new SendMessageRequest(queueUrl, message.getBody())
+            .withMessageAttributes(message.getMessageAttributes());
+        if (isFifo(queueUrl)) {
+            request.withMessageGroupId(messageGroupId(message))
+                   .withMessageDeduplicationId(messageDeduplicationId(message));
+        }
+        return request;
+    }
+
+    static boolean isFifo(String queueUrl) {
+        return queueUrl != null && queueUrl.endsWith(".fifo");
+    }
+
+    /**
+     * @return the group of a message received from a FIFO queue; for other messages their id, so forwarding them to a
+     * FIFO queue does not serialize them in one group
+     */
+    static String messageGroupId(Message message) {
+        return message.getAttributes().getOrDefault("MessageGroupId", message.getMessageId());
+    }
+
+    /**
+     * @return the deduplication id of a message received from a FIFO queue, otherwise its id. A FIFO target queue
+     * discards a message sent again with the same id within its 5-minute deduplication interval, which makes
+     * re-sending after a failure safe.
+     */
+    static String messageDeduplicationId(Message message) {
+        return message.getAttributes().getOrDefault("MessageDeduplicationId", message.getMessageId());
+    }
+
+    private BatchResult executeBatch(Operation operation, List<Message> messages,
+                                     Function<Map<String, Message>, List<BatchResultErrorEntry>> request) {
+        BatchResult          result  = new BatchResult();
+        Map<String, Message> pending = new LinkedHashMap<>();
+        for (int i = 0; i < messages.size(); i++) {
+            pending.put(Integer.toString(i), messages.get(i));
+        }
+        for (int attempt = 1; !pending.isEmpty(); attempt++) {
+            Map<String, Message>        requested = pending;
+            List<BatchResultErrorEntry> failed    = metrics.time(operation, () -> request.apply(requested));
+            Map<String, Message>        retry  = new LinkedHashMap<>();
+            for (BatchResultErrorEntry error : failed) {
+                Message message = pending.remove(error.getId());
+                if (message == null) {
+                    continue;
+                }
+                if (Boolean.TRUE.equals(error.getSenderFault()) || attempt >= MAX_BATCH_ATTEMPTS) {
+                    result.addFailure(message, error);
+                } else {
+                    retry.put(error.getId(), message);
+                }
+            }
+            result.addSuccessful(pending.values());
+            pending = retry;
+        }
+        metrics.batch(operation, result);
+        return result;
     }
 
     protected int getTotalMessageCount(String queueUrl) {
-        GetQueueAttributesResult queueAttributes = client.getQueueAttributes(queueUrl, Arrays.asList(
-            ApproximateNumberOfMessages.toString(),
-            ApproximateNumberOfMessagesDelayed.toString(),
-            ApproximateNumberOfMessagesNotVisible.toString()));
+        return getQueueDepth(queueUrl).getTotal();
+    }
+
+    protected QueueDepth getQueueDepth(String queueUrl) {
+        GetQueueAttributesResult queueAttributes = metrics.time(Operation.GET_ATTRIBUTES, () -> client.getQueueAttributes(
+            queueUrl, Arrays.asList(
+                ApproximateNumberOfMessages.toString(),
+                ApproximateNumberOfMessagesDelayed.toString(),
+                ApproximateNumberOfMessagesNotVisible.toString())));
         int approximateNumberOfMessages           = getIntAttr(queueAttributes, ApproximateNumberOfMessages);
         int approximateNumberOfMessagesDelayed    = getIntAttr(queueAttributes, ApproximateNumberOfMessagesDelayed);
         int approximateNumberOfMessagesNotVisible = getIntAttr(queueAttributes, ApproximateNumberOfMessagesNotVisible);
-        return approximateNumberOfMessages + approximateNumberOfMessagesDelayed + approximateNumberOfMessagesNotVisible;
+        return new QueueDepth(approximateNumberOfMessages, approximateNumberOfMessagesDelayed,
+                              approximateNumberOfMessagesNotVisible);
     }
 
     int getIntAttr(GetQueueAttributesResult queueAttributes, QueueAttributeName attrName) {
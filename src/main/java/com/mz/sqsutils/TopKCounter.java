@@ -0,0 +1,103 @@
+package com.mz.sqsutils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import lombok.Value;
+
+/**
+ * Most frequent items of a stream in fixed memory, with the Space-Saving algorithm: at most {@code capacity} items are
+ * counted, and an item that is not counted yet replaces the item with the smallest count, inheriting that count as
+ * its error.
+ * <p>
+ * Every item seen more than {@code n / capacity} times in a stream of {@code n} items is counted; a count
+ * overestimates the true count by at most its error. Not thread-safe.
+ */
+public class TopKCounter {
+
+    private static final Comparator<Counter> BY_COUNT = Comparator.comparingLong((Counter counter) -> counter.count)
+                                                                  .thenComparingLong(counter -> counter.sequence);
+
+    private final int                  capacity;
+    private final Map<String, Counter> counters;
+    private final TreeSet<Counter>     byCount = new TreeSet<>(BY_COUNT);
+    private       long                 sequence;
+    private       long                 total;
+
+    /**
+     * @param capacity number of items counted
+     */
+    public TopKCounter(int capacity) {
+        this.capacity = capacity;
+        this.counters = new HashMap<>(capacity * 2);
+    }
+
+    public void add(String item) {
+        total++;
+        Counter counter = counters.get(item);
+        if (counter != null) {
+            byCount.remove(counter);
+        } else if (counters.size() < capacity) {
+            counter = new Counter(item, 0, sequence++);
+            counters.put(item, counter);
+        } else {
+            Counter evicted = byCount.pollFirst();
+            counters.remove(evicted.item);
+            counter = new Counter(item, evicted.count, sequence++);
+            counters.put(item, counter);
+        }
+        counter.count++;
+        byCount.add(counter);
+    }
+
+    /**
+     * @return number of items added
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * @return up to {@code k} items, most frequent first
+     */
+    public List<Item> top(int k) {
+        List<Item>        top     = new ArrayList<>(Math.min(k, counters.size()));
+        Iterator<Counter> counter = byCount.descendingIterator();
+        while (top.size() < k && counter.hasNext()) {
+            Counter next = counter.next();
+            top.add(new Item(next.item, next.count, next.error));
+        }
+        return top;
+    }
+
+    @Value
+    public static class Item {
+        String value;
+        /**
+         * Upper bound of the number of times the item was added.
+         */
+        long   count;
+        /**
+         * Maximum overestimation of {@link #count}.
+         */
+        long   error;
+    }
+
+    private static final class Counter {
+        private final String item;
+        private final long   error;
+        private final long   sequence;
+        private       long   count;
+
+        Counter(String item, long count, long sequence) {
+            this.item = item;
+            this.count = count;
+            this.error = count;
+            this.sequence = sequence;
+        }
+    }
+}
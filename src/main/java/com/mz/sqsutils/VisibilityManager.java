@@ -0,0 +1,170 @@
+package com.mz.sqsutils;
+
+import com.amazonaws.services.sqs.model.Message;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import org.slf4j.Logger;
+
+/**
+ * Keeps received messages invisible only while they are being processed.
+ * <ul>
+ * <li>Messages left over when a task stops are {@link #release released}: made visible right away instead of after
+ * the queue's visibility timeout.</li>
+ * <li>Messages a task skips are {@link #hold held} until it stops, then released together: released right away, they
+ * would be received again by the same task and skipped again.</li>
+ * <li>Messages {@link #track tracked} as in flight get a heartbeat: every {@code heartbeatSeconds / 2} their visibility
+ * timeout is extended to {@code heartbeatSeconds}, so a slow filter or send does not let them reappear and be
+ * received twice.</li>
+ * </ul>
+ * Thread-safe.
+ */
+public class VisibilityManager implements AutoCloseable {
+
+    public static final int DEFAULT_HEARTBEAT_SECONDS = 30;
+
+    private final BiFunction<List<Message>, Integer, BatchResult> changeVisibility;
+    private final int                                             heartbeatSeconds;
+    private final Logger                                          logger;
+    private final Map<String, Message>                            inFlight = new ConcurrentHashMap<>();
+    private final Map<String, Message>                            held     = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService                        heartbeat;
+
+    private final AtomicInteger released = new AtomicInteger();
+    private final AtomicInteger extended = new AtomicInteger();
+
+    /**
+     * @param changeVisibility changes the visibility timeout of up to {@link SqsTask#MAX_BATCH_SIZE} messages of the
+     *                         queue, e.g. with {@link SqsTask#changeMessageVisibilityBatch}
+     * @param heartbeatSeconds visibility timeout kept for in-flight messages; 0 disables heartbeats
+     */
+    public VisibilityManager(BiFunction<List<Message>, Integer, BatchResult> changeVisibility, int heartbeatSeconds,
+                             Logger logger) {
+        this.changeVisibility = changeVisibility;
+        this.heartbeatSeconds = heartbeatSeconds;
+        this.logger = logger;
+        if (heartbeatSeconds > 0) {
+            long period = TimeUnit.SECONDS.toMillis(heartbeatSeconds) / 2;
+            heartbeat = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("visibility-heartbeat-%d").setDaemon(true).build());
+            heartbeat.scheduleWithFixedDelay(this::heartbeat, period, period, TimeUnit.MILLISECONDS);
+        } else {
+            heartbeat = null;
+        }
+    }
+
+    /**
+     * Makes the messages visible again immediately.
+     */
+    public void release(Collection<Message> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        done(messages);
+        for (List<Message> batch : Lists.partition(new ArrayList<>(messages), SqsTask.MAX_BATCH_SIZE)) {
+            BatchResult result = changeVisibility.apply(batch, 0);
+            released.addAndGet(result.getSuccessful().size());
+            result.getFailed().forEach(failure -> logger.warn(String.format("Unable to release message. %s%n", failure)));
+        }
+    }
+
+    /**
+     * Keeps the messages invisible until {@link #close()}, which releases them. Heartbeats, if enabled, extend them
+     * until then; otherwise they reappear after the queue's visibility timeout.
+     */
+    public void hold(Collection<Message> messages) {
+        done(messages);
+        messages.forEach(message -> held.put(message.getReceiptHandle(), message));
+    }
+
+    /**
+     * Starts heartbeats for the messages, until they are {@link #done} or {@link #release released}.
+     */
+    public void track(Collection<Message> messages) {
+        if (heartbeat != null) {
+            messages.forEach(message -> inFlight.put(message.getReceiptHandle(), message));
+        }
+    }
+
+    /**
+     * Stops heartbeats for the messages, e.g. once they are deleted or left to reappear.
+     */
+    public void done(Collection<Message> messages) {
+        if (heartbeat != null) {
+            messages.forEach(message -> inFlight.remove(message.getReceiptHandle()));
+        }
+    }
+
+    private void heartbeat() {
+        try {
+            List<Message> messages = new ArrayList<>(inFlight.values());
+            messages.addAll(held.values());
+            for (List<Message> batch : Lists.partition(messages, SqsTask.MAX_BATCH_SIZE)) {
+                BatchResult result = changeVisibility.apply(batch, heartbeatSeconds);
+                extended.addAndGet(result.getSuccessful().size());
+                for (BatchResult.Failure failure : result.getFailed()) {
+                    // receipt handle no longer valid, e.g. the message was deleted meanwhile
+                    inFlight.remove(failure.getMessage().getReceiptHandle());
+                    held.remove(failure.getMessage().getReceiptHandle());
+                }
+            }
+        } catch (RuntimeException e) {
+            logger.warn(String.format("Visibility heartbeat failed: %s%n", e));
+        }
+    }
+
+    /**
+     * Releases the messages held so far, e.g. to stay below the queue's limit of in-flight messages.
+     */
+    public void releaseHeld() {
+        List<Message> messages = new ArrayList<>(held.size());
+        for (String receiptHandle : held.keySet()) {
+            Message message = held.remove(receiptHandle);
+            if (message != null) {
+                messages.add(message);
+            }
+        }
+        release(messages);
+    }
+
+    /**
+     * @return number of messages held until {@link #close()}
+     */
+    public int getHeld() {
+        return held.size();
+    }
+
+    public int getReleased() {
+        return released.get();
+    }
+
+    public int getExtended() {
+        return extended.get();
+    }
+
+    /**
+     * Stops heartbeats and releases the held messages.
+     */
+    @Override
+    public void close() {
+        if (heartbeat != null) {
+            heartbeat.shutdownNow();
+        }
+        inFlight.clear();
+        releaseHeld();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%,d released, %,d extended", getReleased(), getExtended());
+    }
+}
@@ -0,0 +1,33 @@
+package com.mz.sqsutils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.util.function.Function;
+
+/**
+ * Extracts the webhook URL of a Webhooks outbox message: {@code {"payload": "{\"url\": ..., \"payload\": ...}"}}.
+ * Returns null for messages of any other shape.
+ */
+public class WebhookUrlKeyExtractor implements Function<String, String> {
+
+    private final ObjectMapper objectMapper;
+
+    public WebhookUrlKeyExtractor(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public String apply(String messageBody) {
+        try {
+            JsonNode payload = objectMapper.readTree(messageBody).get("payload");
+            if (payload == null || !payload.isTextual()) {
+                return null;
+            }
+            JsonNode url = objectMapper.readTree(payload.textValue()).get("url");
+            return url == null ? null : url.textValue();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.mz.sqsutils;
+
+import com.amazonaws.services.sqs.model.GetQueueAttributesRequest;
+import com.amazonaws.services.sqs.model.GetQueueAttributesResult;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.helpers.NOPLogger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AsyncRedriveTest {
+
+    private static final String DLQ   = InMemorySqs.queueUrl("orders-dlq");
+    private static final String QUEUE = InMemorySqs.queueUrl("orders");
+
+    private final List<String> depthThreads = new CopyOnWriteArrayList<>();
+    private final InMemorySqs  sqs          = new InMemorySqs() {
+        @Override
+        public GetQueueAttributesResult getQueueAttributes(GetQueueAttributesRequest request) {
+            depthThreads.add(Thread.currentThread().getName());
+            return super.getQueueAttributes(request);
+        }
+    };
+
+    private ExecutorService asyncCalls;
+
+    @BeforeEach
+    void setUp() {
+        asyncCalls = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setNameFormat("sdk-%d").setDaemon(true).build());
+    }
+
+    @AfterEach
+    void tearDown() {
+        asyncCalls.shutdownNow();
+    }
+
+    @Test
+    void checksTheDrainOffTheSdkThreads() {
+        sqs.seed(DLQ, 50, i -> "{\"id\":" + i + "}");
+
+        String response = task().withDrainDetection(0, 2, 1).call();
+
+        assertEquals(0, sqs.size(DLQ));
+        assertEquals(50, sqs.size(QUEUE));
+        assertTrue(response.contains("DRAINED"), response);
+        assertFalse(depthThreads.isEmpty());
+        assertTrue(depthThreads.stream().noneMatch(thread -> thread.startsWith("sdk-")), depthThreads.toString());
+    }
+
+    @Test
+    void doesNotReceiveOnceOutOfTime() {
+        sqs.seed(DLQ, 50, i -> "{\"id\":" + i + "}");
+
+        String response = task().withDeadline(() -> 0, 1_000).call();
+
+        assertEquals(50, sqs.size(DLQ));
+        assertEquals(0, sqs.size(QUEUE));
+        assertTrue(response.contains("Stopped early: deadline"), response);
+    }
+
+    private RedriveQueueTask task() {
+        return new AsyncRedriveQueueTask(sqs, new AsyncSqsEngine(new InMemorySqsAsync(sqs, asyncCalls)), DLQ, QUEUE,
+                                         body -> true, NOPLogger.NOP_LOGGER, 4);
+    }
+}
@@ -0,0 +1,121 @@
+package com.mz.sqsutils;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.helpers.NOPLogger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AutoRedriveDaemonTest {
+
+    private static final String DLQ         = InMemorySqs.queueUrl("orders-dlq");
+    private static final String QUEUE       = InMemorySqs.queueUrl("orders");
+    private static final long   POLL        = 10;
+    private static final long   MIN_BACKOFF = 200;
+    private static final long   MAX_BACKOFF = 800;
+    private static final long   TIMEOUT     = TimeUnit.SECONDS.toMillis(10);
+
+    private InMemorySqs     sqs;
+    private List<Long>      redrives;
+    private ExecutorService runner;
+
+    @BeforeEach
+    void setUp() {
+        sqs = new InMemorySqs();
+        redrives = new CopyOnWriteArrayList<>();
+        runner = Executors.newSingleThreadExecutor();
+    }
+
+    @AfterEach
+    void tearDown() {
+        runner.shutdownNow();
+    }
+
+    @Test
+    void redrivesAtTheThresholdAndBacksOff() throws Exception {
+        AutoRedriveDaemon daemon = daemon();
+        sqs.seed(DLQ, 3, i -> "{\"id\":" + i + "}");
+        Future<String> summary = runner.submit(daemon);
+
+        Thread.sleep(10 * POLL);
+        assertEquals(3, sqs.size(DLQ));
+        assertTrue(redrives.isEmpty());
+
+        sqs.seed(DLQ, 2, i -> "{\"id\":" + (3 + i) + "}");
+        await(() -> sqs.size(QUEUE) == 5 && sqs.size(DLQ) == 0);
+        sqs.seed(DLQ, 5, i -> "{\"id\":" + (5 + i) + "}");
+        await(() -> sqs.size(QUEUE) == 10 && sqs.size(DLQ) == 0);
+        daemon.stop();
+        String response = summary.get(TIMEOUT, TimeUnit.MILLISECONDS);
+
+        assertEquals(2, redrives.size());
+        assertTrue(redrives.get(1) - redrives.get(0) >= MIN_BACKOFF / 2, redrives.toString());
+        assertTrue(response.contains("Re-drives: 2"), response);
+        assertTrue(response.contains("Created: 10"), response);
+        assertTrue(response.contains("Errors: 0"), response);
+    }
+
+    @Test
+    void stopsWithoutARedriveBelowTheThreshold() throws Exception {
+        AutoRedriveDaemon daemon = daemon();
+        sqs.seed(DLQ, 4, i -> "{\"id\":" + i + "}");
+        Future<String> summary = runner.submit(daemon);
+
+        Thread.sleep(10 * POLL);
+        daemon.stop();
+        String response = summary.get(TIMEOUT, TimeUnit.MILLISECONDS);
+
+        assertTrue(redrives.isEmpty());
+        assertEquals(4, sqs.size(DLQ));
+        assertTrue(response.contains("Re-drives: 0"), response);
+    }
+
+    @Test
+    void backoffDoublesUpToTheMaximumWithJitter() {
+        AutoRedriveDaemon daemon = daemon();
+        for (int i = 0; i < 100; i++) {
+            assertBetween(MIN_BACKOFF / 2, MIN_BACKOFF, daemon.backoff(0));
+            assertBetween(MIN_BACKOFF, 2 * MIN_BACKOFF, daemon.backoff(1));
+            assertBetween(MAX_BACKOFF / 2, MAX_BACKOFF, daemon.backoff(3));
+            assertBetween(MAX_BACKOFF / 2, MAX_BACKOFF, daemon.backoff(100));
+        }
+    }
+
+    private AutoRedriveDaemon daemon() {
+        return new AutoRedriveDaemon(
+            sqs,
+            Collections.singletonList(new QueuePair(DLQ, QUEUE)),
+            pair -> {
+                redrives.add(System.currentTimeMillis());
+                return new RedriveQueueTask(sqs, pair.getSourceQueue(), pair.getTargetQueue(), body -> true,
+                                            NOPLogger.NOP_LOGGER);
+            },
+            new AdaptiveRateLimiter(),
+            NOPLogger.NOP_LOGGER,
+            1)
+            .withPolling(POLL, 5)
+            .withBackoff(MIN_BACKOFF, MAX_BACKOFF);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Timed out");
+            Thread.sleep(POLL);
+        }
+    }
+
+    private static void assertBetween(long min, long max, long actual) {
+        assertTrue(actual >= min && actual <= max, actual + " not in [" + min + ", " + max + "]");
+    }
+}
@@ -0,0 +1,53 @@
+package com.mz.sqsutils;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResult;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.slf4j.helpers.NOPLogger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PipelinedRedriveTest {
+
+    private static final String DLQ   = InMemorySqs.queueUrl("orders-dlq");
+    private static final String QUEUE = InMemorySqs.queueUrl("orders");
+
+    @Test
+    void deletesForwardedMessagesWhenAStageFails() {
+        AtomicInteger sends = new AtomicInteger();
+        InMemorySqs sqs = new InMemorySqs() {
+            @Override
+            public SendMessageBatchResult sendMessageBatch(SendMessageBatchRequest request) {
+                if (sends.incrementAndGet() > 5) {
+                    throw new AmazonServiceException("Target queue unavailable.");
+                }
+                return super.sendMessageBatch(request);
+            }
+
+            @Override
+            public DeleteMessageBatchResult deleteMessageBatch(DeleteMessageBatchRequest request) {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.deleteMessageBatch(request);
+            }
+        };
+        sqs.seed(DLQ, 200, i -> "{\"id\":" + i + "}");
+        RedriveQueueTask task = new PipelinedRedriveQueueTask(sqs, DLQ, QUEUE, body -> true, NOPLogger.NOP_LOGGER, 2, 4)
+            .withRateLimiter(new AdaptiveRateLimiter(10_000, 10_000, 1_000));
+
+        assertThrows(AmazonServiceException.class, task::call);
+
+        assertTrue(sqs.size(QUEUE) > 0);
+        assertEquals(200, sqs.size(DLQ) + sqs.size(QUEUE));
+        assertEquals(sqs.size(QUEUE), task.getStats().getDeleted());
+    }
+}
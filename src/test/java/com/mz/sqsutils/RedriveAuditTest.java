@@ -0,0 +1,75 @@
+package com.mz.sqsutils;
+
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.helpers.NOPLogger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RedriveAuditTest {
+
+    private static final String DLQ   = InMemorySqs.queueUrl("orders-dlq");
+    private static final String QUEUE = InMemorySqs.queueUrl("orders");
+
+    private final List<String> forwarded = new CopyOnWriteArrayList<>();
+    private final Logger       audit     = (Logger) Proxy.newProxyInstance(
+        Logger.class.getClassLoader(), new Class<?>[] {Logger.class}, (proxy, method, args) -> {
+            if (method.getName().equals("info") && args.length == 3 && args[0].toString().startsWith("Forwarding")) {
+                forwarded.add(args[2].toString());
+            }
+            return method.getReturnType() == boolean.class ? false : null;
+        });
+
+    @Test
+    void auditsBatchedMessagesOnceSent() {
+        auditsSentMessagesOnly(new RedriveQueueTask(sqs(), DLQ, QUEUE, body -> true, NOPLogger.NOP_LOGGER, true));
+    }
+
+    @Test
+    void auditsPipelinedMessagesOnceSent() {
+        auditsSentMessagesOnly(new PipelinedRedriveQueueTask(sqs(), DLQ, QUEUE, body -> true, NOPLogger.NOP_LOGGER, 2, 2));
+    }
+
+    private void auditsSentMessagesOnly(RedriveQueueTask task) {
+        ((InMemorySqs) task.client).seed(DLQ, 30, i -> "{\"id\":" + i + ",\"reject\":" + (i % 3 == 0) + "}");
+
+        String response = task.withAuditLog(AuditLog.full(audit)).withDrainDetection(0, 1, 0).call();
+
+        assertEquals(20, task.getStats().getCreated(), response);
+        assertEquals(20, forwarded.size(), forwarded.toString());
+        assertTrue(forwarded.stream().noneMatch(body -> body.contains("\"reject\":true")), forwarded.toString());
+    }
+
+    /**
+     * Rejects the messages with {@code "reject":true}.
+     */
+    private static InMemorySqs sqs() {
+        return new InMemorySqs() {
+            @Override
+            public SendMessageBatchResult sendMessageBatch(SendMessageBatchRequest request) {
+                List<SendMessageBatchRequestEntry> accepted =
+                    request.getEntries().stream()
+                           .filter(entry -> !entry.getMessageBody().contains("\"reject\":true"))
+                           .collect(Collectors.toList());
+                SendMessageBatchResult result = accepted.isEmpty()
+                    ? new SendMessageBatchResult()
+                    : super.sendMessageBatch(request.clone().withEntries(accepted));
+                request.getEntries().stream()
+                       .filter(entry -> !accepted.contains(entry))
+                       .forEach(entry -> result.withFailed(new BatchResultErrorEntry().withId(entry.getId())
+                                                                                     .withCode("InvalidMessageContents")
+                                                                                     .withSenderFault(true)));
+                return result;
+            }
+        };
+    }
+}
@@ -0,0 +1,106 @@
+package com.mz.sqsutils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.helpers.NOPLogger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RedriveCheckpointTest {
+
+    private static final String DLQ     = InMemorySqs.queueUrl("orders-dlq");
+    private static final String QUEUE   = InMemorySqs.queueUrl("orders");
+    private static final String KEY     = CheckpointStore.key(DLQ, QUEUE);
+    private static final long   MAX_AGE = TimeUnit.HOURS.toMillis(1);
+
+    @TempDir
+    Path directory;
+
+    private InMemorySqs         sqs;
+    private FileCheckpointStore store;
+
+    @BeforeEach
+    void setUp() {
+        sqs = new InMemorySqs();
+        sqs.seed(DLQ, 50, i -> "{\"id\":" + i + "}");
+        store = new FileCheckpointStore(directory, new ObjectMapper());
+    }
+
+    @Test
+    void stopsAtTheDeadlineAndContinuesFromTheCheckpoint() {
+        AtomicInteger pages = new AtomicInteger();
+        RedriveQueueTask first = task().withDeadline(() -> pages.incrementAndGet() > 3 ? 0 : Long.MAX_VALUE, 1);
+        String response = first.call();
+
+        assertTrue(first.isOutOfTime());
+        assertTrue(response.startsWith("Re-drive stopped at the deadline"), response);
+        RedriveCheckpoint checkpoint = store.load(KEY);
+        assertNotNull(checkpoint);
+        assertEquals(1, checkpoint.getInvocations());
+        assertEquals(30, checkpoint.getCreated());
+
+        RedriveQueueTask second = task();
+        response = second.call();
+
+        assertFalse(second.isOutOfTime());
+        assertTrue(response.startsWith("Re-drive complete"), response);
+        assertEquals(50, second.getStats().getCreated());
+        assertEquals(50, second.getStats().getDeleted());
+        assertEquals(checkpoint.getRedriveStartTimestamp(), second.redriveStartTimestamp);
+        assertEquals(0, sqs.size(DLQ));
+        assertEquals(50, sqs.size(QUEUE));
+        assertNull(store.load(KEY));
+    }
+
+    @Test
+    void discardsAnExpiredCheckpoint() {
+        store.save(KEY, RedriveCheckpoint.builder()
+                                         .sourceQueue(DLQ)
+                                         .targetQueue(QUEUE)
+                                         .redriveStartTimestamp(1)
+                                         .invocations(3)
+                                         .created(1_000)
+                                         .savedTimestamp(System.currentTimeMillis() - MAX_AGE - 1)
+                                         .build());
+
+        RedriveQueueTask task = task();
+        task.call();
+
+        assertEquals(50, task.getStats().getCreated());
+        assertTrue(task.redriveStartTimestamp > 1);
+        assertNull(store.load(KEY));
+    }
+
+    @Test
+    void countsSkippedMessagesPerInvocation() throws IOException {
+        // saved before skipped messages were counted per invocation, when the 50 new messages were skipped once
+        Files.write(directory.resolve(KEY), String.format(
+            "{\"sourceQueue\":\"%s\",\"targetQueue\":\"%s\",\"redriveStartTimestamp\":%d,\"maxSkips\":60," +
+                "\"invocations\":1,\"savedTimestamp\":%d,\"skipped\":50}",
+            DLQ, QUEUE, System.currentTimeMillis() - MAX_AGE, System.currentTimeMillis()).getBytes(StandardCharsets.UTF_8));
+
+        RedriveQueueTask task = task().withDrainDetection(0, 6, 0);
+        String response = task.call();
+
+        assertEquals(50, task.getStats().getSkipped(), response);
+        assertTrue(response.startsWith("Re-drive complete"), response);
+        assertEquals(50, sqs.size(DLQ));
+    }
+
+    private RedriveQueueTask task() {
+        return new RedriveQueueTask(sqs, DLQ, QUEUE, body -> true, NOPLogger.NOP_LOGGER)
+            .withCheckpointStore(store, MAX_AGE);
+    }
+}
@@ -0,0 +1,39 @@
+package com.mz.sqsutils;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.helpers.NOPLogger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RedriveDeferTest {
+
+    private static final String DLQ   = InMemorySqs.queueUrl("webhooks-dlq");
+    private static final String QUEUE = InMemorySqs.queueUrl("webhooks");
+
+    @Test
+    void waitsForDeferredMessagesBeforeItEnds() {
+        redrivesDeferredMessages(false);
+    }
+
+    @Test
+    void waitsForDeferredBatchesBeforeItEnds() {
+        redrivesDeferredMessages(true);
+    }
+
+    private static void redrivesDeferredMessages(boolean batched) {
+        InMemorySqs sqs = new InMemorySqs();
+        sqs.seed(DLQ, 20, i -> "{\"id\":" + i + "}");
+        RedriveQueueTask task = new RedriveQueueTask(sqs, DLQ, QUEUE, body -> true, NOPLogger.NOP_LOGGER, batched)
+            .withKeyedRateLimiter(new KeyedRateLimiter(body -> "hooks.slack.com", 10), 1)
+            .withDrainDetection(1, 2, 0);
+
+        String response = task.call();
+
+        assertTrue(task.getStats().getDeferred() > 0, response);
+        assertEquals(20, task.getStats().getCreated(), response);
+        assertEquals(0, sqs.size(DLQ));
+        assertEquals(20, sqs.size(QUEUE));
+        assertTrue(task.getOutcome().startsWith("DRAINED"), response);
+    }
+}
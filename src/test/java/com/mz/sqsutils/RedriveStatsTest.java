@@ -0,0 +1,30 @@
+package com.mz.sqsutils;
+
+import com.amazonaws.services.sqs.model.Message;
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RedriveStatsTest {
+
+    @Test
+    void countsAllFailuresAndListsTheFirstOnes() {
+        RedriveStats stats = new RedriveStats();
+        for (int i = 0; i < 150; i++) {
+            stats.failed(new BatchResult.Failure(new Message().withMessageId("m" + i), "InternalError", "retries exhausted",
+                                                 false));
+        }
+
+        String summary = stats.summary("complete", Duration.ZERO, "orders-dlq", "orders");
+
+        assertEquals(150, stats.getFailed());
+        assertEquals(RedriveStats.MAX_LISTED_FAILURES, stats.getFailures().size());
+        assertTrue(summary.contains("Failed: 150"), summary);
+        assertTrue(summary.contains("messageId=m99,"), summary);
+        assertFalse(summary.contains("messageId=m100,"), summary);
+        assertTrue(summary.contains("... and 50 more failures"), summary);
+    }
+}
@@ -0,0 +1,188 @@
+package com.mz.sqsutils;
+
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayInputStream;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.helpers.NOPLogger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class S3PayloadFilterTest {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final String       DLQ           = InMemorySqs.queueUrl("orders-dlq");
+    private static final String       QUEUE         = InMemorySqs.queueUrl("orders");
+    private static final String       BUCKET        = "payloads";
+
+    private final Map<String, byte[]>               objects   = new HashMap<>();
+    private final Map<String, ByteArrayInputStream> streams   = new HashMap<>();
+    private final AtomicInteger                     downloads = new AtomicInteger();
+    private final AbstractAmazonS3                  s3        = new AbstractAmazonS3() {
+        @Override
+        public S3Object getObject(String bucketName, String key) {
+            downloads.incrementAndGet();
+            byte[] content = objects.get(key);
+            if (!BUCKET.equals(bucketName) || content == null) {
+                throw new AmazonS3Exception("The specified key does not exist.");
+            }
+            ByteArrayInputStream stream = new ByteArrayInputStream(content);
+            streams.put(key, stream);
+            S3Object object = new S3Object();
+            object.setBucketName(bucketName);
+            object.setKey(key);
+            object.setObjectContent(stream);
+            return object;
+        }
+    };
+
+    private InMemorySqs sqs;
+
+    @BeforeEach
+    void setUp() {
+        sqs = new InMemorySqs();
+    }
+
+    @Test
+    void forwardsPointersWhosePayloadPasses() {
+        put(0, "{\"status\":\"FAILED\",\"url\":\"https://example.com/orders\"}");
+        put(1, "{\"status\":\"OK\",\"url\":\"https://example.com/orders\"}");
+        put(2, "{\"status\":\"FAILED\",\"url\":\"https://hooks.slack.com/services/T0\"}");
+        seedPointers(3);
+
+        RedriveQueueTask task = task(filter("[{\"exclude\": \"hooks.slack.com\"}, " +
+                                                "{\"field\": \"status\", \"op\": \"EQ\", \"value\": \"FAILED\"}]"));
+        task.call();
+
+        assertEquals(0, sqs.size(DLQ));
+        List<Message> forwarded = sqs.receiveMessage(new ReceiveMessageRequest(QUEUE).withMaxNumberOfMessages(10))
+                                     .getMessages();
+        assertEquals(1, forwarded.size());
+        assertEquals(pointer(0), forwarded.get(0).getBody());
+        assertEquals("100", forwarded.get(0).getMessageAttributes().get(PayloadPointer.SIZE_ATTRIBUTE).getStringValue());
+        assertEquals(3, downloads.get());
+    }
+
+    @Test
+    void doesNotDownloadForAFilterWithoutRules() {
+        seedPointers(3);
+
+        task(filter("[]")).call();
+
+        assertEquals(0, downloads.get());
+        assertEquals(3, sqs.size(QUEUE));
+    }
+
+    @Test
+    void forwardsAPointerUnfilteredIfThePayloadIsMissing() {
+        seedPointers(1);
+
+        task(filter("[{\"field\": \"status\", \"op\": \"EQ\", \"value\": \"FAILED\"}]")).call();
+
+        assertEquals(1, downloads.get());
+        assertEquals(1, sqs.size(QUEUE));
+        assertEquals(0, sqs.size(DLQ));
+    }
+
+    @Test
+    void stopsDownloadingAtAnExcludedText() {
+        StringBuilder payload = new StringBuilder("{\"url\":\"https://hooks.slack.com/services/T0\",\"padding\":\"");
+        for (int i = 0; i < 100_000; i++) {
+            payload.append('x');
+        }
+        put(0, payload.append("\"}").toString());
+        Message message = new Message().withMessageId("1")
+                                       .withBody(pointer(0))
+                                       .withMessageAttributes(pointerAttributes());
+
+        assertFalse(new S3PayloadFilter(s3, OBJECT_MAPPER, filter("[{\"exclude\": \"hooks.slack.com\"}]")).test(message));
+        assertTrue(streams.get(key(0)).available() > 0);
+    }
+
+    @Test
+    void streamsLikeItFiltersStrings() throws IOException {
+        MessageFilter filter = filter("[{\"exclude\": \"aab\"}, {\"include\": \"abab\"}, " +
+                                          "{\"field\": \"payload.payload.statusTime\", \"op\": \"AFTER\", " +
+                                          "\"value\": \"2020-01-01T00:00:00Z\"}]");
+        List<String> payloads = Arrays.asList(
+            "{\"payload\":\"{\\\"payload\\\":{\\\"statusTime\\\":\\\"2021-01-01T00:00:00Z\\\"}}\",\"text\":\"aabab\"}",
+            "{\"payload\":\"{\\\"payload\\\":{\\\"statusTime\\\":\\\"2021-01-01T00:00:00Z\\\"}}\",\"text\":\"ababab\"}",
+            "{\"payload\":\"{\\\"payload\\\":{\\\"statusTime\\\":\\\"2019-01-01T00:00:00Z\\\"}}\",\"text\":\"ababab\"}",
+            "{\"payload\":\"{\\\"payload\\\":{\\\"statusTime\\\":\\\"2021-01-01T00:00:00Z\\\"}}\",\"text\":\"abaab\"}");
+        for (String payload : payloads) {
+            assertEquals(filter.test(payload), filter.test(new OneCharReader(payload)), payload);
+        }
+        assertTrue(filter.test(new OneCharReader(payloads.get(1))));
+        assertThrows(IllegalArgumentException.class, () -> filter.test(new StringReader("{\"text\":\"abab\"}")));
+    }
+
+    private RedriveQueueTask task(MessageFilter filter) {
+        return new RedriveQueueTask(sqs, DLQ, QUEUE, filter, NOPLogger.NOP_LOGGER)
+            .withPayloadFilter(new S3PayloadFilter(s3, OBJECT_MAPPER, filter));
+    }
+
+    private static MessageFilter filter(String rules) {
+        try {
+            return new MessageFilter(Arrays.asList(OBJECT_MAPPER.readValue(rules, FilterRule[].class)),
+                                     OBJECT_MAPPER.getFactory(), Clock.systemUTC());
+        } catch (IOException e) {
+            throw new IllegalArgumentException(rules, e);
+        }
+    }
+
+    private void put(int i, String payload) {
+        objects.put(key(i), payload.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void seedPointers(int count) {
+        sqs.seed(DLQ, count, S3PayloadFilterTest::pointer, pointerAttributes());
+    }
+
+    private static String key(int i) {
+        return "orders/" + i;
+    }
+
+    private static String pointer(int i) {
+        return "[\"software.amazon.payloadoffloading.PayloadS3Pointer\",{\"s3BucketName\":\"" + BUCKET +
+            "\",\"s3Key\":\"" + key(i) + "\"}]";
+    }
+
+    private static Map<String, MessageAttributeValue> pointerAttributes() {
+        return Collections.singletonMap(PayloadPointer.SIZE_ATTRIBUTE,
+                                        new MessageAttributeValue().withDataType("Number").withStringValue("100"));
+    }
+
+    /**
+     * Reads one character at a time, so texts and tokens are split across reads.
+     */
+    private static final class OneCharReader extends FilterReader {
+        OneCharReader(String text) {
+            super(new StringReader(text));
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            return super.read(buffer, offset, Math.min(length, 1));
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.mz.sqsutils;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.helpers.NOPLogger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SelectivePurgeTest {
+
+    private static final String DLQ = InMemorySqs.queueUrl("webhooks-dlq");
+
+    @Test
+    void releasesKeptMessagesAtTheHeldLimitAndCountsThemOnce() {
+        InMemorySqs sqs = new InMemorySqs();
+        sqs.seed(DLQ, 100, i -> "{\"id\":" + i + ",\"poison\":" + (i % 2 == 0) + "}");
+        SelectivePurgeQueueTask task = new SelectivePurgeQueueTask(
+            sqs, DLQ, SelectivePurgeQueueTask.body(body -> body.contains("\"poison\":true")), NOPLogger.NOP_LOGGER, 2)
+            .withDrainDetection(0, 2, 0)
+            .withMaxHeld(10);
+
+        String response = task.call();
+
+        assertEquals(50, sqs.size(DLQ));
+        assertTrue(response.contains("Deleted: 50"), response);
+        assertTrue(response.contains("Kept: 50"), response);
+        assertTrue(response.contains("ALL_SEEN"), response);
+    }
+}
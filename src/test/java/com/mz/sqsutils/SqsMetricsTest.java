@@ -0,0 +1,110 @@
+package com.mz.sqsutils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SqsMetricsTest {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    @Test
+    void intervalSnapshotsHaveTheMaximumOfTheInterval() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        LatencyHistogram.Snapshot start = histogram.intervalSnapshot();
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(500));
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(2));
+        LatencyHistogram.Snapshot first = histogram.intervalSnapshot();
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(3));
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(4));
+        LatencyHistogram.Snapshot second = histogram.intervalSnapshot();
+
+        LatencyHistogram.Snapshot firstInterval = first.minus(start);
+        assertEquals(2, firstInterval.getCount());
+        assertEquals(500, firstInterval.getMaxMillis(), 0.001);
+        assertEquals(251, firstInterval.getMeanMillis(), 0.001);
+
+        LatencyHistogram.Snapshot secondInterval = second.minus(first);
+        assertEquals(2, secondInterval.getCount());
+        assertEquals(4, secondInterval.getMaxMillis(), 0.001);
+        assertEquals(3.5, secondInterval.getMeanMillis(), 0.001);
+        assertTrue(secondInterval.getPercentileMillis(0.99) <= 4, secondInterval.toString());
+
+        assertEquals(500, histogram.snapshot().getMaxMillis(), 0.001);
+    }
+
+    @Test
+    void percentilesAreTheUpperBoundOfTheirBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(900));
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        assertEquals(16.384, snapshot.getPercentileMillis(0.5), 0.001);
+        assertEquals(16.384, snapshot.getPercentileMillis(0.99), 0.001);
+        assertEquals(900, snapshot.getPercentileMillis(1), 0.001);
+        assertEquals(0, new LatencyHistogram().snapshot().getPercentileMillis(0.99));
+    }
+
+    @Test
+    void snapshotsSubtractCountsErrorsAndThrottles() {
+        SqsMetrics metrics = new SqsMetrics();
+        metrics.called(SqsMetrics.Operation.SEND, TimeUnit.MILLISECONDS.toNanos(20));
+        metrics.entries(SqsMetrics.Operation.SEND, 10);
+        SqsMetrics.Snapshot first = metrics.snapshot();
+        metrics.called(SqsMetrics.Operation.SEND, TimeUnit.MILLISECONDS.toNanos(30));
+        metrics.entries(SqsMetrics.Operation.SEND, 8);
+        metrics.failed(SqsMetrics.Operation.SEND, true);
+        metrics.failed(SqsMetrics.Operation.SEND, false);
+        metrics.limiterWait(0.25);
+
+        SqsMetrics.Snapshot interval = metrics.snapshot().minus(first);
+        SqsMetrics.OperationSnapshot send = interval.get(SqsMetrics.Operation.SEND);
+        assertEquals(1, send.getCalls());
+        assertEquals(8, send.getEntries());
+        assertEquals(2, send.getErrors());
+        assertEquals(1, send.getThrottles());
+        assertEquals(250, TimeUnit.NANOSECONDS.toMillis(interval.getLimiterWaitNanos()));
+        assertEquals(0, interval.get(SqsMetrics.Operation.RECEIVE).getCalls());
+    }
+
+    @Test
+    void reportsEachIntervalAsEmf() throws Exception {
+        SqsMetrics         metrics   = new SqsMetrics();
+        List<String>       documents = new ArrayList<>();
+        EmfMetricsReporter reporter  = new EmfMetricsReporter(
+            metrics, OBJECT_MAPPER, Collections.singletonMap("Command", "REDRIVE"), documents::add, 3600);
+        try {
+            metrics.called(SqsMetrics.Operation.RECEIVE, TimeUnit.MILLISECONDS.toNanos(700));
+            metrics.entries(SqsMetrics.Operation.RECEIVE, 10);
+            reporter.flush();
+            metrics.called(SqsMetrics.Operation.RECEIVE, TimeUnit.MILLISECONDS.toNanos(40));
+            metrics.entries(SqsMetrics.Operation.RECEIVE, 3);
+        } finally {
+            reporter.close();
+        }
+
+        assertEquals(2, documents.size());
+        JsonNode first  = OBJECT_MAPPER.readTree(documents.get(0));
+        JsonNode second = OBJECT_MAPPER.readTree(documents.get(1));
+        assertEquals("REDRIVE", second.get("Command").asText());
+        assertEquals("SqsUtils", second.at("/_aws/CloudWatchMetrics/0/Namespace").asText());
+        assertEquals("Command", second.at("/_aws/CloudWatchMetrics/0/Dimensions/0/0").asText());
+        assertEquals(10, first.get("ReceiveEntries").asLong());
+        assertEquals(700, first.get("ReceiveLatencyMax").asDouble(), 0.001);
+        assertEquals(1, second.get("ReceiveCalls").asLong());
+        assertEquals(3, second.get("ReceiveEntries").asLong());
+        assertEquals(40, second.get("ReceiveLatencyMax").asDouble(), 0.001);
+        assertFalse(second.has("SendCalls"));
+    }
+}